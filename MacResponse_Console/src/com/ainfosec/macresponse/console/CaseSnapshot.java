@@ -0,0 +1,542 @@
+/*
+
+ MacResponse: Incident Response Toolkit for Mac OS X
+
+ Copyright (C) 2011 - Assured Information Security, Inc. All rights reserved.
+
+ Authors:
+ Paul Petzke <petzkep _at_ ainfosec.com>
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package com.ainfosec.macresponse.console;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.ainfosec.macresponse.db.FileTable;
+import com.ainfosec.macresponse.db.StringPool;
+import com.ainfosec.macresponse.db.TreeObject;
+
+/**
+ * A binary cache of a case's parsed modules, kept in
+ * {@value #CACHE_DIRECTORY} inside the case directory (or next to the
+ * case archive).
+ *
+ * Case directories don't change once collection finishes, so after the
+ * first load each module's TreeObjects are written out in a compact binary
+ * form and read back instead of re-parsing the XML. The FilesystemInformation FileTable is written straight into the
+ * cache directory and reopened as-is.
+ *
+ * Every snapshot records the size, modification time and a content hash of
+ * the file it came from (the XML, or the archive holding it), plus the
+ * format version. The hash is only checked when the modification time has
+ * changed, e.g. when the case was copied; if the size, version or hash
+ * differ the snapshot is ignored and rewritten. A case on read-only media is simply loaded from XML every
+ * time.
+ */
+public class CaseSnapshot {
+	public static final String CACHE_DIRECTORY = ".macresponse-cache";
+
+	/** Bump whenever the layout or the db model changes */
+	private static final int FORMAT_VERSION = 6;
+	private static final int MAGIC = 0x4d52534e; // "MRSN"
+
+	private static final String SNAPSHOT_SUFFIX = ".snapshot";
+	private static final String TABLE_SUFFIX = ".table";
+	private static final String INDEX_SUFFIX = ".index";
+	private static final String COLUMNS_SUFFIX = ".columns";
+
+	/** Files up to this size are hashed in full, larger ones are sampled */
+	private static final long FULL_HASH_LIMIT = 16L << 20;
+	private static final int SAMPLE_COUNT = 64;
+	private static final int SAMPLE_SIZE = 64 << 10;
+	/** The size of a SHA-1 */
+	private static final int HASH_SIZE = 20;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	// Value tags
+	private static final byte NULL = 0;
+	private static final byte STRING = 1;
+	private static final byte STRING_REF = 2;
+	private static final byte LIST = 3;
+	private static final byte CLASS = 4;
+	private static final byte OBJECT = 5;
+
+	/** The fields stored for each class */
+	private static final ConcurrentHashMap<Class<?>, Field[]> snapshotFields = new ConcurrentHashMap<Class<?>, Field[]>();
+
+	private File cacheDirectory;
+
+	/**
+	 * @param cacheDirectory Where the case's snapshots are kept, see
+	 * {@link CaseSource#getCacheDirectory()}.
+	 */
+	public CaseSnapshot(File cacheDirectory) {
+		this.cacheDirectory = cacheDirectory;
+	}
+
+	/**
+	 * Reads a module from its snapshot.
+	 * @param xmlFileName The module's XML file name.
+	 * @param sourceFile The file the XML is read from.
+	 * @param stats Counts the strings put through the shared StringPool.
+	 * @return The module (not yet init()ed), or null if there's no usable snapshot.
+	 */
+	public TreeObject readModule(String xmlFileName, File sourceFile, StringPool.Stats stats) {
+		File snapshotFile = new File(cacheDirectory, xmlFileName + SNAPSHOT_SUFFIX);
+		if(!snapshotFile.isFile()) {
+			return null;
+		}
+		try {
+			ByteBuffer buffer = read(snapshotFile);
+			if(!readHeader(buffer, sourceFile)) {
+				return null;
+			}
+			return (TreeObject) new Reader(buffer, stats).readValue();
+		} catch (Exception e) {
+			System.out.println("Ignoring unreadable snapshot " + snapshotFile + ": " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * Writes a freshly parsed module's snapshot. This must happen before
+	 * init(), so only what came out of the XML is stored.
+	 * @param xmlFileName The module's XML file name.
+	 * @param sourceFile The file the XML was read from.
+	 * @param moduleRoot The parsed module.
+	 */
+	public void writeModule(String xmlFileName, File sourceFile, TreeObject moduleRoot) {
+		if(!prepareCacheDirectory()) {
+			return;
+		}
+		File snapshotFile = new File(cacheDirectory, xmlFileName + SNAPSHOT_SUFFIX);
+		File tempFile = new File(cacheDirectory, xmlFileName + SNAPSHOT_SUFFIX + ".tmp");
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16));
+			writeHeader(out, sourceFile);
+			new Writer(out).writeValue(moduleRoot);
+			out.close();
+			out = null;
+			snapshotFile.delete();
+			if(!tempFile.renameTo(snapshotFile)) {
+				tempFile.delete();
+			}
+		} catch (Exception e) {
+			System.out.println("Unable to write snapshot " + snapshotFile + ": " + e);
+			tempFile.delete();
+		} finally {
+			if(out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					// It failed already, and the file is deleted anyway
+				}
+				tempFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Opens the cached FileTable for the FilesystemInformation XML.
+	 * @param xmlFileName The FilesystemInformation XML file name.
+	 * @param sourceFile The file the XML is read from.
+	 * @return The table, or null if there's no usable one.
+	 */
+	public FileTable readFileTable(String xmlFileName, File sourceFile) {
+		File snapshotFile = new File(cacheDirectory, xmlFileName + SNAPSHOT_SUFFIX);
+		File tableFile = new File(cacheDirectory, xmlFileName + TABLE_SUFFIX);
+		File indexFile = new File(cacheDirectory, xmlFileName + INDEX_SUFFIX);
+		File columnFile = new File(cacheDirectory, xmlFileName + COLUMNS_SUFFIX);
+		if(!snapshotFile.isFile() || !tableFile.isFile() || !indexFile.isFile() || !columnFile.isFile()) {
+			return null;
+		}
+		try {
+			ByteBuffer buffer = read(snapshotFile);
+			if(!readHeader(buffer, sourceFile)) {
+				return null;
+			}
+			int rowCount = buffer.getInt();
+			FileTable fileTable = new FileTable(tableFile, indexFile, columnFile);
+			if(fileTable.size() != rowCount) {
+				fileTable.close();
+				return null;
+			}
+			return fileTable;
+		} catch (Exception e) {
+			System.out.println("Ignoring unreadable snapshot " + snapshotFile + ": " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * Creates the writer for the FilesystemInformation FileTable. When the
+	 * case directory is writable, the table is built inside the cache so it
+	 * can be reused; otherwise it's a temporary table.
+	 * @param xmlFileName The FilesystemInformation XML file name.
+	 * @return The writer.
+	 * @throws IOException
+	 */
+	public FileTable.Writer createFileTableWriter(String xmlFileName) throws IOException {
+		if(!prepareCacheDirectory()) {
+			return FileTable.createTemporary();
+		}
+		// The old table is no longer described by its snapshot
+		new File(cacheDirectory, xmlFileName + SNAPSHOT_SUFFIX).delete();
+		return new FileTable.Writer(new File(cacheDirectory, xmlFileName + TABLE_SUFFIX),
+				new File(cacheDirectory, xmlFileName + INDEX_SUFFIX),
+				new File(cacheDirectory, xmlFileName + COLUMNS_SUFFIX));
+	}
+
+	/**
+	 * Marks a finished FileTable as the snapshot of the FilesystemInformation
+	 * XML. Tables that weren't built in the cache directory are ignored.
+	 * @param xmlFileName The FilesystemInformation XML file name.
+	 * @param sourceFile The file the XML was read from.
+	 * @param fileTable The finished table.
+	 */
+	public void writeFileTable(String xmlFileName, File sourceFile, FileTable fileTable) {
+		if(!cacheDirectory.equals(fileTable.getDataFile().getParentFile())) {
+			return;
+		}
+		File snapshotFile = new File(cacheDirectory, xmlFileName + SNAPSHOT_SUFFIX);
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new FileOutputStream(snapshotFile));
+			writeHeader(out, sourceFile);
+			out.writeInt(fileTable.size());
+			out.close();
+			out = null;
+		} catch (IOException e) {
+			System.out.println("Unable to write snapshot " + snapshotFile + ": " + e);
+			snapshotFile.delete();
+		} finally {
+			if(out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					// It failed already, and the file is deleted
+				}
+			}
+		}
+	}
+
+	private boolean prepareCacheDirectory() {
+		cacheDirectory.mkdirs();
+		return cacheDirectory.isDirectory() && cacheDirectory.canWrite();
+	}
+
+	private void writeHeader(DataOutputStream out, File sourceFile) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(FORMAT_VERSION);
+		out.writeLong(sourceFile.length());
+		out.writeLong(sourceFile.lastModified());
+		out.write(contentHash(sourceFile));
+	}
+
+	/**
+	 * @return true if the header matches the XML file as it is now. The
+	 * file is only hashed if its modification time has changed.
+	 */
+	private boolean readHeader(ByteBuffer buffer, File sourceFile) throws IOException {
+		if(buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+			return false;
+		}
+		if(buffer.getLong() != sourceFile.length()) {
+			return false;
+		}
+		long lastModified = buffer.getLong();
+		byte[] storedHash = new byte[HASH_SIZE];
+		buffer.get(storedHash);
+		if(lastModified == sourceFile.lastModified()) {
+			return true;
+		}
+		return Arrays.equals(contentHash(sourceFile), storedHash);
+	}
+
+	/**
+	 * SHA-1 of the XML. Small files are hashed whole; for large ones (the
+	 * FilesystemInformation listing) evenly spaced blocks plus the head and
+	 * tail are hashed so validation stays well under a second.
+	 */
+	private static byte[] contentHash(File sourceFile) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+
+		RandomAccessFile raf = new RandomAccessFile(sourceFile, "r");
+		try {
+			long length = raf.length();
+			byte[] block = new byte[SAMPLE_SIZE];
+			if(length <= FULL_HASH_LIMIT) {
+				int read;
+				while((read = raf.read(block)) > 0) {
+					digest.update(block, 0, read);
+				}
+			}
+			else {
+				long stride = (length - SAMPLE_SIZE) / (SAMPLE_COUNT - 1);
+				for(int i = 0; i < SAMPLE_COUNT; ++i) {
+					raf.seek(i * stride);
+					raf.readFully(block);
+					digest.update(block);
+				}
+			}
+		} finally {
+			raf.close();
+		}
+		return digest.digest();
+	}
+
+	/**
+	 * Reads a whole snapshot. It's copied rather than mapped so the file
+	 * can be replaced afterwards, which a live mapping prevents on Windows.
+	 */
+	private static ByteBuffer read(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			long length = raf.length();
+			if(length > Integer.MAX_VALUE) {
+				throw new IOException("Snapshot too large: " + file);
+			}
+			byte[] bytes = new byte[(int) length];
+			raf.readFully(bytes);
+			return ByteBuffer.wrap(bytes);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * @return The fields of a db class that make up its snapshot: everything
+	 * below TreeObject that isn't static or transient, sorted by name.
+	 */
+	private static Field[] getSnapshotFields(Class<?> type) {
+		Field[] fields = snapshotFields.get(type);
+		if(fields == null) {
+			ArrayList<Field> list = new ArrayList<Field>();
+			for(Class<?> c = type; c != null && c != TreeObject.class && c != Object.class; c = c.getSuperclass()) {
+				for(Field field : c.getDeclaredFields()) {
+					int modifiers = field.getModifiers();
+					if(Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+						continue;
+					}
+					field.setAccessible(true);
+					list.add(field);
+				}
+			}
+			fields = list.toArray(new Field[list.size()]);
+			Arrays.sort(fields, new Comparator<Field>() {
+				@Override
+				public int compare(Field a, Field b) {
+					return a.getName().compareTo(b.getName());
+				}
+			});
+			snapshotFields.put(type, fields);
+		}
+		return fields;
+	}
+
+	/** Writes a TreeObject graph; strings and class descriptions are written once */
+	private static class Writer {
+		private DataOutputStream out;
+		private HashMap<String, Integer> strings = new HashMap<String, Integer>();
+		private HashMap<Class<?>, Integer> classes = new HashMap<Class<?>, Integer>();
+
+		public Writer(DataOutputStream out) {
+			this.out = out;
+		}
+
+		public void writeValue(Object value) throws IOException, IllegalAccessException {
+			if(value == null) {
+				out.writeByte(NULL);
+			}
+			else if(value instanceof String) {
+				writeString((String) value);
+			}
+			else if(value instanceof List) {
+				List<?> list = (List<?>) value;
+				out.writeByte(LIST);
+				out.writeInt(list.size());
+				for(Object element : list) {
+					writeValue(element);
+				}
+			}
+			else if(value instanceof TreeObject) {
+				writeObject(value);
+			}
+			else {
+				throw new IOException("Can't snapshot a " + value.getClass().getName());
+			}
+		}
+
+		private void writeString(String value) throws IOException {
+			Integer index = strings.get(value);
+			if(index != null) {
+				out.writeByte(STRING_REF);
+				out.writeInt(index);
+				return;
+			}
+			strings.put(value, strings.size());
+			byte[] bytes = value.getBytes(UTF8);
+			out.writeByte(STRING);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+
+		private void writeObject(Object value) throws IOException, IllegalAccessException {
+			Class<?> type = value.getClass();
+			Field[] fields = getSnapshotFields(type);
+			Integer index = classes.get(type);
+			if(index == null) {
+				classes.put(type, classes.size());
+				out.writeByte(CLASS);
+				writeString(type.getName());
+				out.writeInt(fields.length);
+				for(Field field : fields) {
+					writeString(field.getName());
+				}
+			}
+			else {
+				out.writeByte(OBJECT);
+				out.writeInt(index);
+			}
+			for(Field field : fields) {
+				writeValue(field.get(value));
+			}
+		}
+	}
+
+	/** Reads back what the Writer wrote */
+	private static class Reader {
+		private ByteBuffer buffer;
+		private ArrayList<String> strings = new ArrayList<String>();
+		private ArrayList<Class<?>> classes = new ArrayList<Class<?>>();
+		private ArrayList<Field[]> classFields = new ArrayList<Field[]>();
+		private StringPool.Stats stats;
+
+		public Reader(ByteBuffer buffer, StringPool.Stats stats) {
+			this.buffer = buffer;
+			this.stats = stats;
+		}
+
+		public Object readValue() throws IOException, ReflectiveOperationException {
+			byte tag = buffer.get();
+			switch (tag) {
+			case NULL:
+				return null;
+			case STRING:
+			case STRING_REF:
+				return readString(tag);
+			case LIST:
+				int size = buffer.getInt();
+				ArrayList<Object> list = new ArrayList<Object>(size);
+				for(int i = 0; i < size; ++i) {
+					list.add(readValue());
+				}
+				return list;
+			case CLASS:
+				readClass();
+				return readObject(classes.size() - 1);
+			case OBJECT:
+				return readObject(buffer.getInt());
+			default:
+				throw new IOException("Bad tag " + tag);
+			}
+		}
+
+		private String readString(byte tag) throws IOException {
+			if(tag == STRING_REF) {
+				String value = strings.get(buffer.getInt());
+				if(stats != null) {
+					// Counted like a duplicate from the XML would be
+					StringPool.getShared().intern(value, stats);
+				}
+				return value;
+			}
+			if(tag != STRING) {
+				throw new IOException("Expected a string, found tag " + tag);
+			}
+			byte[] bytes = new byte[buffer.getInt()];
+			buffer.get(bytes);
+			String value = StringPool.getShared().intern(new String(bytes, UTF8), stats);
+			strings.add(value);
+			return value;
+		}
+
+		/**
+		 * Reads a class description. The cache sits next to the evidence and
+		 * may have been tampered with, so only TreeObjects of the db package
+		 * are loaded (and not initialized until they're checked).
+		 */
+		private void readClass() throws IOException, ReflectiveOperationException {
+			String className = readString(buffer.get());
+			String packagePrefix = TreeObject.class.getPackage().getName() + ".";
+			if(!className.startsWith(packagePrefix) || className.indexOf('.', packagePrefix.length()) >= 0) {
+				throw new IOException("Not a db class: " + className);
+			}
+			Class<?> type = Class.forName(className, false, TreeObject.class.getClassLoader());
+			if(!TreeObject.class.isAssignableFrom(type)) {
+				throw new IOException("Not a TreeObject: " + className);
+			}
+			HashMap<String, Field> byName = new HashMap<String, Field>();
+			for(Field field : getSnapshotFields(type)) {
+				byName.put(field.getName(), field);
+			}
+			int count = buffer.getInt();
+			Field[] fields = new Field[count];
+			for(int i = 0; i < count; ++i) {
+				String name = readString(buffer.get());
+				fields[i] = byName.get(name);
+				if(fields[i] == null) {
+					throw new IOException(type.getName() + " no longer has a " + name + " field");
+				}
+			}
+			classes.add(type);
+			classFields.add(fields);
+		}
+
+		private Object readObject(int classIndex) throws IOException, ReflectiveOperationException {
+			Object value = classes.get(classIndex).getDeclaredConstructor().newInstance();
+			for(Field field : classFields.get(classIndex)) {
+				field.set(value, readValue());
+			}
+			return value;
+		}
+	}
+}
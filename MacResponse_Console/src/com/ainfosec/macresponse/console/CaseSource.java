@@ -0,0 +1,886 @@
+/*
+
+ MacResponse: Incident Response Toolkit for Mac OS X
+
+ Copyright (C) 2011 - Assured Information Security, Inc. All rights reserved.
+
+ Authors:
+ Paul Petzke <petzkep _at_ ainfosec.com>
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package com.ainfosec.macresponse.console;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Where a case's module XML files are read from.
+ *
+ * A case is either a directory of module files, each of which may also be
+ * gzipped on its own (ProcessInformation.xml.gz), or an archive of such a
+ * directory (.zip, .tar.gz or .tgz) as copied off the collection drive.
+ * Zip archives are read in place: each module is streamed out of the
+ * archive as it's parsed. Entries are found by file name, whatever
+ * directory they're in inside the archive.
+ *
+ * Zip entries and gzipped files are independent, so several modules can be
+ * decompressed at once on different threads. A tar.gz is one gzip stream,
+ * so it's decompressed in a single pass that hands each module to the
+ * thread parsing it as it goes by; nothing is extracted to disk.
+ */
+public abstract class CaseSource {
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Opens a case directory or archive.
+	 * @param casePath The case directory or archive.
+	 * @return The case.
+	 * @throws IOException If it's neither a directory nor a readable archive.
+	 */
+	public static CaseSource open(String casePath) throws IOException {
+		File file = new File(casePath);
+		if(file.isDirectory()) {
+			return new DirectorySource(file);
+		}
+		if(!file.isFile()) {
+			throw new FileNotFoundException(casePath);
+		}
+		String name = file.getName().toLowerCase();
+		if(name.endsWith(".zip")) {
+			return new ZipSource(file);
+		}
+		if(name.endsWith(".tar.gz") || name.endsWith(".tgz")) {
+			return new TarGzSource(file);
+		}
+		throw new IOException("Not a case directory or archive: " + casePath);
+	}
+
+	/**
+	 * @param xmlFileName A module XML file name, e.g. "ProcessInformation.xml".
+	 * @return Whether the case has the module.
+	 */
+	public abstract boolean hasEntry(String xmlFileName);
+
+	/**
+	 * @return The uncompressed size of a module's XML, in bytes, or -1 if
+	 * it isn't known.
+	 */
+	public abstract long getEntrySize(String xmlFileName);
+
+	/**
+	 * Opens a module's XML, decompressing it as it's read. Each call opens a
+	 * new, independent stream.
+	 * @param xmlFileName A module XML file name.
+	 * @return The XML, buffered.
+	 * @throws FileNotFoundException If the case doesn't have the module.
+	 * @throws IOException
+	 */
+	public abstract InputStream openEntry(String xmlFileName) throws IOException;
+
+	/**
+	 * @return The file a module's snapshot is checked against: the XML (or
+	 * .xml.gz) itself, or the archive holding it.
+	 */
+	public abstract File getSourceFile(String xmlFileName);
+
+	/**
+	 * @return Where the case's snapshots are kept.
+	 */
+	public abstract File getCacheDirectory();
+
+	/**
+	 * Releases the archive, if any.
+	 */
+	public void close() {
+	}
+
+	/**
+	 * @return The last component of a path inside an archive.
+	 */
+	private static String getBaseName(String entryName) {
+		int slash = entryName.lastIndexOf('/');
+		return slash < 0 ? entryName : entryName.substring(slash + 1);
+	}
+
+	/**
+	 * The cache of an archive goes next to it, one directory per archive.
+	 */
+	private static File getArchiveCacheDirectory(File archive) {
+		return new File(new File(archive.getAbsoluteFile().getParentFile(), CaseSnapshot.CACHE_DIRECTORY), archive.getName());
+	}
+
+	/** A case directory, with plain or gzipped module files */
+	private static class DirectorySource extends CaseSource {
+		private File directory;
+
+		public DirectorySource(File directory) {
+			this.directory = directory;
+		}
+
+		@Override
+		public boolean hasEntry(String xmlFileName) {
+			return getSourceFile(xmlFileName).isFile();
+		}
+
+		@Override
+		public long getEntrySize(String xmlFileName) {
+			File file = getSourceFile(xmlFileName);
+			if(!file.getName().endsWith(".gz")) {
+				return file.length();
+			}
+			// The gzip trailer holds the uncompressed size, modulo 4GB
+			long size = file.length();
+			try {
+				RandomAccessFile raf = new RandomAccessFile(file, "r");
+				try {
+					raf.seek(file.length() - 4);
+					long trailerSize = (raf.read() | (raf.read() << 8) | (raf.read() << 16) | ((long) raf.read() << 24)) & 0xffffffffL;
+					size = Math.max(size, trailerSize);
+				} finally {
+					raf.close();
+				}
+			} catch (IOException e) {
+				return -1;
+			}
+			return size;
+		}
+
+		@Override
+		public InputStream openEntry(String xmlFileName) throws IOException {
+			File file = getSourceFile(xmlFileName);
+			InputStream in = new FileInputStream(file);
+			if(file.getName().endsWith(".gz")) {
+				try {
+					return new BufferedInputStream(new GZIPInputStream(in, BUFFER_SIZE), BUFFER_SIZE);
+				} catch (IOException e) {
+					in.close();
+					throw e;
+				}
+			}
+			return new BufferedInputStream(in, BUFFER_SIZE);
+		}
+
+		@Override
+		public File getSourceFile(String xmlFileName) {
+			File file = new File(directory, xmlFileName);
+			File gzFile = new File(directory, xmlFileName + ".gz");
+			return !file.isFile() && gzFile.isFile() ? gzFile : file;
+		}
+
+		@Override
+		public File getCacheDirectory() {
+			return new File(directory, CaseSnapshot.CACHE_DIRECTORY);
+		}
+	}
+
+	/** A zip of a case directory; entries are inflated independently */
+	private static class ZipSource extends CaseSource {
+		private File archive;
+		private ZipFile zipFile;
+		private HashMap<String, ZipEntry> entries = new HashMap<String, ZipEntry>();
+
+		public ZipSource(File archive) throws IOException {
+			this.archive = archive;
+			zipFile = new ZipFile(archive);
+			Enumeration<? extends ZipEntry> e = zipFile.entries();
+			while(e.hasMoreElements()) {
+				ZipEntry entry = e.nextElement();
+				String baseName = getBaseName(entry.getName());
+				if(!entry.isDirectory() && !entries.containsKey(baseName)) {
+					entries.put(baseName, entry);
+				}
+			}
+		}
+
+		@Override
+		public boolean hasEntry(String xmlFileName) {
+			return entries.containsKey(xmlFileName);
+		}
+
+		@Override
+		public long getEntrySize(String xmlFileName) {
+			// The size is -1 if the zip doesn't record it
+			ZipEntry entry = entries.get(xmlFileName);
+			return entry == null ? -1 : entry.getSize();
+		}
+
+		@Override
+		public InputStream openEntry(String xmlFileName) throws IOException {
+			ZipEntry entry = entries.get(xmlFileName);
+			if(entry == null) {
+				throw new FileNotFoundException(archive + ": " + xmlFileName);
+			}
+			return new BufferedInputStream(zipFile.getInputStream(entry), BUFFER_SIZE);
+		}
+
+		@Override
+		public File getSourceFile(String xmlFileName) {
+			return archive;
+		}
+
+		@Override
+		public File getCacheDirectory() {
+			return getArchiveCacheDirectory(archive);
+		}
+
+		@Override
+		public void close() {
+			try {
+				zipFile.close();
+			} catch (IOException e) {
+				// Only read from, so there's nothing to lose
+			}
+		}
+	}
+
+	/**
+	 * A gzipped tar of a case directory, read in one streaming pass on a
+	 * background thread. The pass starts when the first entry is opened. As
+	 * each entry goes by it's handed straight to the thread waiting for it,
+	 * which parses it out of the archive stream while the pass waits. Small
+	 * module files nobody has opened yet are kept in memory until they are;
+	 * large ones are skipped, and read by another pass if they're opened
+	 * later.
+	 *
+	 * Which entries there are isn't known until a pass has read the whole
+	 * archive, so until then every entry is taken to be there, with an
+	 * unknown size. The list is then kept in the cache directory for the
+	 * next time the case is opened.
+	 */
+	private static class TarGzSource extends CaseSource {
+		private static final int BLOCK_SIZE = 512;
+		private static final Charset UTF8 = Charset.forName("UTF-8");
+		/** Only module files are kept in memory or waited for */
+		private static final String MODULE_SUFFIX = ".xml";
+		/** The largest module file kept in memory when nobody has opened it yet */
+		private static final long MAX_BUFFERED_ENTRY = 8L << 20;
+		/** The most kept in memory at once */
+		private static final long MAX_BUFFERED = 32L << 20;
+		/** How long a pass waits for a large module file to be opened before skipping it, in ms */
+		private static final long HANDOVER_WAIT = 1000;
+		private static final String ENTRY_LIST = "entries.list";
+
+		private File archive;
+		// Everything below is guarded by this
+		/** The size of each entry seen so far, by name */
+		private HashMap<String, Long> entrySizes = new HashMap<String, Long>();
+		/** Whether entrySizes holds every entry in the archive */
+		private boolean listed = false;
+		/** The entries opened that haven't been handed over yet */
+		private ArrayList<Request> requests = new ArrayList<Request>();
+		/** Module files that went by before they were opened */
+		private HashMap<String, byte[]> buffered = new HashMap<String, byte[]>();
+		private long bufferedBytes = 0;
+		/** The thread reading the archive, or null */
+		private Thread pass = null;
+
+		public TarGzSource(File archive) {
+			this.archive = archive;
+			deleteSpoolDirectories();
+			readEntryList();
+		}
+
+		@Override
+		public synchronized boolean hasEntry(String xmlFileName) {
+			return !listed || entrySizes.containsKey(xmlFileName);
+		}
+
+		@Override
+		public synchronized long getEntrySize(String xmlFileName) {
+			Long size = entrySizes.get(xmlFileName);
+			return size == null ? -1 : size;
+		}
+
+		/**
+		 * Waits for a pass over the archive to reach the entry, unless it's
+		 * already been kept in memory. The stream has to be closed for the
+		 * pass to go on, so entries can only be read one at a time.
+		 */
+		@Override
+		public InputStream openEntry(String xmlFileName) throws IOException {
+			Request request = new Request(xmlFileName);
+			synchronized(this) {
+				if(listed && !entrySizes.containsKey(xmlFileName)) {
+					throw new FileNotFoundException(archive + ": " + xmlFileName);
+				}
+				byte[] data = buffered.remove(xmlFileName);
+				if(data != null) {
+					bufferedBytes -= data.length;
+					return new ByteArrayInputStream(data);
+				}
+				requests.add(request);
+				notifyAll();
+				if(pass == null) {
+					pass = new Thread(new Runnable() {
+						@Override
+						public void run() {
+							readPasses();
+						}
+					}, "Archive Reader");
+					pass.setDaemon(true);
+					pass.start();
+				}
+				try {
+					while(request.stream == null && request.error == null) {
+						wait();
+					}
+				} catch (InterruptedException e) {
+					requests.remove(request);
+					if(request.stream != null) {
+						request.stream.close();
+					}
+					throw new InterruptedIOException("Interrupted waiting for " + xmlFileName);
+				}
+			}
+			if(request.error != null) {
+				throw request.error;
+			}
+			return request.stream;
+		}
+
+		@Override
+		public File getSourceFile(String xmlFileName) {
+			return archive;
+		}
+
+		@Override
+		public File getCacheDirectory() {
+			return getArchiveCacheDirectory(archive);
+		}
+
+		@Override
+		public synchronized void close() {
+			buffered.clear();
+			bufferedBytes = 0;
+		}
+
+		/**
+		 * Reads the archive until every entry opened has been handed over or
+		 * found not to be there. Runs on the pass thread.
+		 */
+		private void readPasses() {
+			try {
+				while(true) {
+					synchronized(this) {
+						if(requests.isEmpty()) {
+							pass = null;
+							return;
+						}
+					}
+					readArchive();
+				}
+			} catch (IOException e) {
+				failRequests(e);
+			} catch (RuntimeException e) {
+				failRequests(new IOException(e));
+				throw e;
+			}
+		}
+
+		private synchronized void failRequests(IOException e) {
+			for(Request request : requests) {
+				request.error = e;
+			}
+			requests.clear();
+			pass = null;
+			notifyAll();
+		}
+
+		/**
+		 * Reads the archive from the start, handing over or keeping each
+		 * entry as it goes by. Handles ustar prefixes, GNU long names and pax
+		 * paths. Stops early once every entry is known and nobody is waiting.
+		 */
+		private void readArchive() throws IOException {
+			InputStream in = openArchive();
+			try {
+				HashSet<String> seen = new HashSet<String>();
+				byte[] header = new byte[BLOCK_SIZE];
+				String longName = null;
+				while(readBlock(in, header) && !isZero(header)) {
+					String name = getString(header, 0, 100);
+					if(getString(header, 257, 5).equals("ustar")) {
+						String prefix = getString(header, 345, 155);
+						if(prefix.length() > 0) {
+							name = prefix + "/" + name;
+						}
+					}
+					long size = getNumber(header, 124, 12);
+					byte type = header[156];
+					long padded = (size + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+
+					if(type == 'L' || type == 'x') {
+						// The name of the next entry
+						byte[] data = new byte[(int) size];
+						readFully(in, data);
+						skipFully(in, padded - size);
+						String value = type == 'L' ? getString(data, 0, data.length) : getPaxPath(data);
+						if(value != null) {
+							longName = value;
+						}
+						continue;
+					}
+					if(longName != null) {
+						name = longName;
+						longName = null;
+					}
+					long read = 0;
+					// The first entry of a name is the one that's read
+					if((type == '0' || type == 0) && seen.add(getBaseName(name))) {
+						read = passEntry(in, getBaseName(name), size);
+					}
+					skipFully(in, padded - read);
+					synchronized(this) {
+						if(listed && requests.isEmpty()) {
+							return;
+						}
+					}
+				}
+			} finally {
+				in.close();
+			}
+			entriesListed();
+		}
+
+		/**
+		 * Hands an entry to the thread that opened it and waits until it's
+		 * been read, or keeps it in memory if it's a small module file.
+		 * @return How much of the entry was read.
+		 */
+		private long passEntry(InputStream in, String name, long size) throws IOException {
+			Request request;
+			boolean keep;
+			synchronized(this) {
+				if(!entrySizes.containsKey(name)) {
+					entrySizes.put(name, size);
+				}
+				request = takeRequest(name);
+				if(request == null && name.endsWith(MODULE_SUFFIX) && size > MAX_BUFFERED_ENTRY) {
+					// Too big to keep; give a loader that's about to open it the chance to
+					request = awaitRequest(name);
+				}
+				keep = request == null && name.endsWith(MODULE_SUFFIX) && size <= MAX_BUFFERED_ENTRY
+						&& !buffered.containsKey(name) && bufferedBytes + size <= MAX_BUFFERED;
+				if(keep) {
+					bufferedBytes += size;
+				}
+			}
+
+			if(request != null) {
+				PassedEntryStream stream = new PassedEntryStream(in, size);
+				synchronized(this) {
+					request.stream = new BufferedInputStream(stream, BUFFER_SIZE);
+					notifyAll();
+					try {
+						while(!stream.released) {
+							wait();
+						}
+					} catch (InterruptedException e) {
+						throw new InterruptedIOException("Interrupted handing over " + name);
+					}
+				}
+				return size - stream.remaining;
+			}
+
+			if(!keep) {
+				return 0;
+			}
+			byte[] data = new byte[(int) size];
+			try {
+				readFully(in, data);
+			} catch (IOException e) {
+				synchronized(this) {
+					bufferedBytes -= size;
+				}
+				throw e;
+			}
+			synchronized(this) {
+				// It may have been opened while it was read
+				request = takeRequest(name);
+				if(request != null) {
+					bufferedBytes -= size;
+					request.stream = new ByteArrayInputStream(data);
+					notifyAll();
+				}
+				else {
+					buffered.put(name, data);
+				}
+			}
+			return size;
+		}
+
+		/**
+		 * @return The first request for the entry, which is no longer waiting,
+		 * or null.
+		 */
+		private Request takeRequest(String name) {
+			for(int i = 0; i < requests.size(); ++i) {
+				if(requests.get(i).name.equals(name)) {
+					return requests.remove(i);
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * @return A request for the entry made within HANDOVER_WAIT, or null.
+		 */
+		private Request awaitRequest(String name) throws IOException {
+			long deadline = System.currentTimeMillis() + HANDOVER_WAIT;
+			Request request = takeRequest(name);
+			try {
+				long timeLeft;
+				while(request == null && (timeLeft = deadline - System.currentTimeMillis()) > 0) {
+					wait(timeLeft);
+					request = takeRequest(name);
+				}
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException("Interrupted waiting to hand over " + name);
+			}
+			return request;
+		}
+
+		/**
+		 * Called when a pass has read every entry. The entries opened that
+		 * aren't there are told so, and the first time the list is kept for
+		 * the next time the archive is opened.
+		 */
+		private void entriesListed() {
+			HashMap<String, Long> sizes;
+			synchronized(this) {
+				for(Iterator<Request> i = requests.iterator(); i.hasNext(); ) {
+					Request request = i.next();
+					if(!entrySizes.containsKey(request.name)) {
+						request.error = new FileNotFoundException(archive + ": " + request.name);
+						i.remove();
+					}
+				}
+				notifyAll();
+				if(listed) {
+					return;
+				}
+				listed = true;
+				sizes = new HashMap<String, Long>(entrySizes);
+			}
+			writeEntryList(sizes);
+		}
+
+		/**
+		 * The first line of the entry list, which says which version of the
+		 * archive it lists.
+		 */
+		private String getArchiveStamp() {
+			return archive.length() + " " + archive.lastModified();
+		}
+
+		/**
+		 * Reads the entries listed by an earlier pass over the same archive,
+		 * if there was one.
+		 */
+		private void readEntryList() {
+			File file = new File(getCacheDirectory(), ENTRY_LIST);
+			if(!file.isFile()) {
+				return;
+			}
+			HashMap<String, Long> sizes = new HashMap<String, Long>();
+			try {
+				BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+				try {
+					if(!getArchiveStamp().equals(reader.readLine())) {
+						return;
+					}
+					String line;
+					while((line = reader.readLine()) != null) {
+						int tab = line.indexOf('\t');
+						if(tab < 0) {
+							return;
+						}
+						sizes.put(line.substring(tab + 1), Long.parseLong(line.substring(0, tab)));
+					}
+				} finally {
+					reader.close();
+				}
+			} catch (IOException e) {
+				return;
+			} catch (NumberFormatException e) {
+				return;
+			}
+			entrySizes = sizes;
+			listed = true;
+		}
+
+		/**
+		 * Keeps the list of entries in the cache directory, if it's writable.
+		 * Each line is an entry's size, a tab and its name.
+		 */
+		private void writeEntryList(HashMap<String, Long> sizes) {
+			File directory = getCacheDirectory();
+			directory.mkdirs();
+			File file = new File(directory, ENTRY_LIST);
+			File tempFile = new File(directory, ENTRY_LIST + ".tmp");
+			try {
+				Writer writer = new OutputStreamWriter(new FileOutputStream(tempFile), UTF8);
+				try {
+					writer.write(getArchiveStamp() + "\n");
+					for(Map.Entry<String, Long> entry : sizes.entrySet()) {
+						writer.write(entry.getValue() + "\t" + entry.getKey() + "\n");
+					}
+				} finally {
+					writer.close();
+				}
+				file.delete();
+				if(!tempFile.renameTo(file)) {
+					tempFile.delete();
+				}
+			} catch (IOException e) {
+				// Read-only media; the archive is listed again next time
+				tempFile.delete();
+			}
+		}
+
+		/**
+		 * Deletes the copies of the module files made by earlier versions,
+		 * which spooled the archive to the cache directory.
+		 */
+		private void deleteSpoolDirectories() {
+			File[] files = getCacheDirectory().listFiles();
+			if(files == null) {
+				return;
+			}
+			for(File directory : files) {
+				if(!directory.isDirectory() || !directory.getName().startsWith("entries-")) {
+					continue;
+				}
+				File[] spooled = directory.listFiles();
+				if(spooled != null) {
+					for(File file : spooled) {
+						file.delete();
+					}
+				}
+				directory.delete();
+			}
+		}
+
+		private InputStream openArchive() throws IOException {
+			InputStream in = new FileInputStream(archive);
+			try {
+				return new BufferedInputStream(new GZIPInputStream(in, BUFFER_SIZE), BUFFER_SIZE);
+			} catch (IOException e) {
+				in.close();
+				throw e;
+			}
+		}
+
+		private static boolean readBlock(InputStream in, byte[] block) throws IOException {
+			int read = 0;
+			while(read < block.length) {
+				int count = in.read(block, read, block.length - read);
+				if(count < 0) {
+					return false;
+				}
+				read += count;
+			}
+			return true;
+		}
+
+		private static void readFully(InputStream in, byte[] data) throws IOException {
+			if(!readBlock(in, data)) {
+				throw new IOException("Unexpected end of archive");
+			}
+		}
+
+		private static boolean isZero(byte[] block) {
+			for(byte b : block) {
+				if(b != 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static String getString(byte[] block, int offset, int length) {
+			int end = offset;
+			while(end < offset + length && block[end] != 0) {
+				++end;
+			}
+			return new String(block, offset, end - offset, UTF8);
+		}
+
+		/**
+		 * Reads an octal field, or a base-256 one for sizes over 8GB.
+		 */
+		private static long getNumber(byte[] block, int offset, int length) {
+			long value = 0;
+			if((block[offset] & 0x80) != 0) {
+				for(int i = offset + 1; i < offset + length; ++i) {
+					value = (value << 8) | (block[i] & 0xff);
+				}
+				return value;
+			}
+			for(int i = offset; i < offset + length; ++i) {
+				byte b = block[i];
+				if(b >= '0' && b <= '7') {
+					value = value * 8 + (b - '0');
+				}
+				else if(b != ' ' || value != 0) {
+					break;
+				}
+			}
+			return value;
+		}
+
+		/**
+		 * @return The path record of a pax header, or null.
+		 */
+		private static String getPaxPath(byte[] data) {
+			// Records are "<length> <key>=<value>\n"
+			String records = new String(data, UTF8);
+			for(String record : records.split("\n")) {
+				int space = record.indexOf(' ');
+				if(space >= 0 && record.startsWith("path=", space + 1)) {
+					return record.substring(space + 1 + "path=".length());
+				}
+			}
+			return null;
+		}
+
+		/** An entry opened and waiting for a pass; answered with a stream or an error */
+		private static class Request {
+			private String name;
+			private InputStream stream = null;
+			private IOException error = null;
+
+			public Request(String name) {
+				this.name = name;
+			}
+		}
+
+		/**
+		 * An entry read straight out of the pass's archive stream. The pass
+		 * goes on once it's been read to the end or closed; closing it leaves
+		 * the archive open.
+		 */
+		private class PassedEntryStream extends InputStream {
+			private InputStream in;
+			private long remaining;
+			/** Whether the reader is done with it; only used by the reader */
+			private boolean done = false;
+			/** Tells the pass it can go on; guarded by the TarGzSource */
+			private boolean released = false;
+
+			public PassedEntryStream(InputStream in, long size) {
+				this.in = in;
+				this.remaining = size;
+			}
+
+			@Override
+			public int read() throws IOException {
+				if(done) {
+					return -1;
+				}
+				if(remaining == 0) {
+					release();
+					return -1;
+				}
+				int b = in.read();
+				if(b < 0) {
+					throw new IOException("Unexpected end of archive");
+				}
+				if(--remaining == 0) {
+					release();
+				}
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				if(done) {
+					return -1;
+				}
+				if(remaining == 0) {
+					release();
+					return -1;
+				}
+				int count = in.read(b, off, (int) Math.min(len, remaining));
+				if(count < 0) {
+					throw new IOException("Unexpected end of archive");
+				}
+				remaining -= count;
+				if(remaining == 0) {
+					release();
+				}
+				return count;
+			}
+
+			@Override
+			public int available() throws IOException {
+				return done ? 0 : (int) Math.min(in.available(), remaining);
+			}
+
+			@Override
+			public void close() {
+				release();
+			}
+
+			private void release() {
+				if(done) {
+					return;
+				}
+				done = true;
+				synchronized(TarGzSource.this) {
+					released = true;
+					TarGzSource.this.notifyAll();
+				}
+			}
+		}
+	}
+
+	private static void skipFully(InputStream in, long count) throws IOException {
+		while(count > 0) {
+			long skipped = in.skip(count);
+			if(skipped <= 0) {
+				if(in.read() < 0) {
+					throw new IOException("Unexpected end of archive");
+				}
+				skipped = 1;
+			}
+			count -= skipped;
+		}
+	}
+}
@@ -0,0 +1,163 @@
+/*
+
+ MacResponse: Incident Response Toolkit for Mac OS X
+
+ Copyright (C) 2011 - Assured Information Security, Inc. All rights reserved.
+
+ Authors:
+ Paul Petzke <petzkep _at_ ainfosec.com>
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package com.ainfosec.macresponse.console;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.CancellationException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.xmlpull.mxp1.MXParser;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import com.ainfosec.macresponse.db.FileTable;
+import com.ainfosec.macresponse.db.FilesystemInformationModule;
+import com.ainfosec.macresponse.db.ModulePlaceholder;
+
+/**
+ * Reads FilesystemInformation.xml with an XPP3 pull parser.
+ *
+ * The file is a flat list of filePathInfo elements, each holding a filePath
+ * and a fileStat. They're read straight into a FileTable without going
+ * through XStream's reflection, and the parser doesn't care about line
+ * endings, a byte order mark or where the root element starts. The file is
+ * decoded in the encoding its byte order mark or XML declaration names,
+ * UTF-8 if neither does.
+ */
+public class FilesystemInformationParser {
+	private static final String FILE_PATH_INFO = "filePathInfo";
+	private static final String FILE_PATH = "filePath";
+	private static final String FILE_STAT = "fileStat";
+
+	/** Records parsed between progress reports */
+	private static final int REPORT_INTERVAL = 4096;
+
+	/** How much of the file is searched for the XML declaration */
+	private static final int PROLOG_SIZE = 256;
+	private static final Pattern DECLARED_ENCODING = Pattern.compile("^<\\?xml[^>]*?\\sencoding\\s*=\\s*[\"']([A-Za-z][A-Za-z0-9._-]*)[\"']");
+
+	private int recordCount = 0;
+
+	/**
+	 * Parses the file into a new module.
+	 * @param in The FilesystemInformation.xml contents.
+	 * @param writer Where to put each FilePathInfo.
+	 * @param monitor Told how many records have been parsed, or null.
+	 * @return The module, with its FileTable.
+	 * @throws IOException
+	 * @throws XmlPullParserException If the XML is malformed.
+	 * @throws CancellationException If the monitor cancelled the load.
+	 */
+	public FilesystemInformationModule parse(InputStream in, FileTable.Writer writer, ModulePlaceholder.Monitor monitor)
+			throws IOException, XmlPullParserException {
+		XmlPullParser parser = new MXParser();
+		// MXParser only reads the declaration after it has started decoding
+		BufferedInputStream bis = new BufferedInputStream(in, 1 << 16);
+		parser.setInput(bis, detectEncoding(bis));
+
+		String filePath = null;
+		String fileStat = null;
+		int eventType = parser.getEventType();
+		while(eventType != XmlPullParser.END_DOCUMENT) {
+			if(eventType == XmlPullParser.START_TAG) {
+				String name = parser.getName();
+				if(FILE_PATH_INFO.equals(name)) {
+					filePath = null;
+					fileStat = null;
+				}
+				else if(FILE_PATH.equals(name)) {
+					filePath = parser.nextText();
+				}
+				else if(FILE_STAT.equals(name)) {
+					fileStat = parser.nextText();
+				}
+			}
+			else if(eventType == XmlPullParser.END_TAG && FILE_PATH_INFO.equals(parser.getName())) {
+				writer.add(filePath, fileStat);
+				++recordCount;
+				if(monitor != null && recordCount % REPORT_INTERVAL == 0) {
+					if(monitor.isCancelled()) {
+						throw new CancellationException("Load cancelled");
+					}
+					monitor.recordsParsed(recordCount);
+				}
+			}
+			eventType = parser.next();
+		}
+
+		FilesystemInformationModule filesystemInfoModule = new FilesystemInformationModule();
+		filesystemInfoModule.fileTable = writer.finish();
+		return filesystemInfoModule;
+	}
+
+	/**
+	 * @return The number of FilePathInfos read by the last parse.
+	 */
+	public int getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * Finds the file's encoding from its byte order mark or its XML
+	 * declaration, leaving the stream where the text starts (after a UTF-8
+	 * byte order mark; the UTF-16 decoder reads its own).
+	 * @return The encoding, or null for the parser's default, UTF-8.
+	 */
+	private static String detectEncoding(BufferedInputStream in) throws IOException {
+		in.mark(PROLOG_SIZE);
+		byte[] prolog = new byte[PROLOG_SIZE];
+		int length = 0;
+		int count;
+		while(length < prolog.length && (count = in.read(prolog, length, prolog.length - length)) > 0) {
+			length += count;
+		}
+		in.reset();
+
+		if(length >= 3 && (prolog[0] & 0xff) == 0xEF && (prolog[1] & 0xff) == 0xBB && (prolog[2] & 0xff) == 0xBF) {
+			in.skip(3);
+			return "UTF-8";
+		}
+		if(length >= 2 && (((prolog[0] & 0xff) == 0xFE && (prolog[1] & 0xff) == 0xFF) || ((prolog[0] & 0xff) == 0xFF && (prolog[1] & 0xff) == 0xFE))) {
+			return "UTF-16";
+		}
+		// "<?" without a byte order mark
+		if(length >= 4 && prolog[0] == 0 && prolog[1] == '<' && prolog[2] == 0 && prolog[3] == '?') {
+			return "UTF-16BE";
+		}
+		if(length >= 4 && prolog[0] == '<' && prolog[1] == 0 && prolog[2] == '?' && prolog[3] == 0) {
+			return "UTF-16LE";
+		}
+		// Every encoding a declaration can be in reads it the same as Latin-1
+		Matcher matcher = DECLARED_ENCODING.matcher(new String(prolog, 0, length, "ISO-8859-1"));
+		if(matcher.find() && Charset.isSupported(matcher.group(1))) {
+			return matcher.group(1);
+		}
+		return null;
+	}
+}
@@ -0,0 +1,394 @@
+/*
+
+ MacResponse: Incident Response Toolkit for Mac OS X
+
+ Copyright (C) 2011 - Assured Information Security, Inc. All rights reserved.
+
+ Authors:
+ Paul Petzke <petzkep _at_ ainfosec.com>
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package com.ainfosec.macresponse.console;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CancellationException;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import com.ainfosec.macresponse.db.AcquiredRegion;
+import com.ainfosec.macresponse.db.AcquisitionImage;
+import com.ainfosec.macresponse.db.ActiveConnection;
+import com.ainfosec.macresponse.db.Application;
+import com.ainfosec.macresponse.db.CaseLogModule;
+import com.ainfosec.macresponse.db.CommandLineArg;
+import com.ainfosec.macresponse.db.Dependency;
+import com.ainfosec.macresponse.db.DiskInformationModule;
+import com.ainfosec.macresponse.db.Driver;
+import com.ainfosec.macresponse.db.DriverInformationModule;
+import com.ainfosec.macresponse.db.EfiMemoryRegion;
+import com.ainfosec.macresponse.db.EnvironmentVariable;
+import com.ainfosec.macresponse.db.FilePathInfo;
+import com.ainfosec.macresponse.db.FileTable;
+import com.ainfosec.macresponse.db.FileVaultLoggedInUser;
+import com.ainfosec.macresponse.db.FileVaultModule;
+import com.ainfosec.macresponse.db.FilesystemInformationModule;
+import com.ainfosec.macresponse.db.ForeignNetworkAddress;
+import com.ainfosec.macresponse.db.LocalNetworkAddress;
+import com.ainfosec.macresponse.db.LogMessage;
+import com.ainfosec.macresponse.db.LoginSession;
+import com.ainfosec.macresponse.db.LoginSessionsModule;
+import com.ainfosec.macresponse.db.ModulePlaceholder;
+import com.ainfosec.macresponse.db.MountedDisk;
+import com.ainfosec.macresponse.db.NetworkAddress;
+import com.ainfosec.macresponse.db.NetworkConfigurationModule;
+import com.ainfosec.macresponse.db.NetworkConnectionsModule;
+import com.ainfosec.macresponse.db.NetworkInterface;
+import com.ainfosec.macresponse.db.NetworkInterfaceFlag;
+import com.ainfosec.macresponse.db.OpenFile;
+import com.ainfosec.macresponse.db.PhysicalMemoryModule;
+import com.ainfosec.macresponse.db.Process;
+import com.ainfosec.macresponse.db.ProcessInformationModule;
+import com.ainfosec.macresponse.db.PropertyList;
+import com.ainfosec.macresponse.db.PropertyListsModule;
+import com.ainfosec.macresponse.db.RootObject;
+import com.ainfosec.macresponse.db.RoutingTableEntry;
+import com.ainfosec.macresponse.db.ScreenshotModule;
+import com.ainfosec.macresponse.db.SpotlightApplicationListModule;
+import com.ainfosec.macresponse.db.StringPool;
+import com.ainfosec.macresponse.db.SystemConfigFile;
+import com.ainfosec.macresponse.db.SystemControlItem;
+import com.ainfosec.macresponse.db.SystemDateTimeModule;
+import com.ainfosec.macresponse.db.SystemInformationModule;
+import com.ainfosec.macresponse.db.SystemStartupItem;
+import com.ainfosec.macresponse.db.TreeObject;
+import com.ainfosec.macresponse.db.UnmappablePage;
+import com.ainfosec.macresponse.db.User;
+import com.ainfosec.macresponse.db.UserInformationModule;
+import com.thoughtworks.xstream.XStream;
+
+/**
+ * Loads the module XML files of a case into a RootObject. The case is a
+ * directory or an archive, see {@link CaseSource}.
+ *
+ * Only a ModulePlaceholder per module is created up front, and each one is
+ * parsed when it's first needed, on whichever thread loads it (the console
+ * loads them all in the background, in parallel). XStream instances are
+ * not shared between threads; every parsing thread gets its own, configured by
+ * {@link #createXStream()}. The placeholders are in the order of
+ * {@link ModuleFile} and the modules take their spots, so the tree is the
+ * same from run to run.
+ *
+ * Modules that were loaded before come from the case's {@link CaseSnapshot}
+ * instead of their XML.
+ */
+public class ModuleLoader {
+
+	/** FilesystemInformation is too big to parse like the rest, it's pull-parsed */
+	public static final String filesystemXMLFileName = "FilesystemInformation.xml";
+
+	/** The module XML files, in the order they are shown in the tree */
+	private enum ModuleFile {
+		CASE_LOG("CaseLog.xml", CaseLogModule.title),
+		DISK_INFORMATION("DiskInformation.xml", DiskInformationModule.title),
+		DRIVER_INFORMATION("DriverInformation.xml", DriverInformationModule.title),
+		FILE_VAULT("FileVault.xml", FileVaultModule.title),
+		LOGIN_SESSIONS("LoginSessions.xml", LoginSessionsModule.title),
+		NETWORK_CONFIGURATION("NetworkConfiguration.xml", NetworkConfigurationModule.title),
+		NETWORK_CONNECTIONS("NetworkConnections.xml", NetworkConnectionsModule.title),
+		PHYSICAL_MEMORY("PhysicalMemory.xml", PhysicalMemoryModule.title),
+		PROCESS_INFORMATION("ProcessInformation.xml", ProcessInformationModule.title),
+		PROPERTY_LISTS("PropertyLists.xml", PropertyListsModule.title),
+		SCREENSHOT("Screenshot.xml", ScreenshotModule.title),
+		SPOTLIGHT_APPLICATION_LIST("SpotlightApplicationList.xml", SpotlightApplicationListModule.title),
+		SYSTEM_DATE_TIME("SystemDateTime.xml", SystemDateTimeModule.title),
+		SYSTEM_INFORMATION("SystemInformation.xml", SystemInformationModule.title),
+		USER_INFORMATION("UserInformation.xml", UserInformationModule.title),
+		FILESYSTEM_INFORMATION(filesystemXMLFileName, FilesystemInformationModule.title);
+
+		private final String xmlFileName;
+		/** The module's title, so its placeholder can show it before it's parsed */
+		private final String title;
+
+		private ModuleFile(String xmlFileName, String title) {
+			this.xmlFileName = xmlFileName;
+			this.title = title;
+		}
+	}
+
+	/** One XStream per parsing thread; XStream isn't safe to share while unmarshalling */
+	private static final ThreadLocal<WorkerParser> workerParser = new ThreadLocal<WorkerParser>() {
+		@Override
+		protected WorkerParser initialValue() {
+			return new WorkerParser();
+		}
+	};
+
+	private CaseSource source;
+	private CaseSnapshot snapshot;
+
+	/**
+	 * @param casePath The case directory or archive
+	 * @throws IOException If the case can't be opened
+	 */
+	public ModuleLoader(String casePath) throws IOException {
+		this(CaseSource.open(casePath));
+	}
+
+	/**
+	 * @param source The case
+	 */
+	public ModuleLoader(CaseSource source) {
+		this.source = source;
+		this.snapshot = new CaseSnapshot(source.getCacheDirectory());
+	}
+
+	/**
+	 * Creates an XStream with the aliases for every module's XML.
+	 * @return A new XStream, to be used by one thread only.
+	 */
+	public static XStream createXStream() {
+		return createXStream(new PooledStringConverter());
+	}
+
+	/**
+	 * Creates an XStream with the aliases for every module's XML.
+	 * @param strings Puts the strings that are read in the shared StringPool.
+	 * @return A new XStream, to be used by one thread only.
+	 */
+	public static XStream createXStream(PooledStringConverter strings) {
+		XStream xstream = new XStream();
+		xstream.registerConverter(strings);
+
+		xstream.alias("CaseLog", CaseLogModule.class);
+		xstream.alias("logMessage", LogMessage.class);
+
+		xstream.alias("DiskInformationModule", DiskInformationModule.class);
+		xstream.alias("mountedDisk", MountedDisk.class);
+
+		xstream.alias("DriverInformationModule", DriverInformationModule.class);
+		xstream.alias("driver", Driver.class);
+		xstream.alias("dependency", Dependency.class);
+
+		xstream.alias("FilesystemInformationModule", FilesystemInformationModule.class);
+		xstream.alias("filePathInfo", FilePathInfo.class);
+		xstream.alias("filePath", String.class);
+		xstream.alias("fileStat", String.class);
+
+		xstream.alias("FileVaultModule", FileVaultModule.class);
+		xstream.alias("fileVaultLoggedInUser", FileVaultLoggedInUser.class);
+
+		xstream.alias("LoginSessionsModule", LoginSessionsModule.class);
+		xstream.alias("loginSession", LoginSession.class);
+
+		xstream.alias("NetworkConfigurationModule", NetworkConfigurationModule.class);
+		xstream.alias("networkInterface", NetworkInterface.class);
+		xstream.alias("networkAddress", NetworkAddress.class);
+		xstream.alias("networkInterfaceFlag", NetworkInterfaceFlag.class);
+
+		xstream.alias("NetworkConnectionsModule", NetworkConnectionsModule.class);
+		xstream.alias("activeConnection", ActiveConnection.class);
+		xstream.alias("localNetworkAddress", LocalNetworkAddress.class);
+		xstream.alias("foreignNetworkAddress", ForeignNetworkAddress.class);
+		xstream.alias("routingTableEntry", RoutingTableEntry.class);
+
+		xstream.alias("ProcessInformationModule", ProcessInformationModule.class);
+		xstream.alias("process", Process.class);
+		xstream.alias("openFile", OpenFile.class);
+		xstream.alias("commandLineArg", CommandLineArg.class);
+		xstream.alias("environmentVariable", EnvironmentVariable.class);
+
+		xstream.alias("PhysicalMemoryModule", PhysicalMemoryModule.class);
+		xstream.alias("efiMemoryRegion", EfiMemoryRegion.class);
+		xstream.alias("acquisitionImage", AcquisitionImage.class);
+		xstream.alias("acquiredRegion", AcquiredRegion.class);
+		xstream.alias("unmappablePage", UnmappablePage.class);
+
+		xstream.alias("PropertyListsModule", PropertyListsModule.class);
+		xstream.alias("propertyList", PropertyList.class);
+
+		xstream.alias("ScreenshotModule", ScreenshotModule.class);
+
+		xstream.alias("SpotlightApplicationListModule", SpotlightApplicationListModule.class);
+		xstream.alias("application", Application.class);
+
+		xstream.alias("SystemDateTimeModule", SystemDateTimeModule.class);
+
+		xstream.alias("SystemInformationModule", SystemInformationModule.class);
+		xstream.alias("systemControlItem", SystemControlItem.class);
+		xstream.alias("systemConfigFile", SystemConfigFile.class);
+		xstream.alias("systemStartupItem", SystemStartupItem.class);
+
+		xstream.alias("UserInformationModule", UserInformationModule.class);
+		xstream.alias("user", User.class);
+
+		return xstream;
+	}
+
+	/**
+	 * Creates a RootObject with a ModulePlaceholder for every module that
+	 * was collected. Nothing is parsed until a placeholder is loaded.
+	 * @return The root of the case's TreeObjects.
+	 */
+	public RootObject createPlaceholders() {
+		RootObject baseObject = new RootObject();
+		baseObject.init();
+		for(ModuleFile moduleFile : ModuleFile.values()) {
+			addPlaceholder(baseObject, moduleFile.xmlFileName, moduleFile.title);
+		}
+		return baseObject;
+	}
+
+	private void addPlaceholder(RootObject baseObject, final String xmlFileName, String moduleTitle) {
+		if(!source.hasEntry(xmlFileName)) {
+			// This can occur when a run hasn't been done (no file)
+			return;
+		}
+		ModulePlaceholder.Source moduleSource = new ModulePlaceholder.Source() {
+			@Override
+			public TreeObject loadModule(ModulePlaceholder.Monitor monitor) {
+				if(filesystemXMLFileName.equals(xmlFileName)) {
+					return loadFilesystemInformation(monitor);
+				}
+				return ModuleLoader.this.loadModule(xmlFileName, monitor);
+			}
+		};
+		baseObject.addChildObject(new ModulePlaceholder(moduleTitle, source.getEntrySize(xmlFileName), moduleSource));
+	}
+
+	/**
+	 * Reads one module from its snapshot, or parses its XML file with the
+	 * worker's XStream (and snapshots it) when there's no valid snapshot.
+	 * @param xmlFileName The module's file name in the case.
+	 * @param monitor Follows the load, or null.
+	 * @return The module, or null if it wasn't collected.
+	 * @throws CancellationException If the monitor cancelled the load.
+	 */
+	private TreeObject loadModule(String xmlFileName, ModulePlaceholder.Monitor monitor) {
+		TreeObject moduleRoot = null;
+		InputStream fs = null;
+
+		try {
+			StringPool.Stats stats = new StringPool.Stats();
+			moduleRoot = snapshot.readModule(xmlFileName, source.getSourceFile(xmlFileName), stats);
+			if(moduleRoot == null) {
+				fs = openEntry(xmlFileName, monitor);
+				WorkerParser parser = workerParser.get();
+				parser.strings.setStats(stats);
+				try {
+					moduleRoot = (TreeObject) parser.xstream.fromXML(fs);
+				} catch (RuntimeException e) {
+					// XStream wraps whatever the stream throws
+					if(monitor != null && monitor.isCancelled()) {
+						throw new CancellationException("Load cancelled");
+					}
+					throw e;
+				} finally {
+					parser.strings.setStats(null);
+				}
+				snapshot.writeModule(xmlFileName, source.getSourceFile(xmlFileName), moduleRoot);
+			}
+			StringPool.getShared().addToTotals(stats);
+			moduleRoot.init();
+		} catch (FileNotFoundException e) {
+			// This can occur when a run hasn't been done (no file)
+			return null;
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+			return null;
+		} finally {
+			close(fs);
+		}
+		return moduleRoot;
+	}
+
+	/**
+	 * Reopens the cached FileTable for FilesystemInformation.xml, or streams
+	 * the XML one FilePathInfo at a time into a new one.
+	 * @param monitor Follows the load, or null.
+	 * @return The module, or null if it wasn't collected.
+	 * @throws CancellationException If the monitor cancelled the load.
+	 */
+	private TreeObject loadFilesystemInformation(ModulePlaceholder.Monitor monitor) {
+		FilesystemInformationModule filesystemInfoModule = null;
+		InputStream fs = null;
+		FileTable.Writer writer = null;
+
+		try {
+			FileTable fileTable = snapshot.readFileTable(filesystemXMLFileName, source.getSourceFile(filesystemXMLFileName));
+			if(fileTable != null) {
+				filesystemInfoModule = new FilesystemInformationModule();
+				filesystemInfoModule.fileTable = fileTable;
+			}
+			else {
+				fs = openEntry(filesystemXMLFileName, monitor);
+				writer = snapshot.createFileTableWriter(filesystemXMLFileName);
+				FilesystemInformationParser parser = new FilesystemInformationParser();
+				filesystemInfoModule = parser.parse(fs, writer, monitor);
+				writer = null;
+				snapshot.writeFileTable(filesystemXMLFileName, source.getSourceFile(filesystemXMLFileName), filesystemInfoModule.fileTable);
+			}
+		} catch (FileNotFoundException e) {
+			// if it doesn't exist, don't do anything with it
+			return null;
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		} catch (XmlPullParserException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		} finally {
+			if(writer != null) {
+				writer.abort();
+			}
+			close(fs);
+		}
+
+		if(filesystemInfoModule != null) {
+			filesystemInfoModule.init();
+		}
+		return filesystemInfoModule;
+	}
+
+	/**
+	 * Opens a module's XML, reporting to the monitor as it's read.
+	 */
+	private InputStream openEntry(String xmlFileName, ModulePlaceholder.Monitor monitor) throws IOException {
+		InputStream in = source.openEntry(xmlFileName);
+		return monitor != null ? new MonitoredInputStream(in, monitor) : in;
+	}
+
+	private static void close(InputStream fs) {
+		if(fs == null) {
+			return;
+		}
+		try {
+			fs.close();
+		} catch (IOException e) {
+			// TODO Auto-generated catch block
+			e.printStackTrace();
+		}
+	}
+
+	/** A thread's XStream and the string converter registered with it */
+	private static class WorkerParser {
+		private PooledStringConverter strings = new PooledStringConverter();
+		private XStream xstream = createXStream(strings);
+	}
+}
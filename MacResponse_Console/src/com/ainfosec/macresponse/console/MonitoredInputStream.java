@@ -0,0 +1,97 @@
+/*
+
+ MacResponse: Incident Response Toolkit for Mac OS X
+
+ Copyright (C) 2011 - Assured Information Security, Inc. All rights reserved.
+
+ Authors:
+ Paul Petzke <petzkep _at_ ainfosec.com>
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package com.ainfosec.macresponse.console;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CancellationException;
+
+import com.ainfosec.macresponse.db.ModulePlaceholder;
+
+/**
+ * Reports the bytes read from a module's XML to a load's Monitor, and
+ * stops the read once the load is cancelled.
+ */
+class MonitoredInputStream extends FilterInputStream {
+	/** Bytes read between reports */
+	private static final long REPORT_INTERVAL = 256 << 10;
+
+	private ModulePlaceholder.Monitor monitor;
+	private long bytesRead = 0;
+	private long nextReport = REPORT_INTERVAL;
+
+	public MonitoredInputStream(InputStream in, ModulePlaceholder.Monitor monitor) {
+		super(in);
+		this.monitor = monitor;
+	}
+
+	@Override
+	public int read() throws IOException {
+		checkCancelled();
+		int b = in.read();
+		if(b >= 0) {
+			count(1);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		checkCancelled();
+		int count = in.read(b, off, len);
+		if(count > 0) {
+			count(count);
+		}
+		return count;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		checkCancelled();
+		long skipped = in.skip(n);
+		count(skipped);
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	private void checkCancelled() {
+		if(monitor.isCancelled()) {
+			throw new CancellationException("Load cancelled");
+		}
+	}
+
+	private void count(long count) {
+		bytesRead += count;
+		if(bytesRead >= nextReport) {
+			monitor.bytesRead(bytesRead);
+			nextReport = bytesRead + REPORT_INTERVAL;
+		}
+	}
+}
@@ -0,0 +1,56 @@
+/*
+
+ MacResponse: Incident Response Toolkit for Mac OS X
+
+ Copyright (C) 2011 - Assured Information Security, Inc. All rights reserved.
+
+ Authors:
+ Paul Petzke <petzkep _at_ ainfosec.com>
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package com.ainfosec.macresponse.console;
+
+import com.ainfosec.macresponse.db.StringPool;
+import com.thoughtworks.xstream.converters.basic.AbstractSingleValueConverter;
+
+/**
+ * Replaces XStream's String converter so every string read from a module
+ * goes through the shared StringPool.
+ *
+ * Like the XStream it's registered with, an instance belongs to one thread.
+ */
+public class PooledStringConverter extends AbstractSingleValueConverter {
+	private StringPool.Stats stats = null;
+
+	/**
+	 * @param stats Where to count the strings of the module being parsed.
+	 */
+	public void setStats(StringPool.Stats stats) {
+		this.stats = stats;
+	}
+
+	@SuppressWarnings("rawtypes")
+	@Override
+	public boolean canConvert(Class type) {
+		return type.equals(String.class);
+	}
+
+	@Override
+	public Object fromString(String str) {
+		return StringPool.getShared().intern(str, stats);
+	}
+}
@@ -32,6 +32,7 @@ import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Button;
 import org.eclipse.swt.widgets.DirectoryDialog;
 import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.FileDialog;
 import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Shell;
 import org.eclipse.swt.widgets.Text;
@@ -61,7 +62,7 @@ public class CasePathShell {
 	 */
 	private void initUI()
 	{
-		shell.setLayout(new GridLayout(6, true));
+		shell.setLayout(new GridLayout(7, true));
 		new Label(shell, SWT.NONE).setText("Directory:");
 
 		// Create the text box extra wide to show long paths
@@ -100,6 +101,26 @@ public class CasePathShell {
 			}
 		});
 
+		// Cases can also be opened straight out of the archive
+		// they were copied off the collection drive in
+		Button archiveButton = new Button(shell, SWT.PUSH);
+		archiveButton.setText("Archive...");
+		archiveButton.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent event) {
+				FileDialog dlg = new FileDialog(shell, SWT.OPEN);
+				dlg.setFilterPath(text.getText());
+				dlg.setText("Select a case archive");
+				dlg.setFilterNames(new String[] { "Case Archives (*.zip, *.tar.gz, *.tgz)", "All Files (*.*)" });
+				dlg.setFilterExtensions(new String[] { "*.zip;*.tar.gz;*.tgz", "*.*" });
+
+				String file = dlg.open();
+				if(file != null) {
+					text.setText(file);
+					casePath = file;
+				}
+			}
+		});
+
 		Button okButton = new Button(shell, SWT.PUSH);
 		okButton.setText("OK");
 		okButton.addSelectionListener(new SelectionAdapter() {
@@ -24,16 +24,22 @@
 
 package com.ainfosec.macresponse.console.ui;
 
-import java.lang.reflect.Field;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.BusyIndicator;
 import org.eclipse.swt.custom.SashForm;
 import org.eclipse.swt.events.SelectionAdapter;
 import org.eclipse.swt.events.SelectionEvent;
-import org.eclipse.swt.graphics.Point;
-import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.layout.RowData;
@@ -47,15 +53,21 @@ import org.eclipse.swt.widgets.Label;
 import org.eclipse.swt.widgets.Listener;
 import org.eclipse.swt.widgets.Menu;
 import org.eclipse.swt.widgets.MenuItem;
-import org.eclipse.swt.widgets.ScrollBar;
+import org.eclipse.swt.widgets.ProgressBar;
 import org.eclipse.swt.widgets.Shell;
 import org.eclipse.swt.widgets.Table;
 import org.eclipse.swt.widgets.TableColumn;
 import org.eclipse.swt.widgets.TableItem;
+import org.eclipse.swt.widgets.Text;
 import org.eclipse.swt.widgets.Tree;
 import org.eclipse.swt.widgets.TreeItem;
 
 import com.ainfosec.macresponse.db.DisplayObject;
+import com.ainfosec.macresponse.db.MemoryReport;
+import com.ainfosec.macresponse.db.ModulePlaceholder;
+import com.ainfosec.macresponse.db.RootObject;
+import com.ainfosec.macresponse.db.SearchIndex;
+import com.ainfosec.macresponse.db.TreeArena;
 import com.ainfosec.macresponse.db.TreeObject;
 import com.ainfosec.macresponse.report.PdfGenerator;
 
@@ -72,20 +84,62 @@ public class MacResponseShell implements Listener {
 	private Menu fileMenu = null;
 	private MenuItem fileMenuItem = null;
 	private MenuItem exportPdfMenuItem = null;
+	private MenuItem exportFilteredPdfMenuItem = null;
+	private MenuItem memoryReportMenuItem = null;
 
 	private SashForm leftSashForm;
 	private SashForm rightSashForm;
 
+	/** The most hits listed for a search */
+	private static final int MAX_SEARCH_HITS = 500;
+
 	/** The current table being displayed on the right */
 	private ArrayList<Composite> currentComposites = new ArrayList<Composite>();
+	/** The text of the table rows shown, so going back to a node is quick */
+	private RowCache rowCache = new RowCache();
 
+	/** Searches every loaded module, above the tree */
+	private Text searchText = null;
 	/** The Tree on the left panel */
 	private Tree tree = null;
 	/** The Items in the Tree (parsed via rootObject.getObjects()) */
 	private TreeObject rootObject;
+	/** rootObject's tree flattened, rebuilt whenever a module is loaded */
+	private TreeArena arena = null;
+
+	/** Shows which modules are being loaded */
+	private Label statusLabel = null;
+	/** How much of the modules being loaded has been read */
+	private ProgressBar progressBar = null;
+	/** Cancels the modules being loaded */
+	private Button cancelButton = null;
 
-	/** A HashMap of the TreeObjects that correspond to each TreeItem in the Tree */
-	private HashMap<TreeItem, TreeObject> treeObjects = new HashMap<TreeItem, TreeObject>();
+	/** Parses modules in the background, all of them once the shell is open */
+	private ExecutorService loadExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "Module Loader");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/** Searches off the UI thread */
+	private ExecutorService searchExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "Search");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	/** The search whose results are still to be shown; null if there's none */
+	private Runnable pendingSearch = null;
+
+	/** The modules currently being loaded, and how far along they are */
+	private HashMap<ModulePlaceholder, LoadProgress> pendingLoads = new HashMap<ModulePlaceholder, LoadProgress>();
+	/** Whether an update of the status is already waiting on the UI thread */
+	private AtomicBoolean statusUpdateQueued = new AtomicBoolean(false);
 
 	/**
 	 * The Constructor which will create the shell and open it on
@@ -109,6 +163,9 @@ public class MacResponseShell implements Listener {
 		// Open the base shell
 		shell.open();
 
+		// Fill in the modules as they're loaded
+		loadAllModules();
+
 		// Keep it alive
 		while(!shell.isDisposed())
 		{
@@ -139,6 +196,24 @@ public class MacResponseShell implements Listener {
 		rightSashForm = new SashForm(sashForm, SWT.CENTER);
 		sashForm.setWeights(new int[]{1, 4});
 		
+		// The loading status
+		Composite statusComposite = new Composite(shell, SWT.NONE);
+		statusComposite.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+		GridLayout statusLayout = new GridLayout(3, false);
+		statusLayout.marginHeight = 0;
+		statusComposite.setLayout(statusLayout);
+		statusLabel = new Label(statusComposite, SWT.NONE);
+		statusLabel.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+		progressBar = new ProgressBar(statusComposite, SWT.SMOOTH);
+		progressBar.setMaximum(1000);
+		GridData progressData = new GridData();
+		progressData.widthHint = 200;
+		progressBar.setLayoutData(progressData);
+		cancelButton = new Button(statusComposite, SWT.PUSH);
+		cancelButton.setText("Cancel");
+		cancelButton.setEnabled(false);
+		cancelButton.addListener(SWT.Selection, this);
+
 		// The status bar
 		Label label = new Label(shell, SWT.PUSH);
 		label.setText("Assured Information Security, Inc. (www.ainfosec.com)");
@@ -146,10 +221,22 @@ public class MacResponseShell implements Listener {
 		gridData2.horizontalAlignment = GridData.CENTER;
 		label.setLayoutData(gridData2);
 
-		// Tree Pane
-		tree = new Tree(leftSashForm, SWT.BORDER | SWT.CHECK);
+		// Tree Pane, under the search box
+		Composite treeComposite = new Composite(leftSashForm, SWT.NONE);
+		GridLayout treeLayout = new GridLayout(1, false);
+		treeLayout.marginWidth = 0;
+		treeLayout.marginHeight = 0;
+		treeComposite.setLayout(treeLayout);
+		searchText = new Text(treeComposite, SWT.SEARCH | SWT.ICON_SEARCH | SWT.ICON_CANCEL);
+		searchText.setMessage("Search");
+		searchText.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+		searchText.addListener(SWT.DefaultSelection, this);
+		tree = new Tree(treeComposite, SWT.BORDER | SWT.CHECK | SWT.VIRTUAL);
+		tree.setLayoutData(new GridData(GridData.FILL_BOTH));
+		tree.addListener(SWT.SetData, this);
 		populateTree(tree);
 		tree.addListener(SWT.Selection, this);
+		tree.addListener(SWT.Expand, this);
 	}
 
 	/**
@@ -168,114 +255,546 @@ public class MacResponseShell implements Listener {
 		exportPdfMenuItem = new MenuItem(fileMenu, SWT.PUSH);
 		exportPdfMenuItem.setText("E&xport PDF");
 		exportPdfMenuItem.addListener(SWT.Selection, this);
+		exportFilteredPdfMenuItem = new MenuItem(fileMenu, SWT.PUSH);
+		exportFilteredPdfMenuItem.setText("Export &Filtered PDF...");
+		exportFilteredPdfMenuItem.addListener(SWT.Selection, this);
+		memoryReportMenuItem = new MenuItem(fileMenu, SWT.PUSH);
+		memoryReportMenuItem.setText("&Memory Report");
+		memoryReportMenuItem.addListener(SWT.Selection, this);
 	}
 
 	/**
-	 * Populate the items in the tree
+	 * Populate the items in the tree. Only the root is filled in; the tree is
+	 * virtual, so every other item is filled in by fillTreeItem() when it's
+	 * first shown.
 	 * @param tree The tree to fill.
 	 */
 	private void populateTree(Tree tree)
 	{
-		TreeItem rootItem = new TreeItem(tree, SWT.None);
-		// TODO Paul make this expanded by default
-		rootItem.setText("Mac Response");
-		treeObjects.put(rootItem, rootObject);
-		populateTreeItem(rootItem, rootObject);
+		arena = TreeArena.build(rootObject);
+		tree.setItemCount(1);
+		TreeItem rootItem = tree.getItem(0);
+		fillTreeItem(rootItem, rootObject);
+		// Show the modules as they come in
+		rootItem.setExpanded(true);
 	}
 
 	/**
-	 * For treeItem, fill in the children
-	 * @param treeItem
-	 * @param dbo
+	 * Fills in an item the tree asked for (SWT.SetData).
+	 * @param treeItem The item to fill.
+	 * @param index Its index under its parent.
 	 */
-	private void populateTreeItem(TreeItem treeItem, TreeObject dbo)
+	private void setTreeItemData(TreeItem treeItem, int index)
 	{
-		if(dbo == null || dbo.getChildObjects() == null || dbo.getChildObjects().size() == 0) {
+		TreeItem parentItem = treeItem.getParentItem();
+		if(parentItem == null) {
+			fillTreeItem(treeItem, rootObject);
+			return;
+		}
+		TreeObject parentObject = getTreeObject(parentItem);
+		ArrayList<? extends TreeObject> children = (parentObject == null || parentObject instanceof ModulePlaceholder) ? null : parentObject.getChildObjects();
+		if(children == null || index >= children.size()) {
+			// The empty item under a module that hasn't been loaded
+			treeItem.setText("");
 			return;
 		}
+		fillTreeItem(treeItem, children.get(index));
+	}
 
-		for(TreeObject dbo1: dbo.getChildObjects())
-		{
-			TreeItem item = new TreeItem(treeItem, SWT.NONE);
-			if(dbo1.getTitle() == null) {
-				item.setText("null");
-				System.out.println("null tree node title: " + dbo1.getClass().getSimpleName());
+	/**
+	 * Sets an item's text, TreeObject and check, and how many children it
+	 * has. The children themselves aren't made until they're shown.
+	 * @param treeItem The item to fill.
+	 * @param treeObject The TreeObject it shows.
+	 */
+	private void fillTreeItem(TreeItem treeItem, TreeObject treeObject)
+	{
+		if(treeObject.getTitle() == null) {
+			treeItem.setText("null");
+			System.out.println("null tree node title: " + treeObject.getClass().getSimpleName());
+		}
+		else {
+			treeItem.setText(treeObject.getTitle());
+		}
+		treeItem.setData(treeObject);
+		int node = arena.indexOf(treeObject);
+		treeItem.setChecked(node != TreeArena.NONE && arena.isChecked(node));
+		if(treeObject instanceof ModulePlaceholder) {
+			// An empty item so the module can be expanded before it's loaded
+			treeItem.setItemCount(1);
+		}
+		else {
+			ArrayList<? extends TreeObject> children = treeObject.getChildObjects();
+			treeItem.setItemCount(children == null ? 0 : children.size());
+		}
+	}
+
+	/**
+	 * @return The TreeObject an item shows, or null if it hasn't been filled
+	 * in.
+	 */
+	private static TreeObject getTreeObject(TreeItem treeItem) {
+		return (TreeObject)treeItem.getData();
+	}
+
+	/**
+	 * Loads every module that hasn't been, in the background. Each one is
+	 * put in the tree as soon as it's ready.
+	 */
+	private void loadAllModules() {
+		ArrayList<? extends TreeObject> modules = rootObject.getChildObjects();
+		if(modules == null || tree.getItemCount() == 0) {
+			return;
+		}
+		TreeItem rootItem = tree.getItem(0);
+		for(int i = 0; i < modules.size(); i++) {
+			if(modules.get(i) instanceof ModulePlaceholder) {
+				TreeItem treeItem = rootItem.getItem(i);
+				fillTreeItem(treeItem, modules.get(i));
+				loadModule(treeItem, (ModulePlaceholder)modules.get(i));
 			}
-			else {
-				item.setText(dbo1.getTitle());
+		}
+	}
+
+	/**
+	 * Parses a module in the background, then puts it in the tree on this
+	 * thread, the only one that changes the tree.
+	 * @param treeItem The module's TreeItem.
+	 * @param placeholder The module's placeholder.
+	 */
+	private void loadModule(final TreeItem treeItem, final ModulePlaceholder placeholder) {
+		if(pendingLoads.containsKey(placeholder)) {
+			return;
+		}
+		final LoadProgress progress = new LoadProgress(placeholder);
+		pendingLoads.put(placeholder, progress);
+		updateStatus();
+		final Display display = shell.getDisplay();
+		loadExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				TreeObject loadedModule = null;
+				boolean cancelled = false;
+				try {
+					loadedModule = placeholder.parse(progress);
+				} catch(CancellationException e) {
+					cancelled = true;
+				} catch(RuntimeException e) {
+					// Left unloaded, like a module whose file can't be read
+					e.printStackTrace();
+				}
+				final TreeObject module = loadedModule;
+				final boolean loadCancelled = cancelled;
+				display.asyncExec(new Runnable() {
+					@Override
+					public void run() {
+						pendingLoads.remove(placeholder);
+						if(shell.isDisposed()) {
+							return;
+						}
+						if(loadCancelled) {
+							// It can still be opened later
+							if(!treeItem.isDisposed()) {
+								treeItem.setExpanded(false);
+							}
+						}
+						else {
+							boolean installed = placeholder.install();
+							if(!treeItem.isDisposed()) {
+								moduleLoaded(treeItem, placeholder, module);
+							}
+							if(installed) {
+								indexModule(placeholder);
+							}
+						}
+						updateStatus();
+					}
+				});
 			}
-			if(treeObjects.containsKey(item))
-			{
-				System.out.println("Contains key, oh no!");
+		});
+	}
+
+	/**
+	 * Adds a module that's been put in the tree to the case's indexes, in
+	 * the background. The tree under it has been walked by the arena by
+	 * then, so the indexing only reads it.
+	 */
+	private void indexModule(final ModulePlaceholder placeholder) {
+		loadExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				placeholder.addToIndexes();
 			}
-			treeObjects.put(item, dbo1);
-			populateTreeItem(item, dbo1);
+		});
+	}
+
+	/**
+	 * Cancels every module being loaded. They stay in the tree unloaded.
+	 */
+	private void cancelLoads() {
+		for(LoadProgress progress : pendingLoads.values()) {
+			progress.cancelled = true;
 		}
+		statusLabel.setText("Cancelling...");
+		cancelButton.setEnabled(false);
+	}
+
+	/**
+	 * Replaces a placeholder's TreeItem children with the loaded module's.
+	 * They're filled in when they're shown.
+	 */
+	private void moduleLoaded(TreeItem treeItem, ModulePlaceholder placeholder, TreeObject module) {
+		boolean expanded = treeItem.getExpanded();
+		treeItem.removeAll();
+		treeItem.setText(placeholder.getTitle());
+		if(module == null) {
+			return;
+		}
+		// The module keeps its placeholder's check
+		arena = TreeArena.build(rootObject, arena);
+		fillTreeItem(treeItem, module);
+		treeItem.setExpanded(expanded);
+
+		// Show it if it's still selected
+		TreeItem[] selection = tree.getSelection();
+		if(selection.length == 1 && selection[0] == treeItem) {
+			showTreeObject(module);
+		}
+	}
+
+	/**
+	 * Shows a busy cursor, the names of the modules being loaded and how far
+	 * along they are.
+	 */
+	private void updateStatus() {
+		// The report only has the modules that are in the tree
+		exportPdfMenuItem.setEnabled(pendingLoads.isEmpty());
+		exportFilteredPdfMenuItem.setEnabled(pendingLoads.isEmpty());
+		if(pendingLoads.isEmpty()) {
+			statusLabel.setText("");
+			progressBar.setSelection(0);
+			cancelButton.setEnabled(false);
+			shell.setCursor(null);
+			return;
+		}
+		boolean cancelling = false;
+		long bytesRead = 0;
+		long totalBytes = 0;
+		long records = 0;
+		StringBuffer sb = new StringBuffer("Loading ");
+		for(LoadProgress progress : pendingLoads.values()) {
+			if(sb.length() > "Loading ".length()) {
+				sb.append(", ");
+			}
+			sb.append(progress.placeholder.getTitle());
+			long fileSize = progress.placeholder.getFileSize();
+			if(fileSize >= 0) {
+				bytesRead += Math.min(progress.bytesRead, fileSize);
+				totalBytes += fileSize;
+			}
+			records += progress.recordsParsed;
+			cancelling |= progress.cancelled;
+		}
+		sb.append("... (");
+		sb.append(String.format("%.1f of %.1f MB", bytesRead / (1024.0 * 1024.0), totalBytes / (1024.0 * 1024.0)));
+		sb.append(", ");
+		sb.append(records);
+		sb.append(" records)");
+		statusLabel.setText(cancelling ? "Cancelling..." : sb.toString());
+		progressBar.setSelection(totalBytes == 0 ? 0 : (int)(bytesRead * progressBar.getMaximum() / totalBytes));
+		cancelButton.setEnabled(!cancelling);
+		shell.setCursor(shell.getDisplay().getSystemCursor(SWT.CURSOR_APPSTARTING));
+	}
+
+	/**
+	 * Updates the status from a loading thread. Updates that come in while
+	 * one is already waiting are folded into it.
+	 */
+	private void queueStatusUpdate(Display display) {
+		if(!statusUpdateQueued.compareAndSet(false, true)) {
+			return;
+		}
+		display.asyncExec(new Runnable() {
+			@Override
+			public void run() {
+				statusUpdateQueued.set(false);
+				if(!shell.isDisposed()) {
+					updateStatus();
+				}
+			}
+		});
 	}
 
 	@Override
 	public void handleEvent(Event event) {
+		// Fill in an item the virtual tree is about to show
+		if(event.type == SWT.SetData) {
+			setTreeItemData((TreeItem)event.item, event.index);
+		}
+		// Handle expanding a module that hasn't been loaded
+		else if(event.type == SWT.Expand) {
+			TreeItem treeItem = (TreeItem)event.item;
+			TreeObject to = getTreeObject(treeItem);
+			if(to instanceof ModulePlaceholder) {
+				loadModule(treeItem, (ModulePlaceholder)to);
+			}
+		}
+		// Handle Enter in the search box
+		else if(event.widget == searchText) {
+			search(searchText.getText());
+		}
+		// Handle cancelling the modules being loaded
+		else if(event.widget == cancelButton) {
+			cancelLoads();
+		}
 		// Handle Menu events
-		if(event.widget instanceof MenuItem) {
+		else if(event.widget instanceof MenuItem) {
 			// Export PDF
 			if(event.widget == exportPdfMenuItem) {
-				exportPdf();
+				exportPdf(null);
+			}
+			// Export PDF with only the rows matching a filter
+			else if(event.widget == exportFilteredPdfMenuItem) {
+				String filter = askReportFilter();
+				if(filter != null) {
+					exportPdf(filter);
+				}
+			}
+			// Memory Report
+			else if(event.widget == memoryReportMenuItem) {
+				showMemoryReport();
 			}
 		}
 		// Handle checking an item's TreeItem
 		else if(event.detail == SWT.CHECK) {
 			TreeItem treeItem = (TreeItem)event.item;
-			recurseCheckTreeItem(treeItem, treeItem.getChecked());
+			checkTreeItem(treeItem, treeItem.getChecked());
 		}
 		// Handle Tree Selections
 		else if(event.item instanceof TreeItem) {
 			TreeItem treeItem = (TreeItem)event.item;
 
 			// The Tree Object
-			TreeObject to = treeObjects.get(treeItem);
+			TreeObject to = getTreeObject(treeItem);
 			if(to == null) {
 				System.out.println("to was null!");
 				return;
 			}
-			if(to.getDisplayData() == null) {
+			if(to instanceof ModulePlaceholder) {
+				clearDisplay();
+				loadModule(treeItem, (ModulePlaceholder)to);
 				return;
 			}
-			while(currentComposites.size() != 0) {
-				currentComposites.get(0).dispose();
-				currentComposites.remove(0);
-			}
-			updateDisplay(to);
-			rightSashForm.layout();
+			showTreeObject(to);
 		}
 		// Handle other clicks
 		else
 		{
-			while(currentComposites.size() != 0)
-			{
-				currentComposites.get(0).dispose();
-				currentComposites.remove(0);
+			clearDisplay();
+		}
+	}
+
+	/**
+	 * Replaces the right side with a TreeObject's data.
+	 */
+	private void showTreeObject(TreeObject to) {
+		if(to.getDisplayData() == null) {
+			return;
+		}
+		clearDisplay();
+		updateDisplay(to);
+		rightSashForm.layout();
+	}
+
+	/**
+	 * Searches every loaded module in the background, then lists the best
+	 * hits on the right. Showing anything else before the search is done
+	 * drops its results.
+	 */
+	private void search(final String query) {
+		if(!(rootObject instanceof RootObject)) {
+			return;
+		}
+		final SearchIndex searchIndex = ((RootObject)rootObject).getSearchIndex();
+		final Display display = shell.getDisplay();
+
+		clearDisplay();
+		Composite searchingComposite = new Composite(rightSashForm, SWT.NONE);
+		searchingComposite.setLayout(new GridLayout(1, false));
+		Label searchingLabel = new Label(searchingComposite, SWT.NONE);
+		searchingLabel.setText("Searching...");
+		currentComposites.add(searchingComposite);
+		rightSashForm.layout();
+
+		Runnable searchJob = new Runnable() {
+			@Override
+			public void run() {
+				final Runnable job = this;
+				final SearchIndex.Result result = searchIndex.search(query, MAX_SEARCH_HITS);
+				display.asyncExec(new Runnable() {
+					@Override
+					public void run() {
+						if(shell.isDisposed() || pendingSearch != job) {
+							return;
+						}
+						showSearchResults(query, result);
+					}
+				});
 			}
+		};
+		pendingSearch = searchJob;
+		searchExecutor.execute(searchJob);
+	}
+
+	/**
+	 * Lists the hits of a search on the right. Opening a hit selects its
+	 * tree node and table row.
+	 */
+	private void showSearchResults(String query, SearchIndex.Result result) {
+		final List<SearchIndex.Hit> hits = result.hits;
+
+		clearDisplay();
+		Composite resultComposite = new Composite(rightSashForm, SWT.NONE);
+		resultComposite.setLayout(new GridLayout(1, false));
+		Label summaryLabel = new Label(resultComposite, SWT.NONE);
+		summaryLabel.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+		StringBuffer sb = new StringBuffer();
+		if(!SearchIndex.isSearchable(query)) {
+			sb.append("Search for a word of at least 3 characters");
+		}
+		else {
+			sb.append(hits.size());
+			sb.append(hits.size() == 1 ? " hit" : " hits");
+			if(result.capped || result.candidateCount > hits.size()) {
+				sb.append(" of about ");
+				sb.append(result.candidateCount);
+			}
+			sb.append(" (");
+			sb.append(result.elapsedMillis);
+			sb.append(" ms)");
+		}
+		if(result.pendingModules > 0) {
+			sb.append("; ");
+			sb.append(result.pendingModules);
+			sb.append(result.pendingModules == 1 ? " module is" : " modules are");
+			sb.append(" still being indexed");
+		}
+		summaryLabel.setText(sb.toString());
+
+		final Table table = new Table(resultComposite, SWT.SINGLE | SWT.BORDER | SWT.FULL_SELECTION);
+		table.setLayoutData(new GridData(GridData.FILL_BOTH));
+		table.setLinesVisible(true);
+		table.setHeaderVisible(true);
+		TableColumn locationColumn = new TableColumn(table, SWT.NONE);
+		locationColumn.setText("Location");
+		TableColumn matchColumn = new TableColumn(table, SWT.NONE);
+		matchColumn.setText("Match");
+		for(SearchIndex.Hit hit : hits) {
+			TableItem item = new TableItem(table, SWT.NONE);
+			item.setText(0, hit.node.getTitle());
+			item.setText(1, hit.text.trim().replace("\n", " | "));
 		}
+		locationColumn.pack();
+		matchColumn.pack();
+		table.addListener(SWT.DefaultSelection, new Listener() {
+			@Override
+			public void handleEvent(Event event) {
+				int index = table.getSelectionIndex();
+				if(index >= 0 && index < hits.size()) {
+					showSearchHit(hits.get(index));
+				}
+			}
+		});
+		currentComposites.add(resultComposite);
+		rightSashForm.layout();
 	}
 
-	private void recurseCheckTreeItem(TreeItem treeItem, boolean checked) {
-		TreeObject treeObject = treeObjects.get(treeItem);
-		treeItem.setChecked(checked);
-		treeObject.setChecked(checked);
-		for(TreeItem childItem : treeItem.getItems()) {
-			recurseCheckTreeItem(childItem, checked);
+	/**
+	 * Selects a search hit's tree node and shows it with the hit's row
+	 * selected.
+	 */
+	private void showSearchHit(SearchIndex.Hit hit) {
+		TreeItem treeItem = findTreeItem(hit.node);
+		if(treeItem == null) {
+			return;
+		}
+		tree.setSelection(treeItem);
+		tree.showItem(treeItem);
+		showTreeObject(hit.node);
+		if(hit.displayIndex < currentComposites.size() && currentComposites.get(hit.displayIndex).getData() instanceof TableView) {
+			((TableView)currentComposites.get(hit.displayIndex).getData()).selectRow(hit.row);
+		}
+	}
+
+	/**
+	 * @return The TreeItem showing a TreeObject, or null if it isn't in the
+	 * tree. The items along the way are filled in if they haven't been.
+	 */
+	private TreeItem findTreeItem(TreeObject treeObject) {
+		ArrayList<TreeObject> path = new ArrayList<TreeObject>();
+		for(TreeObject to = treeObject; to != null && to != rootObject; to = to.getParentObject()) {
+			path.add(0, to);
+		}
+		if(tree.getItemCount() == 0) {
+			return null;
+		}
+		TreeItem treeItem = tree.getItem(0);
+		TreeObject parentObject = rootObject;
+		for(TreeObject to : path) {
+			if(parentObject instanceof ModulePlaceholder) {
+				return null;
+			}
+			ArrayList<? extends TreeObject> children = parentObject.getChildObjects();
+			int index = children == null ? -1 : children.indexOf(to);
+			if(index < 0 || index >= treeItem.getItemCount()) {
+				return null;
+			}
+			treeItem = treeItem.getItem(index);
+			if(getTreeObject(treeItem) != to) {
+				fillTreeItem(treeItem, to);
+			}
+			parentObject = to;
+		}
+		return treeItem;
+	}
+
+	private void clearDisplay() {
+		// A search still running would replace whatever's shown next
+		pendingSearch = null;
+		while(currentComposites.size() != 0)
+		{
+			currentComposites.get(0).dispose();
+			currentComposites.remove(0);
+		}
+	}
+
+	/**
+	 * Checks or unchecks an item's TreeObject and everything under it (one
+	 * range of the arena's bits). The items under it are cleared, so they
+	 * pick up their checks from the arena when they're shown again.
+	 */
+	private void checkTreeItem(TreeItem treeItem, boolean checked) {
+		TreeObject treeObject = getTreeObject(treeItem);
+		if(treeObject != null) {
+			int node = arena.indexOf(treeObject);
+			if(node != TreeArena.NONE) {
+				arena.setChecked(node, checked);
+			}
 		}
+		treeItem.setChecked(checked);
+		treeItem.clearAll(true);
 	}
 
 	private void updateDisplay(TreeObject to) {
 		// Display each DisplayObject
-		for(DisplayObject displayObject : to.getDisplayData().getDisplayObjects()) {
+		ArrayList<DisplayObject> displayObjects = to.getDisplayData().getDisplayObjects();
+		for(int displayIndex = 0; displayIndex < displayObjects.size(); ++displayIndex) {
+			DisplayObject displayObject = displayObjects.get(displayIndex);
 			if(displayObject == null || displayObject.getObjects() == null) {
 				return;
 			}
 			// See if the DisplayObject has a list or a single object
 			if(displayObject.getObjects().size() == 1) {
-				TreeObject treeObject = displayObject.getObjects().get(0);	// There's only 1 item
 				
 				// Setup the composite we're adding the right side
 				Composite labelComposite = new Composite(rightSashForm, SWT.MULTI | SWT.BORDER | SWT.FULL_SELECTION);
@@ -287,89 +806,115 @@ public class MacResponseShell implements Listener {
 				labelComposite.setLayout(gl);
 				
 				// For each column, create/add a label with the title and the data
-				int i = 0;
-				for(String columnName : displayObject.getColumnNames()) {
+				for(int i = 0; i < displayObject.getColumnNames().length; ++i) {
 					Label columnNameLabel = new Label(labelComposite, SWT.NONE);
 					columnNameLabel.setText(displayObject.getColumnTitles()[i]);
 					
 					Label columnValueLabel = new Label(labelComposite, SWT.NONE);
-					try {
-						Field field = treeObject.getClass().getDeclaredField(columnName);
-						String val = (String)field.get(treeObject);
-						if(val == null)
-						{
-							val = "";
-						}
-						columnValueLabel.setText(val);
-					} catch (NoSuchFieldException e) {
-						// TODO Auto-generated catch block
-						e.printStackTrace();
-					} catch (IllegalAccessException e) {
-						// TODO Auto-generated catch block
-						e.printStackTrace();
+					String val = displayObject.getText(i, 0);
+					if(val == null)
+					{
+						val = "";
 					}
-					i++;
+					columnValueLabel.setText(val);
 				}
 				
 				currentComposites.add(labelComposite);
 			}
 			else {
-				Table table = new Table(rightSashForm, SWT.MULTI | SWT.BORDER | SWT.FULL_SELECTION);
-				table.setLinesVisible(true);
-				table.setHeaderVisible(true);
-
-				for(String columnName : displayObject.getColumnTitles()) {
-					TableColumn column = new TableColumn(table, SWT.NONE);
-					column.setText(columnName);
-					column.pack();
-				}
-
-				for(TreeObject to1 : displayObject.getObjects())
-				{
-					TableItem item = new TableItem(table, SWT.NONE);
-					int i = 0;
-					for(String columnName : displayObject.getColumnNames()) {
-						try {
-							Field field = to1.getClass().getDeclaredField(columnName);
-							String val = (String)field.get(to1);
-							if(val == null)
-							{
-								val = "";
-							}
-							item.setText(i, val);
-						} catch (NoSuchFieldException e) {
-							// TODO Auto-generated catch block
-							e.printStackTrace();
-						} catch (IllegalAccessException e) {
-							// TODO Auto-generated catch block
-							e.printStackTrace();
-						}
-						i++;
-					}
-				}
-				// Resize the Columns
-				Rectangle area = rightSashForm.getClientArea();
-				Point size = table.computeSize(SWT.DEFAULT, SWT.DEFAULT);
-				ScrollBar vBar = table.getVerticalBar();
-				int width = area.width - table.computeTrim(0,0,0,0).width - vBar.getSize().x;
-				if (size.y > area.height + table.getHeaderHeight()) {
-					// Subtract the scrollbar width from the total column width
-					// if a vertical scrollbar will be required
-					Point vBarSize = vBar.getSize();
-					width -= vBarSize.x;
-				}
-				for(TableColumn column : table.getColumns())
-				{
-					column.setWidth(width / table.getColumnCount());
-				}
+				TableView tableView = new TableView(rightSashForm, displayObject, rowCache.getRows(to, displayIndex));
 
 				// Add to the list of current composites
-				currentComposites.add(table);
+				currentComposites.add(tableView.getComposite());
 			}
 		}
 	}
 	
-	private void exportPdf() {
+	/**
+	 * Asks for a RowFilter expression for the report's tables.
+	 * @return The expression, or null if the export was cancelled.
+	 */
+	private String askReportFilter() {
+		final Shell filterDialog = new Shell(shell, SWT.DIALOG_TRIM | SWT.APPLICATION_MODAL);
+		filterDialog.setText("Export Filtered PDF");
+		filterDialog.setLayout(new GridLayout(2, false));
+
+		Label label = new Label(filterDialog, SWT.NONE);
+		label.setText("Only include the table rows where (tables without these columns are left whole):");
+		label.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false, 2, 1));
+		final Text text = new Text(filterDialog, SWT.BORDER);
+		text.setMessage("e.g. fileType = \"IPv4\" and fileProtocol = \"TCP\"");
+		GridData textData = new GridData(SWT.FILL, SWT.CENTER, true, false, 2, 1);
+		textData.widthHint = 400;
+		text.setLayoutData(textData);
+
+		final String[] filter = new String[1];
+		Button ok = new Button(filterDialog, SWT.PUSH);
+		ok.setText("Export...");
+		ok.setLayoutData(new GridData(SWT.END, SWT.CENTER, true, false));
+		ok.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent e) {
+				filter[0] = text.getText();
+				filterDialog.close();
+			}
+		});
+		Button cancel = new Button(filterDialog, SWT.PUSH);
+		cancel.setText("Cancel");
+		cancel.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent e) {
+				filterDialog.close();
+			}
+		});
+		filterDialog.setDefaultButton(ok);
+		filterDialog.pack();
+		filterDialog.open();
+		while(!filterDialog.isDisposed()) {
+			if(!shell.getDisplay().readAndDispatch()) {
+				shell.getDisplay().sleep();
+			}
+		}
+		return filter[0];
+	}
+
+	/**
+	 * Starts loading every checked module that isn't in the tree yet.
+	 * @return Whether any are still on their way.
+	 */
+	private boolean loadCheckedModules() {
+		ArrayList<? extends TreeObject> modules = rootObject.getChildObjects();
+		if(modules == null || tree.getItemCount() == 0) {
+			return false;
+		}
+		boolean waiting = false;
+		TreeItem rootItem = tree.getItem(0);
+		for(int i = 0; i < modules.size(); i++) {
+			if(!(modules.get(i) instanceof ModulePlaceholder) || !arena.isChecked(modules.get(i), false)) {
+				continue;
+			}
+			ModulePlaceholder placeholder = (ModulePlaceholder)modules.get(i);
+			// One that loaded and is still a placeholder failed to
+			if(pendingLoads.containsKey(placeholder)) {
+				waiting = true;
+			}
+			else if(!placeholder.isLoaded() || placeholder.getModule() != null) {
+				TreeItem treeItem = rootItem.getItem(i);
+				fillTreeItem(treeItem, placeholder);
+				loadModule(treeItem, placeholder);
+				waiting = true;
+			}
+		}
+		return waiting;
+	}
+
+	/**
+	 * @param filter A RowFilter expression for the report's tables, or null.
+	 */
+	private void exportPdf(String filter) {
+		if(loadCheckedModules()) {
+			showMessage(shell, "Some checked modules haven't loaded yet. Export again once they have.");
+			return;
+		}
+
 		// Save File Dialog
 		FileDialog fileDialog = new FileDialog(shell, SWT.SAVE);
 		String[] filterNames = new String[] {
@@ -387,29 +932,135 @@ public class MacResponseShell implements Listener {
 		
 		// Check the filename selected
 		if (filename == null) {
-			final Shell messageDialog = new Shell(shell, SWT.DIALOG_TRIM);
-			messageDialog.setLayout(new GridLayout(1, true));
-
-			Label label = new Label(messageDialog, SWT.NONE);
-			label.setText("You did not select a valid filename to save to");
-
-			Button ok = new Button(messageDialog, SWT.PUSH);
-			ok.setText("OK");
-			ok.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, false, false));
-			ok.addSelectionListener(new SelectionAdapter() {
-				public void widgetSelected(SelectionEvent e) {
-					messageDialog.close();
-				}
-			});
-			messageDialog.setDefaultButton(ok);
-			messageDialog.pack();
-			messageDialog.open();
+			showMessage(shell, "You did not select a valid filename to save to");
 			return;
 		}
 		
 		// Generate the report!
-		PdfGenerator.generateReport(filename, rootObject);
-		//RtfGenerator.generateReport(filename, rootObject);
+		PdfGenerator.generateReport(filename, rootObject, arena, filter);
+		//RtfGenerator.generateReport(filename, rootObject, arena, filter);
 		System.out.println("Created file: " + filename);
 	}
+
+	/**
+	 * Shows how much heap each loaded module holds, with a button to save
+	 * the report as JSON.
+	 */
+	private void showMemoryReport() {
+		// Walked on this thread, the only one that changes the tree, so
+		// modules can't be swapped in underneath it
+		final MemoryReport[] report = new MemoryReport[1];
+		BusyIndicator.showWhile(shell.getDisplay(), new Runnable() {
+			@Override
+			public void run() {
+				report[0] = MemoryReport.create(rootObject);
+			}
+		});
+
+		final Shell reportDialog = new Shell(shell, SWT.DIALOG_TRIM | SWT.RESIZE);
+		reportDialog.setText("Memory Report");
+		reportDialog.setLayout(new GridLayout(2, false));
+
+		Text text = new Text(reportDialog, SWT.MULTI | SWT.READ_ONLY | SWT.BORDER | SWT.V_SCROLL | SWT.H_SCROLL);
+		text.setText(report[0].toString());
+		GridData textData = new GridData(SWT.FILL, SWT.FILL, true, true, 2, 1);
+		textData.widthHint = 500;
+		textData.heightHint = 400;
+		text.setLayoutData(textData);
+
+		Button save = new Button(reportDialog, SWT.PUSH);
+		save.setText("Save JSON...");
+		save.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent e) {
+				saveMemoryReport(reportDialog, report[0]);
+			}
+		});
+		Button close = new Button(reportDialog, SWT.PUSH);
+		close.setText("Close");
+		close.setLayoutData(new GridData(SWT.END, SWT.CENTER, true, false));
+		close.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent e) {
+				reportDialog.close();
+			}
+		});
+		reportDialog.setDefaultButton(close);
+		reportDialog.pack();
+		reportDialog.open();
+	}
+
+	private void saveMemoryReport(Shell parent, MemoryReport report) {
+		FileDialog fileDialog = new FileDialog(parent, SWT.SAVE);
+		fileDialog.setFilterNames(new String[] { "JSON Files (*.json)" });
+		fileDialog.setFilterExtensions(new String[] { "*.json" });
+		fileDialog.setFileName("memory");
+		String filename = fileDialog.open();
+		if(filename == null) {
+			return;
+		}
+		try {
+			FileWriter writer = new FileWriter(filename);
+			try {
+				writer.write(report.toJson());
+			} finally {
+				writer.close();
+			}
+			System.out.println("Created file: " + filename);
+		} catch (IOException e) {
+			showMessage(parent, "Unable to save " + filename + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Shows a message with an OK button.
+	 */
+	private void showMessage(Shell parent, String message) {
+		final Shell messageDialog = new Shell(parent, SWT.DIALOG_TRIM);
+		messageDialog.setLayout(new GridLayout(1, true));
+
+		Label label = new Label(messageDialog, SWT.NONE);
+		label.setText(message);
+
+		Button ok = new Button(messageDialog, SWT.PUSH);
+		ok.setText("OK");
+		ok.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, false, false));
+		ok.addSelectionListener(new SelectionAdapter() {
+			public void widgetSelected(SelectionEvent e) {
+				messageDialog.close();
+			}
+		});
+		messageDialog.setDefaultButton(ok);
+		messageDialog.pack();
+		messageDialog.open();
+	}
+
+	/** Follows the load of one module, from its loading thread */
+	private class LoadProgress implements ModulePlaceholder.Monitor {
+		private ModulePlaceholder placeholder;
+		private Display display;
+		private volatile long bytesRead = 0;
+		private volatile long recordsParsed = 0;
+		private volatile boolean cancelled = false;
+
+		public LoadProgress(ModulePlaceholder placeholder) {
+			this.placeholder = placeholder;
+			this.display = shell.getDisplay();
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		@Override
+		public void bytesRead(long bytes) {
+			bytesRead = bytes;
+			queueStatusUpdate(display);
+		}
+
+		@Override
+		public void recordsParsed(long records) {
+			recordsParsed = records;
+			queueStatusUpdate(display);
+		}
+	}
 }
@@ -0,0 +1,154 @@
+/*
+
+ MacResponse: Incident Response Toolkit for Mac OS X
+
+ Copyright (C) 2011 - Assured Information Security, Inc. All rights reserved.
+
+ Authors:
+ Paul Petzke <petzkep _at_ ainfosec.com>
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package com.ainfosec.macresponse.console.ui;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.ainfosec.macresponse.db.TreeObject;
+
+/**
+ * The text of table rows that have been shown, kept per tree node so going
+ * back to a node doesn't read its rows from their objects again. Nodes are
+ * dropped, least recently shown first, when the text kept passes a size
+ * (estimated from the lengths of the strings).
+ *
+ * Only used from the UI thread.
+ */
+class RowCache {
+	/** The most the cache takes, whatever the heap */
+	private static final long MAX_SIZE = 64L * 1024 * 1024;
+
+	/** Estimated sizes of an object's header and a reference */
+	private static final int OBJECT_SIZE = 16;
+	private static final int REFERENCE_SIZE = 4;
+	/** A String and its char array, without the chars */
+	private static final int STRING_SIZE = 40;
+
+	private long maxSize;
+	private long size = 0;
+	/** Each node's rows, by its tables; in the order they were last shown */
+	private LinkedHashMap<TreeObject, HashMap<Integer, Rows>> nodes = new LinkedHashMap<TreeObject, HashMap<Integer, Rows>>(16, 0.75f, true);
+
+	/**
+	 * A cache of a sixteenth of the heap, up to 64 MB.
+	 */
+	public RowCache() {
+		this(Math.min(MAX_SIZE, Runtime.getRuntime().maxMemory() / 16));
+	}
+
+	/**
+	 * @param maxSize The estimated bytes of text to keep.
+	 */
+	public RowCache(long maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * @param treeObject A node being shown.
+	 * @param displayIndex Which of its DisplayObjects.
+	 * @return The rows kept for that table, to read and add to.
+	 */
+	public Rows getRows(TreeObject treeObject, int displayIndex) {
+		HashMap<Integer, Rows> tables = nodes.get(treeObject);
+		if(tables == null) {
+			tables = new HashMap<Integer, Rows>();
+			nodes.put(treeObject, tables);
+		}
+		Rows rows = tables.get(displayIndex);
+		if(rows == null) {
+			rows = new Rows(treeObject);
+			tables.put(displayIndex, rows);
+		}
+		return rows;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Drops the nodes shown longest ago, other than one being added to,
+	 * until there's room for more text.
+	 * @return Whether there's room.
+	 */
+	private boolean makeRoom(TreeObject treeObject, long needed) {
+		Iterator<Map.Entry<TreeObject, HashMap<Integer, Rows>>> it = nodes.entrySet().iterator();
+		while(size + needed > maxSize && it.hasNext()) {
+			Map.Entry<TreeObject, HashMap<Integer, Rows>> entry = it.next();
+			if(entry.getKey() == treeObject) {
+				continue;
+			}
+			for(Rows rows : entry.getValue().values()) {
+				size -= rows.size;
+				rows.rows.clear();
+				rows.size = 0;
+			}
+			it.remove();
+		}
+		return size + needed <= maxSize;
+	}
+
+	/**
+	 * The text of one table's rows that have been shown.
+	 */
+	class Rows {
+		private TreeObject treeObject;
+		private HashMap<Integer, String[]> rows = new HashMap<Integer, String[]>();
+		private long size = 0;
+
+		private Rows(TreeObject treeObject) {
+			this.treeObject = treeObject;
+		}
+
+		/**
+		 * @return A row's text, or null if it isn't kept.
+		 */
+		public String[] get(int row) {
+			return rows.get(row);
+		}
+
+		/**
+		 * Keeps a row's text, if there's room for it.
+		 */
+		public void put(int row, String[] text) {
+			long textSize = OBJECT_SIZE + (long)REFERENCE_SIZE * text.length;
+			for(String cell : text) {
+				textSize += STRING_SIZE + 2L * cell.length();
+			}
+			// Its node may have been dropped while it was shown
+			if(!nodes.containsKey(treeObject) || !makeRoom(treeObject, textSize)) {
+				return;
+			}
+			String[] old = rows.put(row, text);
+			if(old == null) {
+				size += textSize;
+				RowCache.this.size += textSize;
+			}
+		}
+	}
+}
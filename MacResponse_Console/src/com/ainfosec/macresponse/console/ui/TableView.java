@@ -0,0 +1,513 @@
+/*
+
+ MacResponse: Incident Response Toolkit for Mac OS X
+
+ Copyright (C) 2011 - Assured Information Security, Inc. All rights reserved.
+
+ Authors:
+ Paul Petzke <petzkep _at_ ainfosec.com>
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package com.ainfosec.macresponse.console.ui;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Listener;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
+import org.eclipse.swt.widgets.TableItem;
+import org.eclipse.swt.widgets.Text;
+
+import com.ainfosec.macresponse.db.DisplayObject;
+import com.ainfosec.macresponse.db.RowFilter;
+import com.ainfosec.macresponse.db.RowSorter;
+
+/**
+ * A DisplayObject's rows in a Table, under a filter box that takes a
+ * RowFilter expression, or text to find in any cell when it isn't one.
+ * The filter is applied as it's typed: after a pause in the typing the
+ * rows are matched in the background, and the matches are shown as they
+ * come in. A filter that's been typed over is stopped.
+ *
+ * The table is virtual: a row's cells are only read when SWT asks for
+ * them (SWT.SetData) as it's scrolled into view, so the number of rows
+ * doesn't matter. Column widths are measured on a sample of the rows.
+ * Clicking a column's header sorts by it (again to reverse it); the sort
+ * is done in the background and the table then reads through its order.
+ */
+class TableView implements Listener {
+	private DisplayObject displayObject;
+	/** The text of rows already read */
+	private RowCache.Rows cachedRows;
+
+	private Composite composite;
+	private Text filterText;
+	private Label filterLabel;
+	private Table table;
+
+	/** The rows measured for the column widths: runs of neighbours (which
+	 * are read together) from places spread over the table */
+	private static final int WIDTH_SAMPLE_RUNS = 10;
+	private static final int WIDTH_SAMPLE_RUN_LENGTH = 20;
+	/** Space around a cell's text */
+	private static final int CELL_PADDING = 12;
+
+	/** How long typing has to pause before the filter is applied, in ms */
+	private static final int FILTER_DELAY = 300;
+	/** Rows matched between checks for a newer filter */
+	private static final int FILTER_CHUNK_SIZE = 4096;
+	/** How often the matches found so far are shown, in ms */
+	private static final long FILTER_UPDATE_INTERVAL = 100;
+
+	/** Filters tables off the UI thread */
+	private static final ExecutorService filterExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "Table Filter");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/** Sorts tables off the UI thread */
+	private static final ExecutorService sortExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "Table Sorter");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/** The DisplayObject row of each table row; null when they're all shown */
+	private int[] rows = null;
+	/** The rows the filter lets through, in order; null for all of them */
+	private int[] filterRows = null;
+	/** Every row in the sorted order; null when unsorted */
+	private int[] order = null;
+	/** The column sorted by, or -1 */
+	private int sortColumn = -1;
+	private boolean sortAscending = true;
+	/** Counts sorts asked for, so only the last one to finish is shown */
+	private int sortCount = 0;
+	/** The filter being matched, or null */
+	private FilterJob filterJob = null;
+
+	/** Applies the filter once typing pauses */
+	private Runnable filterTimer = new Runnable() {
+		@Override
+		public void run() {
+			if(!filterText.isDisposed()) {
+				applyFilter(filterText.getText());
+			}
+		}
+	};
+
+	/**
+	 * @param parent Where the view goes.
+	 * @param displayObject The rows to show.
+	 * @param cachedRows The text kept for these rows from when they were
+	 * last shown; rows read now are added to it.
+	 */
+	public TableView(Composite parent, DisplayObject displayObject, RowCache.Rows cachedRows) {
+		this.displayObject = displayObject;
+		this.cachedRows = cachedRows;
+
+		composite = new Composite(parent, SWT.NONE);
+		GridLayout gridLayout = new GridLayout(2, false);
+		gridLayout.marginWidth = 0;
+		gridLayout.marginHeight = 0;
+		composite.setLayout(gridLayout);
+		composite.setData(this);
+
+		filterText = new Text(composite, SWT.SEARCH | SWT.ICON_SEARCH | SWT.ICON_CANCEL);
+		filterText.setMessage("Filter, e.g. " + getExample());
+		filterText.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+		filterText.addListener(SWT.DefaultSelection, this);
+		filterText.addListener(SWT.Modify, this);
+		filterLabel = new Label(composite, SWT.NONE);
+		filterLabel.setLayoutData(new GridData(SWT.END, SWT.CENTER, false, false));
+
+		table = new Table(composite, SWT.MULTI | SWT.BORDER | SWT.FULL_SELECTION | SWT.VIRTUAL);
+		table.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true, 2, 1));
+		table.setLinesVisible(true);
+		table.setHeaderVisible(true);
+
+		for(String columnName : displayObject.getColumnTitles()) {
+			TableColumn column = new TableColumn(table, SWT.NONE);
+			column.setText(columnName);
+			column.addListener(SWT.Selection, this);
+		}
+		table.addListener(SWT.SetData, this);
+		table.addListener(SWT.Dispose, this);
+		table.setItemCount(displayObject.size());
+		updateFilterLabel();
+		setColumnWidths(parent.getClientArea().width - table.computeTrim(0, 0, 0, 0).width - table.getVerticalBar().getSize().x);
+	}
+
+	public Composite getComposite() {
+		return composite;
+	}
+
+	public Table getTable() {
+		return table;
+	}
+
+	/**
+	 * Selects and shows a row, if the filter lets it through.
+	 * @param row A row of the DisplayObject.
+	 */
+	public void selectRow(int row) {
+		int index = row;
+		if(order != null) {
+			index = indexOf(rows, row);
+		}
+		else if(rows != null) {
+			index = Arrays.binarySearch(rows, row);
+		}
+		if(index < 0 || index >= table.getItemCount()) {
+			return;
+		}
+		table.setSelection(index);
+		table.showSelection();
+		table.setFocus();
+	}
+
+	@Override
+	public void handleEvent(Event event) {
+		if(event.type == SWT.SetData) {
+			// Fill in a row as it's shown
+			TableItem item = (TableItem)event.item;
+			int index = table.indexOf(item);
+			item.setText(getRowText(rows == null ? index : rows[index]));
+		}
+		else if(event.type == SWT.Dispose) {
+			// Stop matching rows nobody will see
+			if(filterJob != null) {
+				filterJob.cancelled.set(true);
+			}
+		}
+		else if(event.widget == filterText && event.type == SWT.Modify) {
+			// Wait for a pause in the typing; this restarts the wait
+			table.getDisplay().timerExec(FILTER_DELAY, filterTimer);
+		}
+		else if(event.widget == filterText) {
+			table.getDisplay().timerExec(-1, filterTimer);
+			applyFilter(filterText.getText());
+		}
+		else if(event.widget instanceof TableColumn) {
+			int column = table.indexOf((TableColumn)event.widget);
+			sortBy(column, column == sortColumn ? !sortAscending : true);
+		}
+	}
+
+	/**
+	 * Shows only the rows matching an expression; all of them if it's empty.
+	 */
+	private void applyFilter(String expression) {
+		if(filterJob != null) {
+			filterJob.cancelled.set(true);
+			filterJob = null;
+		}
+		if(expression.trim().length() == 0) {
+			filterRows = null;
+			updateRows();
+			return;
+		}
+		RowFilter filter;
+		String error = null;
+		try {
+			filter = RowFilter.compile(expression, displayObject);
+		} catch (ParseException e) {
+			filter = RowFilter.containing(expression.trim(), displayObject);
+			error = e.getMessage();
+		}
+		filterJob = new FilterJob(filter, order, error, table.getDisplay());
+		filterLabel.setText("Filtering...");
+		filterLabel.setToolTipText(null);
+		composite.layout();
+		filterExecutor.execute(filterJob);
+	}
+
+	/**
+	 * Matches the rows against a filter in the background, in the order
+	 * they're shown, and passes the matches to the table as they're found.
+	 */
+	private class FilterJob implements Runnable {
+		private RowFilter filter;
+		/** The order being shown when it was started, or null */
+		private int[] order;
+		/** Why the filter isn't an expression, or null */
+		private String error;
+		private Display display;
+		/** Set when the filter's been typed over */
+		private AtomicBoolean cancelled = new AtomicBoolean(false);
+		/** Whether any matches have been shown yet */
+		private boolean started = false;
+
+		FilterJob(RowFilter filter, int[] order, String error, Display display) {
+			this.filter = filter;
+			this.order = order;
+			this.error = error;
+			this.display = display;
+		}
+
+		@Override
+		public void run() {
+			int size = displayObject.size();
+			int[] matches = new int[Math.min(size, FILTER_CHUNK_SIZE)];
+			int count = 0;
+			long lastUpdate = System.currentTimeMillis();
+			for(int start = 0; start < size || start == 0; start += FILTER_CHUNK_SIZE) {
+				if(cancelled.get()) {
+					return;
+				}
+				int end = Math.min(start + FILTER_CHUNK_SIZE, size);
+				for(int i = start; i < end; ++i) {
+					int row = order == null ? i : order[i];
+					if(filter.matches(row)) {
+						if(count == matches.length) {
+							matches = Arrays.copyOf(matches, Math.min(size, matches.length * 2));
+						}
+						matches[count++] = row;
+					}
+				}
+				long now = System.currentTimeMillis();
+				if(end == size || now - lastUpdate >= FILTER_UPDATE_INTERVAL) {
+					update(Arrays.copyOf(matches, count), end == size);
+					lastUpdate = now;
+				}
+			}
+		}
+
+		/**
+		 * Shows the matches so far on the UI thread. Matches are only ever
+		 * added at the end, so the rows already shown stay as they are.
+		 */
+		private void update(final int[] matches, final boolean done) {
+			display.asyncExec(new Runnable() {
+				@Override
+				public void run() {
+					if(table.isDisposed() || filterJob != FilterJob.this) {
+						return;
+					}
+					rows = matches;
+					table.setItemCount(matches.length);
+					if(!started) {
+						table.clearAll();
+						started = true;
+					}
+					if(!done) {
+						filterLabel.setText("Filtering... " + matches.length + " rows so far");
+						composite.layout();
+						return;
+					}
+					filterJob = null;
+					if(order == null) {
+						filterRows = matches;
+					}
+					else {
+						filterRows = matches.clone();
+						Arrays.sort(filterRows);
+					}
+					updateFilterLabel();
+					if(error != null) {
+						filterLabel.setToolTipText("Rows with this text in any column; as a filter it has an error: " + error);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Sorts the table by a column. Orders that have been made before are
+	 * shown right away; others are made in the background.
+	 */
+	private void sortBy(final int column, final boolean ascending) {
+		sortColumn = column;
+		sortAscending = ascending;
+		table.setSortColumn(table.getColumn(column));
+		table.setSortDirection(ascending ? SWT.UP : SWT.DOWN);
+		final int sort = ++sortCount;
+		if(RowSorter.isSorted(displayObject, column, ascending)) {
+			order = RowSorter.sort(displayObject, column, ascending);
+			orderChanged();
+			return;
+		}
+		filterLabel.setText("Sorting...");
+		composite.layout();
+		final Display display = table.getDisplay();
+		sortExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				final int[] sorted = RowSorter.sort(displayObject, column, ascending);
+				display.asyncExec(new Runnable() {
+					@Override
+					public void run() {
+						// Dropped if the table's gone or there's a newer sort
+						if(table.isDisposed() || sort != sortCount) {
+							return;
+						}
+						order = sorted;
+						orderChanged();
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Shows the rows in a new order. A filter that's still being matched
+	 * in the old order is started again.
+	 */
+	private void orderChanged() {
+		if(filterJob != null) {
+			applyFilter(filterText.getText());
+		}
+		else {
+			updateRows();
+		}
+	}
+
+	/**
+	 * Shows the rows the filter lets through, in the sorted order. The
+	 * selected row stays selected.
+	 */
+	private void updateRows() {
+		int index = table.getSelectionIndex();
+		int selectedRow = -1;
+		if(index >= 0 && index < table.getItemCount()) {
+			selectedRow = rows == null ? index : rows[index];
+		}
+		if(order == null) {
+			rows = filterRows;
+		}
+		else if(filterRows == null) {
+			rows = order;
+		}
+		else {
+			rows = RowSorter.select(order, filterRows);
+		}
+		table.setItemCount(rows == null ? displayObject.size() : rows.length);
+		table.clearAll();
+		updateFilterLabel();
+		if(selectedRow >= 0) {
+			selectRow(selectedRow);
+		}
+	}
+
+	private static int indexOf(int[] rows, int row) {
+		for(int i = 0; i < rows.length; ++i) {
+			if(rows[i] == row) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return The text of each cell of a DisplayObject row.
+	 */
+	private String[] getRowText(int row) {
+		String[] text = cachedRows.get(row);
+		if(text != null) {
+			return text;
+		}
+		text = new String[displayObject.getColumnNames().length];
+		for(int i = 0; i < text.length; ++i) {
+			String val = displayObject.getText(i, row);
+			if(val == null)
+			{
+				val = "";
+			}
+			text[i] = val;
+		}
+		cachedRows.put(row, text);
+		return text;
+	}
+
+	/**
+	 * Sizes each column to its title and the widest of a sample of rows
+	 * spread over the table, then shares out any space that's left.
+	 * @param available The width the columns can take without scrolling.
+	 */
+	private void setColumnWidths(int available) {
+		TableColumn[] columns = table.getColumns();
+		int[] widths = new int[columns.length];
+		GC gc = new GC(table);
+		try {
+			for(int i = 0; i < columns.length; ++i) {
+				widths[i] = gc.textExtent(columns[i].getText()).x + CELL_PADDING * 2;
+			}
+			int rowCount = displayObject.size();
+			for(int run = 0; run < WIDTH_SAMPLE_RUNS; ++run) {
+				int first = (int)((long)run * rowCount / WIDTH_SAMPLE_RUNS);
+				int end = Math.min(first + WIDTH_SAMPLE_RUN_LENGTH, (int)((long)(run + 1) * rowCount / WIDTH_SAMPLE_RUNS));
+				for(int row = first; row < end; ++row) {
+					String[] text = getRowText(row);
+					for(int i = 0; i < columns.length; ++i) {
+						widths[i] = Math.max(widths[i], gc.textExtent(text[i]).x + CELL_PADDING);
+					}
+				}
+			}
+		} finally {
+			gc.dispose();
+		}
+
+		// No column takes more than half the table, and the rest is shared
+		int total = 0;
+		for(int i = 0; i < widths.length; ++i) {
+			widths[i] = Math.min(widths[i], Math.max(available / 2, 1));
+			total += widths[i];
+		}
+		int extra = widths.length == 0 ? 0 : Math.max(available - total, 0) / widths.length;
+		for(int i = 0; i < columns.length; ++i) {
+			columns[i].setWidth(widths[i] + extra);
+		}
+	}
+
+	private void updateFilterLabel() {
+		if(filterRows == null) {
+			filterLabel.setText(displayObject.size() + " rows");
+		}
+		else {
+			filterLabel.setText(filterRows.length + " of " + displayObject.size() + " rows");
+		}
+		filterLabel.setToolTipText(null);
+		composite.layout();
+	}
+
+	/**
+	 * @return A filter on the first column, to show how they're written.
+	 */
+	private String getExample() {
+		return displayObject.getColumnNames()[0] + " contains \"...\"";
+	}
+}
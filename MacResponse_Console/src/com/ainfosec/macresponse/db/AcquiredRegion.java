@@ -41,6 +41,15 @@ public class AcquiredRegion extends TreeObject {
 		"File Offset End", 
 	};
 
+	public static final ColumnType[] columnTypes = {
+		ColumnType.HEX_ADDRESS,
+		ColumnType.HEX_ADDRESS,
+		ColumnType.HEX_ADDRESS,
+		ColumnType.HEX_ADDRESS,
+	};
+
+	private static final RowDisplay rowDisplay = new RowDisplay(columnTitles, columnNames, columnTypes);
+
 	public String physicalAddressStart;
 	public String physicalAddressEnd;
 	public String fileOffsetStart;
@@ -58,6 +67,11 @@ public class AcquiredRegion extends TreeObject {
 		return physicalAddressStart + "-" + physicalAddressEnd;
 	}
 
+	@Override
+	protected DisplayData createDisplayData() {
+		return rowDisplay.getDisplayData(this);
+	}
+
 	@Override
 	public void init() {
 		// Setup Children
@@ -68,12 +82,7 @@ public class AcquiredRegion extends TreeObject {
 		}
 		
 		// Setup Display Data
-		if(displayData == null) {
-			displayData = new DisplayData();
-			ArrayList<TreeObject> list = new ArrayList<TreeObject>();
-			list.add(this);
-			displayData.addDisplayObject(new DisplayObject(getTitle(), columnTitles, columnNames, list));
-		}
+		// Built when shown, by rowDisplay
 	}
 
 	@Override
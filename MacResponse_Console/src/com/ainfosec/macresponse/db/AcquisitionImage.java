@@ -83,7 +83,7 @@ public class AcquisitionImage extends TreeObject {
 			ArrayList<TreeObject> list = new ArrayList<TreeObject>();
 			list.add(this);
 			displayData.addDisplayObject(new DisplayObject(getTitle(), getColumnTitles(), getColumnNames(), list));
-			displayData.addDisplayObject(new DisplayObject("Acquired Regions", AcquiredRegion.columnTitles, AcquiredRegion.columnNames, acquiredRegions));
+			displayData.addDisplayObject(new DisplayObject("Acquired Regions", AcquiredRegion.columnTitles, AcquiredRegion.columnNames, AcquiredRegion.columnTypes, acquiredRegions));
 		}
 	}
 
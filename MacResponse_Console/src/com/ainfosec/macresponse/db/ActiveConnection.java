@@ -73,10 +73,10 @@ public class ActiveConnection extends TreeObject {
 			displayData.addDisplayObject(new DisplayObject(getTitle(), getColumnTitles(), getColumnNames(), list));
 			ArrayList<TreeObject> list2 = new ArrayList<TreeObject>();
 			list2.add(localNetworkAddress);
-			displayData.addDisplayObject(new DisplayObject("Local Network Address", LocalNetworkAddress.columnTitles, LocalNetworkAddress.columnNames, list2));
+			displayData.addDisplayObject(new DisplayObject("Local Network Address", LocalNetworkAddress.columnTitles, LocalNetworkAddress.columnNames, LocalNetworkAddress.columnTypes, list2));
 			ArrayList<TreeObject> list3 = new ArrayList<TreeObject>();
 			list3.add(foreignNetworkAddress);
-			displayData.addDisplayObject(new DisplayObject("Foreign Network Address", ForeignNetworkAddress.columnTitles, ForeignNetworkAddress.columnNames, list3));
+			displayData.addDisplayObject(new DisplayObject("Foreign Network Address", ForeignNetworkAddress.columnTitles, ForeignNetworkAddress.columnNames, ForeignNetworkAddress.columnTypes, list3));
 		}
 	}
 
@@ -42,11 +42,29 @@ public class Application extends TreeObject {
 		"Application Version"
 	}; 
 
+	public static final ColumnType[] columnTypes = {
+		ColumnType.STRING,
+		ColumnType.ENUM,
+		ColumnType.STRING,
+		ColumnType.EPOCH_TIME,
+		ColumnType.STRING,
+	};
+
 	public String applicationName;
 	public String applicationType;
 	public String filePath;
 	public String lastModifiedDate;
 	public String applicationVersion;
+
+	/** The filePath's node in the shared PathTrie */
+	private transient int filePathNode = PathTrie.NONE;
+
+	/**
+	 * @return The path, rebuilt from the shared PathTrie once init() has run.
+	 */
+	public String getFilePath() {
+		return PathTrie.getPath(filePathNode, filePath);
+	}
 	
 	static public String getKey() {
 		return "filePath";
@@ -70,6 +88,13 @@ public class Application extends TreeObject {
 
 	@Override
 	public void init() {
+		if(filePathNode == PathTrie.NONE) {
+			filePathNode = PathTrie.intern(filePath);
+			if(filePathNode != PathTrie.NONE) {
+				filePath = null;
+			}
+		}
+		
 		// Child Objects
 		// None!
 		
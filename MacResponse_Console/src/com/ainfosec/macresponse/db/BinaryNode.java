@@ -57,7 +57,7 @@ public class BinaryNode extends TreeObject {
 		// Display Data
 		if((displayData == null) && (applications != null)) {
 			displayData = new DisplayData();
-			displayData.addDisplayObject(new DisplayObject(getTitle(), Application.columnTitles, Application.columnNames, applications));
+			displayData.addDisplayObject(new DisplayObject(getTitle(), Application.columnTitles, Application.columnNames, Application.columnTypes, applications));
 		}
 	}
 }
@@ -27,6 +27,8 @@ package com.ainfosec.macresponse.db;
 import java.util.ArrayList;
 
 public class CaseLogModule extends TreeObject {
+	public static final String title = "Case Log";
+
 	protected String treeNodeTitle = "Case Log";
 	
 	public ArrayList<LogMessage> logMessages = new ArrayList<LogMessage>();
@@ -42,7 +44,7 @@ public class CaseLogModule extends TreeObject {
 
 	@Override
 	public String getTitle() {
-		return "Case Log";
+		return title;
 	}
 
 	@Override
@@ -57,7 +59,7 @@ public class CaseLogModule extends TreeObject {
 		// Setup Display Data
 		if(displayData == null) {
 			displayData = new DisplayData();
-			displayData.addDisplayObject(new DisplayObject(getTitle(), LogMessage.columnTitles, LogMessage.columnNames, logMessages));
+			displayData.addDisplayObject(new DisplayObject(getTitle(), LogMessage.columnTitles, LogMessage.columnNames, LogMessage.columnTypes, logMessages));
 		}
 	}
 }
@@ -0,0 +1,200 @@
+/*
+
+ MacResponse: Incident Response Toolkit for Mac OS X
+
+ Copyright (C) 2011 - Assured Information Security, Inc. All rights reserved.
+
+ Authors:
+ Paul Petzke <petzkep _at_ ainfosec.com>
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package com.ainfosec.macresponse.db;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reads the values of DisplayObject columns from TreeObjects.
+ *
+ * Each (class, column) pair is resolved once into a MethodHandle and
+ * cached, so the table, PDF and RTF renderers don't look anything up per
+ * cell. A column is read through its getter (getFilePath() for "filePath")
+ * when the class has one, so values that aren't stored as plain strings,
+ * like trie-backed paths, still show up; otherwise the field is read.
+ *
+ * Every DisplayObject checks its columns against the class of its rows
+ * with {@link #check(Class, String[])} when it's built, so a misspelt column
+ * fails as soon as its table is made instead of on every cell.
+ */
+public class ColumnAccessors {
+
+	/** A column of a row class */
+	private static class Key {
+		private final Class<?> rowClass;
+		private final String columnName;
+
+		private Key(Class<?> rowClass, String columnName) {
+			this.rowClass = rowClass;
+			this.columnName = columnName;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return rowClass == other.rowClass && columnName.equals(other.columnName);
+		}
+
+		@Override
+		public int hashCode() {
+			return rowClass.hashCode() * 31 + columnName.hashCode();
+		}
+	}
+
+	/** Every accessor takes the row as an Object and returns the value as one */
+	private static final MethodType ACCESSOR_TYPE = MethodType.methodType(Object.class, Object.class);
+
+	private static final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+	private static final ConcurrentHashMap<Key, MethodHandle> accessors = new ConcurrentHashMap<Key, MethodHandle>();
+
+	/**
+	 * Looks up how to read every column of a table.
+	 * @param rowClass The class of the table's rows.
+	 * @param columnNames The table's columns.
+	 * @throws IllegalStateException Naming every column that can't be read.
+	 */
+	public static void check(Class<?> rowClass, String[] columnNames) {
+		ArrayList<String> missing = new ArrayList<String>();
+		for(String columnName : columnNames) {
+			try {
+				getAccessor(rowClass, columnName);
+			} catch (IllegalArgumentException e) {
+				missing.add(rowClass.getSimpleName() + "." + columnName);
+			}
+		}
+		if(!missing.isEmpty()) {
+			throw new IllegalStateException("Unknown display columns: " + missing);
+		}
+	}
+
+	/**
+	 * @param treeObject The row.
+	 * @param columnName The column, as named in getColumnNames().
+	 * @return The column's text, or null if it has no value.
+	 * @throws IllegalArgumentException If the row has no such column.
+	 */
+	public static String getValue(TreeObject treeObject, String columnName) {
+		return toText(getRawValue(treeObject, columnName));
+	}
+
+	/**
+	 * @param treeObject The row.
+	 * @param columnName The column, as named in getColumnNames().
+	 * @return The column's value as stored, e.g. a Long for a primitive
+	 * getter.
+	 * @throws IllegalArgumentException If the row has no such column.
+	 */
+	public static Object getRawValue(TreeObject treeObject, String columnName) {
+		MethodHandle accessor = getAccessor(treeObject.getClass(), columnName);
+		try {
+			return (Object) accessor.invokeExact((Object) treeObject);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new IllegalStateException(t);
+		}
+	}
+
+	/**
+	 * @return How a value read by getRawValue() is shown.
+	 */
+	static String toText(Object value) {
+		if(value instanceof TreeObject) {
+			return ((TreeObject) value).getTitle();
+		}
+		return value == null ? null : value.toString();
+	}
+
+	/**
+	 * Looks up (once) how to read a column.
+	 * @param rowClass The class of the rows.
+	 * @param columnName The column.
+	 * @return A handle taking the row and returning the column's value.
+	 * @throws IllegalArgumentException If the class has no such column.
+	 */
+	public static MethodHandle getAccessor(Class<?> rowClass, String columnName) {
+		Key key = new Key(rowClass, columnName);
+		MethodHandle accessor = accessors.get(key);
+		if(accessor == null) {
+			accessor = createAccessor(rowClass, columnName);
+			accessors.putIfAbsent(key, accessor);
+		}
+		return accessor;
+	}
+
+	private static MethodHandle createAccessor(Class<?> rowClass, String columnName) {
+		try {
+			Method getter = findGetter(rowClass, columnName);
+			if(getter != null) {
+				return lookup.unreflect(getter).asType(ACCESSOR_TYPE);
+			}
+			Field field = findField(rowClass, columnName);
+			if(field != null) {
+				return lookup.unreflectGetter(field).asType(ACCESSOR_TYPE);
+			}
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("Can't read " + rowClass.getSimpleName() + "." + columnName, e);
+		}
+		throw new IllegalArgumentException("No column " + columnName + " in " + rowClass.getSimpleName());
+	}
+
+	private static Method findGetter(Class<?> rowClass, String columnName) {
+		if(columnName.length() == 0) {
+			return null;
+		}
+		String name = "get" + Character.toUpperCase(columnName.charAt(0)) + columnName.substring(1);
+		try {
+			Method method = rowClass.getMethod(name);
+			if(method.getReturnType() == Void.TYPE || Modifier.isStatic(method.getModifiers())) {
+				return null;
+			}
+			return method;
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	private static Field findField(Class<?> rowClass, String columnName) {
+		try {
+			Field field = rowClass.getField(columnName);
+			return Modifier.isStatic(field.getModifiers()) ? null : field;
+		} catch (NoSuchFieldException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,316 @@
+/*
+
+ MacResponse: Incident Response Toolkit for Mac OS X
+
+ Copyright (C) 2011 - Assured Information Security, Inc. All rights reserved.
+
+ Authors:
+ Paul Petzke <petzkep _at_ ainfosec.com>
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package com.ainfosec.macresponse.db;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+
+/**
+ * What kind of value a DisplayObject column holds.
+ *
+ * Every type but STRING has a long key for each value, parsed once when
+ * the DisplayObject is built, so columns can be sorted, compared and
+ * filtered without parsing text. Keys order the same way as the values
+ * when compared with {@link #compare(long, long)}: addresses and times
+ * numerically, IPv4 before IPv6, and enum values alphabetically. A value
+ * that can't be parsed has the key {@link #NO_VALUE}, which is reserved in
+ * every type (see there).
+ */
+public enum ColumnType {
+	/** Free text; no key */
+	STRING,
+	/** A decimal integer */
+	LONG,
+	/** An address or size written in hex, e.g. "0x7fff5fc00000" */
+	HEX_ADDRESS,
+	/** A time; the key is seconds since 1970 */
+	EPOCH_TIME,
+	/** An IPv4 or IPv6 address */
+	IP_ADDRESS,
+	/** One of a few repeated values; the key indexes the column's sorted values */
+	ENUM;
+
+	/**
+	 * The key of an empty or unreadable value. It's taken out of every
+	 * type's range:
+	 * <ul>
+	 * <li>LONG: -9223372036854775808 reads as no value.</li>
+	 * <li>HEX_ADDRESS: 0x8000000000000000 reads as no value; every other
+	 * 64-bit address is kept (kernel addresses start with 0xffffff).</li>
+	 * <li>EPOCH_TIME: times before 1970 aren't collected, so negative
+	 * numbers from a getter are unknown times, see {@link #fromNumber(long)}.</li>
+	 * <li>IP_ADDRESS and ENUM keys are never negative.</li>
+	 * </ul>
+	 */
+	public static final long NO_VALUE = Long.MIN_VALUE;
+
+	/** Flags IPv6 keys so they sort after every IPv4 address */
+	private static final long IPV6_FLAG = 1L << 56;
+
+	/** The formats dates are written in by the collector */
+	private static final String[] DATE_FORMATS = {
+		"yyyy-MM-dd HH:mm:ss Z",
+		"yyyy-MM-dd HH:mm:ss",
+	};
+
+	private static final ThreadLocal<SimpleDateFormat[]> dateFormats = new ThreadLocal<SimpleDateFormat[]>() {
+		@Override
+		protected SimpleDateFormat[] initialValue() {
+			SimpleDateFormat[] formats = new SimpleDateFormat[DATE_FORMATS.length];
+			for(int i = 0; i < formats.length; ++i) {
+				formats[i] = new SimpleDateFormat(DATE_FORMATS[i]);
+				formats[i].setTimeZone(TimeZone.getTimeZone("UTC"));
+				formats[i].setLenient(false);
+			}
+			return formats;
+		}
+	};
+
+	/**
+	 * @return Whether values of this type have keys.
+	 */
+	public boolean hasKeys() {
+		return this != STRING;
+	}
+
+	/**
+	 * Parses a value's text into its key. ENUM keys depend on the other
+	 * values of the column, so they're assigned by the DisplayObject.
+	 * @param text The value as read from the module.
+	 * @return The key, or NO_VALUE.
+	 */
+	public long parse(String text) {
+		if(text == null) {
+			return NO_VALUE;
+		}
+		text = text.trim();
+		if(text.length() == 0) {
+			return NO_VALUE;
+		}
+		switch (this) {
+		case LONG:
+			return parseNumber(text, 10);
+		case HEX_ADDRESS:
+			return parseHex(text);
+		case EPOCH_TIME:
+			return parseTime(text);
+		case IP_ADDRESS:
+			return parseAddress(text);
+		default:
+			return NO_VALUE;
+		}
+	}
+
+	/**
+	 * Turns a number read from a getter into its key. Getters of times
+	 * return a negative number (like FileStatColumns.UNKNOWN) when they
+	 * don't know, and IP address keys are never negative, so negative
+	 * numbers are NO_VALUE for those types. LONG and HEX_ADDRESS numbers
+	 * use every bit and are kept as they are.
+	 * @param number The getter's value.
+	 * @return The key, or NO_VALUE.
+	 */
+	public long fromNumber(long number) {
+		switch (this) {
+		case EPOCH_TIME:
+		case IP_ADDRESS:
+			return number < 0 ? NO_VALUE : number;
+		default:
+			return number;
+		}
+	}
+
+	/**
+	 * Writes a key back as text, for values that are only kept as keys.
+	 * @param key A key of this type.
+	 * @return The text, or null for NO_VALUE.
+	 */
+	public String format(long key) {
+		if(key == NO_VALUE) {
+			return null;
+		}
+		switch (this) {
+		case HEX_ADDRESS:
+			return "0x" + Long.toHexString(key);
+		case EPOCH_TIME:
+			return dateFormats.get()[0].format(key * 1000);
+		case IP_ADDRESS:
+			if((key & IPV6_FLAG) == 0) {
+				return ((key >>> 24) & 0xff) + "." + ((key >>> 16) & 0xff) + "." + ((key >>> 8) & 0xff) + "." + (key & 0xff);
+			}
+			// Only the top of an IPv6 address is kept
+			return null;
+		default:
+			return Long.toString(key);
+		}
+	}
+
+	/**
+	 * Orders two keys of this type; NO_VALUE comes first. Hex addresses
+	 * use all 64 bits (kernel addresses start with 0xffffff), so they're
+	 * compared unsigned.
+	 */
+	public int compare(long key1, long key2) {
+		if(key1 == key2) {
+			return 0;
+		}
+		if(key1 == NO_VALUE || key2 == NO_VALUE) {
+			return key1 == NO_VALUE ? -1 : 1;
+		}
+		if(this == HEX_ADDRESS) {
+			key1 += Long.MIN_VALUE;
+			key2 += Long.MIN_VALUE;
+		}
+		return key1 < key2 ? -1 : 1;
+	}
+
+	private static long parseNumber(String text, int radix) {
+		try {
+			return Long.parseLong(text, radix);
+		} catch (NumberFormatException e) {
+			return NO_VALUE;
+		}
+	}
+
+	private static long parseHex(String text) {
+		if(text.startsWith("0x") || text.startsWith("0X")) {
+			text = text.substring(2);
+		}
+		// Addresses can use all 64 bits
+		if(text.length() == 0 || text.length() > 16) {
+			return NO_VALUE;
+		}
+		long value = 0;
+		for(int i = 0; i < text.length(); ++i) {
+			int digit = Character.digit(text.charAt(i), 16);
+			if(digit < 0) {
+				return NO_VALUE;
+			}
+			value = (value << 4) | digit;
+		}
+		return value;
+	}
+
+	private static long parseTime(String text) {
+		long seconds = parseNumber(text, 10);
+		if(seconds != NO_VALUE) {
+			return seconds;
+		}
+		for(SimpleDateFormat format : dateFormats.get()) {
+			try {
+				return format.parse(text).getTime() / 1000;
+			} catch (ParseException e) {
+				// Try the next format
+			}
+		}
+		return NO_VALUE;
+	}
+
+	/**
+	 * IPv4 addresses (dotted, or hex like the netmasks) are their 32-bit
+	 * value. IPv6 addresses are IPV6_FLAG plus their first 56 bits, which
+	 * is enough to order and group them by network.
+	 */
+	private static long parseAddress(String text) {
+		if(text.startsWith("0x") || text.startsWith("0X")) {
+			long value = parseHex(text);
+			return value >= 0 && value <= 0xffffffffL ? value : NO_VALUE;
+		}
+		if(text.indexOf(':') >= 0) {
+			return parseIpv6(text);
+		}
+		String[] octets = text.split("\\.", -1);
+		if(octets.length != 4) {
+			return NO_VALUE;
+		}
+		long value = 0;
+		for(String octet : octets) {
+			long b = octet.length() > 3 ? NO_VALUE : parseNumber(octet, 10);
+			if(b < 0 || b > 255) {
+				return NO_VALUE;
+			}
+			value = (value << 8) | b;
+		}
+		return value;
+	}
+
+	private static long parseIpv6(String text) {
+		// Drop a zone ("%en0") and a prefix length ("/64")
+		int end = text.length();
+		int zone = text.indexOf('%');
+		if(zone >= 0) {
+			end = zone;
+		}
+		int prefix = text.indexOf('/');
+		if(prefix >= 0 && prefix < end) {
+			end = prefix;
+		}
+		text = text.substring(0, end);
+
+		int gap = text.indexOf("::");
+		if(gap >= 0 && text.indexOf("::", gap + 1) >= 0) {
+			return NO_VALUE;
+		}
+		String[] head = gap >= 0 ? split(text.substring(0, gap)) : split(text);
+		String[] tail = gap >= 0 ? split(text.substring(gap + 2)) : new String[0];
+		int missing = 8 - head.length - tail.length;
+		if((gap < 0 && missing != 0) || (gap >= 0 && missing < 1)) {
+			return NO_VALUE;
+		}
+		int[] groups = new int[8];
+		for(int i = 0; i < head.length; ++i) {
+			groups[i] = parseGroup(head[i]);
+		}
+		for(int i = 0; i < tail.length; ++i) {
+			groups[8 - tail.length + i] = parseGroup(tail[i]);
+		}
+		long value = 0;
+		for(int i = 0; i < 4; ++i) {
+			if(groups[i] < 0) {
+				return NO_VALUE;
+			}
+			value = (value << 16) | groups[i];
+		}
+		for(int i = 4; i < 8; ++i) {
+			if(groups[i] < 0) {
+				return NO_VALUE;
+			}
+		}
+		return IPV6_FLAG | (value >>> 8);
+	}
+
+	private static String[] split(String groups) {
+		return groups.length() == 0 ? new String[0] : groups.split(":", -1);
+	}
+
+	private static int parseGroup(String group) {
+		if(group.length() == 0 || group.length() > 4) {
+			return -1;
+		}
+		long value = parseNumber(group, 16);
+		return value < 0 ? -1 : (int) value;
+	}
+}
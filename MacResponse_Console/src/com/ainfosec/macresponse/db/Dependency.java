@@ -24,14 +24,14 @@
 
 package com.ainfosec.macresponse.db;
 
-import java.util.ArrayList;
-
 public class Dependency extends TreeObject {
 
 	public static final String[] columnNames = { "driverIndex" };
 
 	public static final String[] columnTitles = { "Driver Index" };
 
+	private static final RowDisplay rowDisplay = new RowDisplay(columnTitles, columnNames, null);
+
 	public String driverIndex;
 
 	@Override
@@ -49,17 +49,17 @@ public class Dependency extends TreeObject {
 		return driverIndex;
 	}
 
+	@Override
+	protected DisplayData createDisplayData() {
+		return rowDisplay.getDisplayData(this);
+	}
+
 	@Override
 	public void init() {
 		// Setup Children
 		// None
 		
 		// Setup Display Data
-		if(displayData == null) {
-			displayData = new DisplayData();
-			ArrayList<TreeObject> list = new ArrayList<TreeObject>();
-			list.add(this);
-			displayData.addDisplayObject(new DisplayObject(getTitle(), columnTitles, columnNames, list));
-		}
+		// Built when shown, by rowDisplay
 	}
 }
@@ -27,6 +27,8 @@ package com.ainfosec.macresponse.db;
 import java.util.ArrayList;
 
 public class DiskInformationModule extends TreeObject {
+	public static final String title = "Disk Information";
+
 	protected String treeNodeTitle = "Disk Information";
 	
 	public ArrayList<MountedDisk> mountedDisks = new ArrayList<MountedDisk>();
@@ -42,7 +44,7 @@ public class DiskInformationModule extends TreeObject {
 
 	@Override
 	public String getTitle() {
-		return "Disk Information";
+		return title;
 	}
 
 	@Override
@@ -57,7 +59,7 @@ public class DiskInformationModule extends TreeObject {
 		// Setup Display Data
 		if(displayData == null) {
 			displayData = new DisplayData();
-			displayData.addDisplayObject(new DisplayObject(getTitle(), MountedDisk.columnTitles, MountedDisk.columnNames, mountedDisks));
+			displayData.addDisplayObject(new DisplayObject(getTitle(), MountedDisk.columnTitles, MountedDisk.columnNames, MountedDisk.columnTypes, mountedDisks));
 		}
 	}
 }
@@ -24,26 +24,69 @@
 
 package com.ainfosec.macresponse.db;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
 
 public class DisplayObject {
 	private String title;
 	private String[] columnTitles;
 	private String[] columnNames;
-	private ArrayList<? extends TreeObject> objects = null;
+	private ColumnType[] columnTypes;
+	private List<? extends TreeObject> objects = null;
+
+	/** The key of every row, per column; null for STRING columns and for FileTable rows */
+	private long[][] columnKeys;
+	/** The sorted values of each ENUM column; null for the other columns */
+	private String[][] enumValues;
 	
-	public DisplayObject(String title, String[] columnTitles, String[] columnNames, ArrayList<? extends TreeObject> objects) {
+	public DisplayObject(String title, String[] columnTitles, String[] columnNames, List<? extends TreeObject> objects) {
+		this(title, columnTitles, columnNames, null, objects);
+	}
+
+	/**
+	 * Checks that every column can be read from the rows, then parses the
+	 * key of every typed column of every row, so sorting and filtering
+	 * never go back to the text. The rows of a FileTable are read
+	 * from its stat columns instead.
+	 * @param columnTypes The type of each column; null if they're all STRING.
+	 * @throws IllegalStateException If a column can't be read from the rows.
+	 */
+	public DisplayObject(String title, String[] columnTitles, String[] columnNames, ColumnType[] columnTypes, List<? extends TreeObject> objects) {
 		this.title = title;
 		this.objects = objects;
 		this.columnNames = columnNames;
 		this.columnTitles = columnTitles;
+		if(columnTypes == null) {
+			columnTypes = new ColumnType[columnNames.length];
+			Arrays.fill(columnTypes, ColumnType.STRING);
+		}
+		this.columnTypes = columnTypes;
+		if(objects != null && !objects.isEmpty()) {
+			ColumnAccessors.check(objects.get(0).getClass(), columnNames);
+		}
+		this.columnKeys = new long[columnNames.length][];
+		this.enumValues = new String[columnNames.length][];
+		if(objects instanceof FileTable) {
+			int fileTypeColumn = Arrays.asList(columnNames).indexOf("fileType");
+			if(fileTypeColumn >= 0) {
+				enumValues[fileTypeColumn] = FileStatColumns.FILE_TYPES;
+			}
+		}
+		else if(objects != null) {
+			for(int column = 0; column < columnNames.length; ++column) {
+				if(columnTypes[column].hasKeys()) {
+					parseKeys(column);
+				}
+			}
+		}
 	}
 
 	public String getTitle() {
 		return title;
 	}
 
-	public ArrayList<? extends TreeObject> getObjects() {
+	public List<? extends TreeObject> getObjects() {
 		return objects;
 	}
 	
@@ -54,4 +97,87 @@ public class DisplayObject {
 	public String[] getColumnTitles() {
 		return columnTitles;
 	}
+
+	public ColumnType[] getColumnTypes() {
+		return columnTypes;
+	}
+
+	/**
+	 * @return The number of rows.
+	 */
+	public int size() {
+		return objects == null ? 0 : objects.size();
+	}
+
+	/**
+	 * @param column A column index.
+	 * @param row A row index.
+	 * @return The row's key for the column, or ColumnType.NO_VALUE if it has
+	 * none (always, for STRING columns).
+	 */
+	public long getKey(int column, int row) {
+		if(objects instanceof FileTable) {
+			return ((FileTable) objects).getKey(columnNames[column], row);
+		}
+		long[] keys = columnKeys[column];
+		return keys == null ? ColumnType.NO_VALUE : keys[row];
+	}
+
+	/**
+	 * @param column An ENUM column.
+	 * @return Its values in key order, or null if it isn't an ENUM column.
+	 */
+	public String[] getEnumValues(int column) {
+		return enumValues[column];
+	}
+
+	/**
+	 * @param column A column index.
+	 * @param row A row index.
+	 * @return The text to show for the cell, or null if it has no value.
+	 * Values that are only kept as numbers (like a FileTable's times) are
+	 * written out by the column's type.
+	 */
+	public String getText(int column, int row) {
+		Object value = ColumnAccessors.getRawValue(objects.get(row), columnNames[column]);
+		ColumnType type = columnTypes[column];
+		if(value instanceof Number && type != ColumnType.STRING && type != ColumnType.ENUM) {
+			return type.format(getKey(column, row));
+		}
+		return ColumnAccessors.toText(value);
+	}
+
+	private void parseKeys(int column) {
+		ColumnType type = columnTypes[column];
+		String columnName = columnNames[column];
+		int size = objects.size();
+		long[] keys = new long[size];
+		if(type == ColumnType.ENUM) {
+			String[] values = new String[size];
+			TreeSet<String> distinct = new TreeSet<String>();
+			for(int row = 0; row < size; ++row) {
+				values[row] = ColumnAccessors.getValue(objects.get(row), columnName);
+				if(values[row] != null) {
+					distinct.add(values[row]);
+				}
+			}
+			String[] sorted = distinct.toArray(new String[distinct.size()]);
+			for(int row = 0; row < size; ++row) {
+				keys[row] = values[row] == null ? ColumnType.NO_VALUE : Arrays.binarySearch(sorted, values[row]);
+			}
+			enumValues[column] = sorted;
+		}
+		else {
+			for(int row = 0; row < size; ++row) {
+				Object value = ColumnAccessors.getRawValue(objects.get(row), columnName);
+				if(value instanceof Number) {
+					keys[row] = type.fromNumber(((Number) value).longValue());
+				}
+				else {
+					keys[row] = type.parse(ColumnAccessors.toText(value));
+				}
+			}
+		}
+		columnKeys[column] = keys;
+	}
 }
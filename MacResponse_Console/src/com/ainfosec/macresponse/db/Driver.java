@@ -45,6 +45,17 @@ public class Driver extends TreeObject {
 		"Driver Name", 
 		"Driver Version" 
 	};
+
+	public static final ColumnType[] columnTypes = {
+		ColumnType.LONG,
+		ColumnType.LONG,
+		ColumnType.HEX_ADDRESS,
+		ColumnType.HEX_ADDRESS,
+		ColumnType.STRING,
+		ColumnType.STRING,
+	};
+
+	private static final RowDisplay rowDisplay = new RowDisplay(columnTitles, columnNames, columnTypes);
 	
 	public String driverIndex;
 	public String driverRefs;
@@ -70,6 +81,11 @@ public class Driver extends TreeObject {
 		return driverName;
 	}
 
+	@Override
+	protected DisplayData createDisplayData() {
+		return rowDisplay.getDisplayData(this);
+	}
+
 	@Override
 	public void init() {
 		// Setup Children
@@ -80,11 +96,6 @@ public class Driver extends TreeObject {
 		}
 		
 		// Setup Display Data
-		if(displayData == null) {
-			displayData = new DisplayData();
-			ArrayList<TreeObject> list = new ArrayList<TreeObject>();
-			list.add(this);
-			displayData.addDisplayObject(new DisplayObject(getTitle(), columnTitles, columnNames, list));
-		}
+		// Built when shown, by rowDisplay
 	}
 }
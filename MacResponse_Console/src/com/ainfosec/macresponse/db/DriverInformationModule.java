@@ -27,6 +27,8 @@ package com.ainfosec.macresponse.db;
 import java.util.ArrayList;
 
 public class DriverInformationModule extends TreeObject {
+	public static final String title = "Driver Information";
+
 	
 	public ArrayList<Driver> drivers = new ArrayList<Driver>();
 	
@@ -40,7 +42,7 @@ public class DriverInformationModule extends TreeObject {
 
 	@Override
 	public String getTitle() {
-		return "Driver Information";
+		return title;
 	}
 
 	@Override
@@ -55,7 +57,7 @@ public class DriverInformationModule extends TreeObject {
 		// Setup Display Data
 		if(displayData == null) {
 			displayData = new DisplayData();
-			displayData.addDisplayObject(new DisplayObject(getTitle(), Driver.columnTitles, Driver.columnNames, drivers));
+			displayData.addDisplayObject(new DisplayObject(getTitle(), Driver.columnTitles, Driver.columnNames, Driver.columnTypes, drivers));
 		}
 	}
 }
@@ -39,6 +39,13 @@ public class EfiMemoryRegion extends TreeObject {
 		"Range Is DRAM?", 
 	}; 
 
+	public static final ColumnType[] columnTypes = {
+		ColumnType.HEX_ADDRESS,
+		ColumnType.HEX_ADDRESS,
+		ColumnType.ENUM,
+		ColumnType.ENUM,
+	};
+
 	public String physicalAddressStart;
 	public String physicalAddressEnd;
 	public String efiMemoryRegionType;
@@ -60,7 +60,7 @@ public class EfiMemoryRegionNode extends TreeObject {
 		// Display Data
 		if((displayData == null) && (regions != null)) {
 			displayData = new DisplayData();
-			displayData.addDisplayObject(new DisplayObject(getTitle(), EfiMemoryRegion.columnTitles, EfiMemoryRegion.columnNames, regions));
+			displayData.addDisplayObject(new DisplayObject(getTitle(), EfiMemoryRegion.columnTitles, EfiMemoryRegion.columnNames, EfiMemoryRegion.columnTypes, regions));
 		}
 	}
 
@@ -0,0 +1,480 @@
+/*
+
+ MacResponse: Incident Response Toolkit for Mac OS X
+
+ Copyright (C) 2011 - Assured Information Security, Inc. All rights reserved.
+
+ Authors:
+ Paul Petzke <petzkep _at_ ainfosec.com>
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package com.ainfosec.macresponse.db;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Links the TreeObjects of every module by the entities they mention: a
+ * pid, a file path, a user (name or uid) or an IP address. Each loaded
+ * module is added as it's loaded, and finding everything that mentions a
+ * value is a hash lookup.
+ *
+ * Values are normalized before they're used as keys, so "/usr//bin/" and
+ * "/usr/bin" or "::FFFF:10.0.0.1" and "10.0.0.1" are the same key. A user
+ * name and its uid (from the User Information module) find each other.
+ *
+ * The filesystem table is too big to hold a key and a reference per row,
+ * so its rows are indexed by row number instead: an open-addressed table
+ * of path hashes (confirmed against the row's path on lookup) and the rows
+ * of each uid. Its rows are only paged in when a match is read.
+ */
+public class EntityIndex {
+	/** What a key identifies */
+	public enum Kind {
+		PID,
+		PATH,
+		USER,
+		ADDRESS
+	}
+
+	/** A normalized value of a kind */
+	public static class Key {
+		public final Kind kind;
+		public final String value;
+
+		Key(Kind kind, String value) {
+			this.kind = kind;
+			this.value = value;
+		}
+
+		@Override
+		public String toString() {
+			return kind + " " + value;
+		}
+	}
+
+	private EnumMap<Kind, HashMap<String, ArrayList<TreeObject>>> objects = new EnumMap<Kind, HashMap<String, ArrayList<TreeObject>>>(Kind.class);
+	/** User name to uid and uid to user name */
+	private HashMap<String, String> userAliases = new HashMap<String, String>();
+
+	private FileTable fileTable = null;
+	/** The row (plus one) of each path hash, by open addressing; 0 is empty */
+	private int[] pathRows = new int[0];
+	private int[] pathHashes = new int[0];
+	/** The rows owned by each uid */
+	private HashMap<Integer, int[]> uidRows = new HashMap<Integer, int[]>();
+
+	public EntityIndex() {
+		for(Kind kind : Kind.values()) {
+			objects.put(kind, new HashMap<String, ArrayList<TreeObject>>());
+		}
+	}
+
+	/**
+	 * Indexes a module and everything under it. May be called from several
+	 * loading threads at once.
+	 * @param module A loaded module.
+	 */
+	public void addModule(TreeObject module) {
+		if(module instanceof FilesystemInformationModule) {
+			addFileTable(((FilesystemInformationModule) module).fileTable);
+			return;
+		}
+
+		// Collect outside the lock, so modules are walked in parallel
+		ArrayList<TreeObject> found = new ArrayList<TreeObject>();
+		ArrayList<Key> keys = new ArrayList<Key>();
+		collect(module, found, keys);
+
+		synchronized (this) {
+			for(int i = 0; i < found.size(); ++i) {
+				Key key = keys.get(i);
+				HashMap<String, ArrayList<TreeObject>> map = objects.get(key.kind);
+				ArrayList<TreeObject> list = map.get(key.value);
+				if(list == null) {
+					list = new ArrayList<TreeObject>(2);
+					map.put(key.value, list);
+				}
+				if(list.isEmpty() || list.get(list.size() - 1) != found.get(i)) {
+					list.add(found.get(i));
+				}
+			}
+			for(TreeObject treeObject : found) {
+				if(treeObject instanceof User) {
+					User user = (User) treeObject;
+					String name = normalize(Kind.USER, user.userName);
+					String uid = normalize(Kind.USER, user.uid);
+					if(name != null && uid != null) {
+						userAliases.put(name, uid);
+						userAliases.put(uid, name);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds everything that mentions a value.
+	 * @param kind What the value is.
+	 * @param value The value, normalized or not.
+	 * @return The objects, in load order; empty if there are none.
+	 */
+	public List<TreeObject> find(Kind kind, String value) {
+		String key = normalize(kind, value);
+		if(key == null) {
+			return Collections.emptyList();
+		}
+		ArrayList<TreeObject> found = new ArrayList<TreeObject>();
+		int[] rows = null;
+		FileTable table;
+		synchronized (this) {
+			table = fileTable;
+			addAll(found, objects.get(kind).get(key));
+			String alias = kind == Kind.USER ? userAliases.get(key) : null;
+			if(alias != null) {
+				// A User is under both its name and its uid
+				Set<TreeObject> seen = Collections.newSetFromMap(new IdentityHashMap<TreeObject, Boolean>());
+				seen.addAll(found);
+				List<TreeObject> aliased = objects.get(kind).get(alias);
+				if(aliased != null) {
+					for(TreeObject treeObject : aliased) {
+						if(seen.add(treeObject)) {
+							found.add(treeObject);
+						}
+					}
+				}
+			}
+			if(table != null && kind == Kind.USER) {
+				String uid = isNumber(key) ? key : alias;
+				if(uid != null) {
+					try {
+						rows = uidRows.get(Integer.parseInt(uid));
+					} catch (NumberFormatException e) {
+						// Not an int, so no file has it
+					}
+				}
+			}
+		}
+		if(table != null && kind == Kind.PATH) {
+			int row = findPath(table, key);
+			if(row >= 0) {
+				rows = new int[] { row };
+			}
+		}
+		if(rows == null) {
+			return found;
+		}
+		return new Matches(found, table, rows);
+	}
+
+	/**
+	 * @return The normalized keys a TreeObject is indexed under.
+	 */
+	public static List<Key> getKeys(TreeObject treeObject) {
+		ArrayList<Key> keys = new ArrayList<Key>();
+		if(treeObject instanceof Process) {
+			addKey(keys, Kind.PID, ((Process) treeObject).pid);
+		}
+		else if(treeObject instanceof LoginSession) {
+			LoginSession loginSession = (LoginSession) treeObject;
+			addKey(keys, Kind.PID, loginSession.pid);
+			addKey(keys, Kind.USER, loginSession.userName);
+		}
+		else if(treeObject instanceof User) {
+			User user = (User) treeObject;
+			addKey(keys, Kind.USER, user.userName);
+			addKey(keys, Kind.USER, user.uid);
+		}
+		else if(treeObject instanceof FileVaultLoggedInUser) {
+			FileVaultLoggedInUser user = (FileVaultLoggedInUser) treeObject;
+			addKey(keys, Kind.USER, user.userName);
+			addKey(keys, Kind.PATH, user.mountPoint);
+		}
+		else if(treeObject instanceof FilePathInfo) {
+			FilePathInfo filePathInfo = (FilePathInfo) treeObject;
+			addKey(keys, Kind.PATH, FileTable.getLinkPath(filePathInfo.getFilePath()));
+			if(filePathInfo.getUid() != FileStatColumns.UNKNOWN) {
+				addKey(keys, Kind.USER, Integer.toString(filePathInfo.getUid()));
+			}
+		}
+		else if(treeObject instanceof OpenFile) {
+			OpenFile openFile = (OpenFile) treeObject;
+			addKey(keys, Kind.PATH, openFile.filePath);
+			if(openFile.localNetworkAddress != null) {
+				addKey(keys, Kind.ADDRESS, openFile.localNetworkAddress.networkAddressValue);
+			}
+			if(openFile.foreignNetworkAddress != null) {
+				addKey(keys, Kind.ADDRESS, openFile.foreignNetworkAddress.networkAddressValue);
+			}
+		}
+		else if(treeObject instanceof Application) {
+			addKey(keys, Kind.PATH, ((Application) treeObject).filePath);
+		}
+		else if(treeObject instanceof PropertyList) {
+			addKey(keys, Kind.PATH, ((PropertyList) treeObject).filePath);
+		}
+		else if(treeObject instanceof NetworkAddress) {
+			addKey(keys, Kind.ADDRESS, ((NetworkAddress) treeObject).networkAddressValue);
+		}
+		else if(treeObject instanceof ActiveConnection) {
+			ActiveConnection activeConnection = (ActiveConnection) treeObject;
+			if(activeConnection.localNetworkAddress != null) {
+				addKey(keys, Kind.ADDRESS, activeConnection.localNetworkAddress.networkAddressValue);
+			}
+			if(activeConnection.foreignNetworkAddress != null) {
+				addKey(keys, Kind.ADDRESS, activeConnection.foreignNetworkAddress.networkAddressValue);
+			}
+		}
+		else if(treeObject instanceof RoutingTableEntry) {
+			RoutingTableEntry routingTableEntry = (RoutingTableEntry) treeObject;
+			if(routingTableEntry.networkDestination != null) {
+				addKey(keys, Kind.ADDRESS, routingTableEntry.networkDestination.networkAddressValue);
+			}
+			if(routingTableEntry.networkGateway != null) {
+				addKey(keys, Kind.ADDRESS, routingTableEntry.networkGateway.networkAddressValue);
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 * Puts a value in the form it's indexed under.
+	 * @return The key, or null if the value can't be one (e.g. a relative
+	 * path or a host name).
+	 */
+	public static String normalize(Kind kind, String value) {
+		if(value == null) {
+			return null;
+		}
+		value = value.trim();
+		if(value.length() == 0) {
+			return null;
+		}
+		switch (kind) {
+		case PID:
+			long pid = ColumnType.LONG.parse(value);
+			return pid == ColumnType.NO_VALUE ? null : Long.toString(pid);
+		case PATH:
+			return normalizePath(value);
+		case USER:
+			if(isNumber(value)) {
+				return Long.toString(ColumnType.LONG.parse(value));
+			}
+			return value;
+		case ADDRESS:
+			return normalizeAddress(value);
+		default:
+			return null;
+		}
+	}
+
+	private static String normalizePath(String path) {
+		if(path.charAt(0) != '/') {
+			return null;
+		}
+		StringBuilder sb = new StringBuilder(path.length());
+		for(int i = 0; i < path.length(); ++i) {
+			char c = path.charAt(i);
+			if(c != '/' || sb.length() == 0 || sb.charAt(sb.length() - 1) != '/') {
+				sb.append(c);
+			}
+		}
+		if(sb.length() > 1 && sb.charAt(sb.length() - 1) == '/') {
+			sb.setLength(sb.length() - 1);
+		}
+		return sb.toString();
+	}
+
+	private static String normalizeAddress(String address) {
+		if(address.startsWith("[") && address.endsWith("]")) {
+			address = address.substring(1, address.length() - 1);
+		}
+		int zone = address.indexOf('%');
+		if(zone >= 0) {
+			address = address.substring(0, zone);
+		}
+		if(address.indexOf(':') < 0) {
+			long key = ColumnType.IP_ADDRESS.parse(address);
+			return key == ColumnType.NO_VALUE ? null : ColumnType.IP_ADDRESS.format(key);
+		}
+		// Only a literal has a colon, so this never looks up a host
+		try {
+			InetAddress inetAddress = InetAddress.getByName(address);
+			String text = inetAddress.getHostAddress();
+			return inetAddress instanceof Inet6Address ? text.toLowerCase() : text;
+		} catch (UnknownHostException e) {
+			return null;
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private static boolean isNumber(String value) {
+		return ColumnType.LONG.parse(value) != ColumnType.NO_VALUE;
+	}
+
+	private static void addKey(List<Key> keys, Kind kind, String value) {
+		String key = normalize(kind, value);
+		if(key != null) {
+			keys.add(new Key(kind, key));
+		}
+	}
+
+	private static void addAll(List<TreeObject> found, List<TreeObject> list) {
+		if(list != null) {
+			found.addAll(list);
+		}
+	}
+
+	/**
+	 * Lists each key of every object under a TreeObject, with the object
+	 * repeated in found for each of its keys.
+	 */
+	private static void collect(TreeObject treeObject, List<TreeObject> found, List<Key> keys) {
+		for(Key key : getKeys(treeObject)) {
+			found.add(treeObject);
+			keys.add(key);
+		}
+		// The tree entries only refer to the module's processes
+		if(treeObject instanceof ProcessTreeNode) {
+			return;
+		}
+		ArrayList<? extends TreeObject> children = treeObject.getChildObjects();
+		if(children != null) {
+			for(TreeObject child : children) {
+				collect(child, found, keys);
+			}
+		}
+	}
+
+	/**
+	 * Indexes the paths and uids of the filesystem table by row.
+	 */
+	private void addFileTable(FileTable table) {
+		if(table == null) {
+			return;
+		}
+		int rowCount = table.size();
+		int capacity = Integer.highestOneBit(Math.max(rowCount, 1) * 2 - 1) << 1;
+		int[] rows = new int[capacity];
+		int[] hashes = new int[capacity];
+		FileStatColumns statColumns = table.getStatColumns();
+		HashMap<Integer, int[]> counts = new HashMap<Integer, int[]>();
+		for(int row = 0; row < rowCount; ++row) {
+			String path = normalizePath(FileTable.getLinkPath(table.getPath(row)));
+			if(path != null) {
+				int hash = path.hashCode();
+				int slot = hash & (capacity - 1);
+				while(rows[slot] != 0) {
+					slot = (slot + 1) & (capacity - 1);
+				}
+				rows[slot] = row + 1;
+				hashes[slot] = hash;
+			}
+			int uid = statColumns.getUid(row);
+			if(uid != FileStatColumns.UNKNOWN) {
+				int[] count = counts.get(uid);
+				if(count == null) {
+					count = new int[1];
+					counts.put(uid, count);
+				}
+				++count[0];
+			}
+		}
+
+		// Group the rows by uid
+		HashMap<Integer, int[]> owned = new HashMap<Integer, int[]>();
+		for(Map.Entry<Integer, int[]> entry : counts.entrySet()) {
+			owned.put(entry.getKey(), new int[entry.getValue()[0]]);
+			entry.getValue()[0] = 0;
+		}
+		for(int row = 0; row < rowCount; ++row) {
+			int uid = statColumns.getUid(row);
+			if(uid != FileStatColumns.UNKNOWN) {
+				owned.get(uid)[counts.get(uid)[0]++] = row;
+			}
+		}
+
+		synchronized (this) {
+			fileTable = table;
+			pathRows = rows;
+			pathHashes = hashes;
+			uidRows = owned;
+		}
+	}
+
+	/**
+	 * @return The row of a normalized path in the filesystem table, or -1.
+	 */
+	private int findPath(FileTable table, String path) {
+		int[] rows;
+		int[] hashes;
+		synchronized (this) {
+			rows = pathRows;
+			hashes = pathHashes;
+		}
+		if(rows.length == 0) {
+			return -1;
+		}
+		int hash = path.hashCode();
+		for(int slot = hash & (rows.length - 1); rows[slot] != 0; slot = (slot + 1) & (rows.length - 1)) {
+			if(hashes[slot] == hash && path.equals(normalizePath(FileTable.getLinkPath(table.getPath(rows[slot] - 1))))) {
+				return rows[slot] - 1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * The objects found by key, followed by the matching filesystem rows
+	 * (read as they're asked for).
+	 */
+	private static class Matches extends AbstractList<TreeObject> {
+		private List<TreeObject> objects;
+		private FileTable table;
+		private int[] rows;
+
+		Matches(List<TreeObject> objects, FileTable table, int[] rows) {
+			this.objects = objects;
+			this.table = table;
+			this.rows = rows;
+		}
+
+		@Override
+		public TreeObject get(int index) {
+			if(index < objects.size()) {
+				return objects.get(index);
+			}
+			return table.get(rows[index - objects.size()]);
+		}
+
+		@Override
+		public int size() {
+			return objects.size() + rows.length;
+		}
+	}
+}
@@ -24,23 +24,115 @@
 
 package com.ainfosec.macresponse.db;
 
-import java.util.ArrayList;
-
 public class FilePathInfo extends TreeObject {
 	
 	public static final String[] columnNames = {
 		"filePath",
-		"fileStat",
+		"fileType",
+		"fileSize",
+		"fileMode",
+		"uid",
+		"gid",
+		"birthTime",
+		"modifiedTime",
+		"accessTime",
+		"changeTime",
 	};
 	
 	public static final String[] columnTitles = {
 		"File Path",
-		"File Stat",
+		"File Type",
+		"Size",
+		"Mode",
+		"UID",
+		"GID",
+		"Created",
+		"Modified",
+		"Accessed",
+		"Changed",
+	};
+
+	public static final ColumnType[] columnTypes = {
+		ColumnType.STRING,
+		ColumnType.ENUM,
+		ColumnType.LONG,
+		ColumnType.LONG,
+		ColumnType.LONG,
+		ColumnType.LONG,
+		ColumnType.EPOCH_TIME,
+		ColumnType.EPOCH_TIME,
+		ColumnType.EPOCH_TIME,
+		ColumnType.EPOCH_TIME,
 	};
 
+	private static final RowDisplay rowDisplay = new RowDisplay(columnTitles, columnNames, columnTypes);
+
 	public String filePath;
 	public String fileStat;
+
+	// Rows of a FileTable only keep their directory and name
+	transient FileTable fileTable;
+	transient int row;
+	transient int directoryNode;
+	transient String fileName;
+
+	/**
+	 * @return The path, rebuilt from the FileTable's directories if the row
+	 * came from one.
+	 */
+	public String getFilePath() {
+		if(filePath == null && fileTable != null) {
+			return fileTable.getPath(directoryNode, fileName);
+		}
+		return filePath;
+	}
 	
+	/**
+	 * @return The first field of the fileStat, e.g. "file" or "dir".
+	 */
+	public String getFileType() {
+		if(fileStat == null) {
+			return null;
+		}
+		int end = fileStat.indexOf('|');
+		return (end < 0 ? fileStat : fileStat.substring(0, end)).trim();
+	}
+
+	// The rest of the fileStat, decoded by the FileTable.
+	// FileStatColumns.UNKNOWN if the field couldn't be read.
+
+	public long getFileSize() {
+		return fileTable != null ? fileTable.getStatColumns().getSize(row) : FileStatColumns.UNKNOWN;
+	}
+
+	public int getFileMode() {
+		return fileTable != null ? fileTable.getStatColumns().getMode(row) : FileStatColumns.UNKNOWN;
+	}
+
+	public int getUid() {
+		return fileTable != null ? fileTable.getStatColumns().getUid(row) : FileStatColumns.UNKNOWN;
+	}
+
+	public int getGid() {
+		return fileTable != null ? fileTable.getStatColumns().getGid(row) : FileStatColumns.UNKNOWN;
+	}
+
+	public long getBirthTime() {
+		return fileTable != null ? fileTable.getStatColumns().getBirthTime(row) : FileStatColumns.UNKNOWN;
+	}
+
+	public long getModifiedTime() {
+		return fileTable != null ? fileTable.getStatColumns().getModifiedTime(row) : FileStatColumns.UNKNOWN;
+	}
+
+	public long getAccessTime() {
+		return fileTable != null ? fileTable.getStatColumns().getAccessTime(row) : FileStatColumns.UNKNOWN;
+	}
+
+	public long getChangeTime() {
+		return fileTable != null ? fileTable.getStatColumns().getChangeTime(row) : FileStatColumns.UNKNOWN;
+	}
+
 	@Override
 	public String[] getColumnNames() {
 		return columnNames;
@@ -53,7 +145,12 @@ public class FilePathInfo extends TreeObject {
 
 	@Override
 	public String getTitle() {
-		return filePath;
+		return getFilePath();
+	}
+
+	@Override
+	protected DisplayData createDisplayData() {
+		return rowDisplay.getDisplayData(this);
 	}
 
 	@Override
@@ -62,11 +159,6 @@ public class FilePathInfo extends TreeObject {
 		// None!
 		
 		// Setup Display Data
-		if(displayData == null) {
-			displayData = new DisplayData();
-			ArrayList<TreeObject> list = new ArrayList<TreeObject>();
-			list.add(this);
-			displayData.addDisplayObject(new DisplayObject(getTitle(), columnTitles, columnNames, list));
-		}
+		// Built when shown, by rowDisplay
 	}
 }
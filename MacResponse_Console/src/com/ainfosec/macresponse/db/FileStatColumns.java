@@ -0,0 +1,387 @@
+/*
+
+ MacResponse: Incident Response Toolkit for Mac OS X
+
+ Copyright (C) 2011 - Assured Information Security, Inc. All rights reserved.
+
+ Authors:
+ Paul Petzke <petzkep _at_ ainfosec.com>
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package com.ainfosec.macresponse.db;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The numeric fields of every fileStat in a FileTable, decoded into
+ * parallel primitive columns.
+ *
+ * A fileStat reads "type | size | mode | uid | gid | birth | mtime | atime |
+ * ctime", with the mode in hex and the times as epoch seconds. The columns
+ * are decoded once, when the table is built, and kept in a memory-mapped
+ * file next to it so they cost no heap however large the volume is. Fields
+ * that are missing or can't be read are {@link #UNKNOWN}.
+ *
+ * Column file layout: the sizes (long per row), the modes, uids and gids
+ * (int per row each), the birth, modified, accessed and changed times
+ * (long per row each), then the types (int per row, an index into
+ * {@link #FILE_TYPES}).
+ */
+public class FileStatColumns {
+	/** The value of a field that couldn't be decoded */
+	public static final int UNKNOWN = -1;
+
+	/** The file types the collector writes, sorted */
+	public static final String[] FILE_TYPES = {
+		"block",
+		"char",
+		"dir",
+		"fifo",
+		"link",
+		"regular file",
+		"socket",
+		"undefined",
+		"unknown",
+		"wht",
+	};
+
+	// Columns in file order, numbered by their field in the fileStat minus one
+	private static final int SIZE = 0;
+	private static final int MODE = 1;
+	private static final int UID = 2;
+	private static final int GID = 3;
+	private static final int BIRTH_TIME = 4;
+	private static final int MODIFIED_TIME = 5;
+	private static final int ACCESS_TIME = 6;
+	private static final int CHANGE_TIME = 7;
+	private static final int TYPE = 8;
+	private static final int[] COLUMN_WIDTHS = { 8, 4, 4, 4, 8, 8, 8, 8, 4 };
+
+	/** Rows decoded by one task */
+	private static final int CHUNK_SIZE = 16384;
+
+	private int rowCount;
+	private LongBuffer sizes;
+	private IntBuffer modes;
+	private IntBuffer uids;
+	private IntBuffer gids;
+	private LongBuffer birthTimes;
+	private LongBuffer modifiedTimes;
+	private LongBuffer accessTimes;
+	private LongBuffer changeTimes;
+	private IntBuffer types;
+
+	/**
+	 * Opens the columns written by {@link #decode}.
+	 * @param columnFile The column file.
+	 * @param rowCount The number of rows in the table.
+	 * @throws IOException If the file doesn't match the table.
+	 */
+	public FileStatColumns(File columnFile, int rowCount) throws IOException {
+		this.rowCount = rowCount;
+		RandomAccessFile raf = new RandomAccessFile(columnFile, "r");
+		try {
+			if(raf.length() != getFileSize(rowCount)) {
+				throw new IOException("Corrupt columns " + columnFile);
+			}
+			ByteBuffer[] columns = map(raf.getChannel(), FileChannel.MapMode.READ_ONLY, rowCount);
+			sizes = columns[SIZE].asLongBuffer();
+			modes = columns[MODE].asIntBuffer();
+			uids = columns[UID].asIntBuffer();
+			gids = columns[GID].asIntBuffer();
+			birthTimes = columns[BIRTH_TIME].asLongBuffer();
+			modifiedTimes = columns[MODIFIED_TIME].asLongBuffer();
+			accessTimes = columns[ACCESS_TIME].asLongBuffer();
+			changeTimes = columns[CHANGE_TIME].asLongBuffer();
+			types = columns[TYPE].asIntBuffer();
+		} finally {
+			raf.close();
+		}
+	}
+
+	public int size() {
+		return rowCount;
+	}
+
+	public long getSize(int row) {
+		return sizes.get(row);
+	}
+
+	public int getMode(int row) {
+		return modes.get(row);
+	}
+
+	public int getUid(int row) {
+		return uids.get(row);
+	}
+
+	public int getGid(int row) {
+		return gids.get(row);
+	}
+
+	public long getBirthTime(int row) {
+		return birthTimes.get(row);
+	}
+
+	public long getModifiedTime(int row) {
+		return modifiedTimes.get(row);
+	}
+
+	public long getAccessTime(int row) {
+		return accessTimes.get(row);
+	}
+
+	public long getChangeTime(int row) {
+		return changeTimes.get(row);
+	}
+
+	/**
+	 * @return The row's index in FILE_TYPES, or UNKNOWN.
+	 */
+	public int getType(int row) {
+		return types.get(row);
+	}
+
+	/**
+	 * Decodes the fileStat of every row of a table into a new column file.
+	 * Chunks of rows are decoded in parallel, each straight from the bytes
+	 * of the data file, without creating any objects per row.
+	 * @param dataFile The table's data file.
+	 * @param index The table's index.
+	 * @param rowCount The number of rows.
+	 * @param columnFile The column file to write.
+	 * @throws IOException
+	 */
+	static void decode(File dataFile, ByteBuffer index, int rowCount, File columnFile) throws IOException {
+		RandomAccessFile dataRaf = new RandomAccessFile(dataFile, "r");
+		RandomAccessFile columnRaf = new RandomAccessFile(columnFile, "rw");
+		try {
+			columnRaf.setLength(getFileSize(rowCount));
+			ByteBuffer[] columns = map(columnRaf.getChannel(), FileChannel.MapMode.READ_WRITE, rowCount);
+
+			DecodeTask task = new DecodeTask(dataRaf.getChannel(), index, columns, 0, rowCount);
+			if(ForkJoinTask.inForkJoinPool()) {
+				task.invoke();
+			}
+			else {
+				ForkJoinPool pool = new ForkJoinPool();
+				try {
+					pool.invoke(task);
+				} finally {
+					pool.shutdown();
+				}
+			}
+			if(task.failure != null) {
+				throw task.failure;
+			}
+		} finally {
+			columnRaf.close();
+			dataRaf.close();
+		}
+	}
+
+	private static long getFileSize(int rowCount) {
+		long size = 0;
+		for(int width : COLUMN_WIDTHS) {
+			size += (long) width * rowCount;
+		}
+		return size;
+	}
+
+	/**
+	 * Maps each column separately, so no single mapping goes over 2GB.
+	 */
+	private static ByteBuffer[] map(FileChannel channel, FileChannel.MapMode mode, int rowCount) throws IOException {
+		ByteBuffer[] columns = new ByteBuffer[COLUMN_WIDTHS.length];
+		long position = 0;
+		for(int i = 0; i < COLUMN_WIDTHS.length; ++i) {
+			long length = (long) COLUMN_WIDTHS[i] * rowCount;
+			columns[i] = channel.map(mode, position, length);
+			position += length;
+		}
+		return columns;
+	}
+
+	/**
+	 * Decodes a range of rows, splitting it until it's one chunk.
+	 */
+	private static class DecodeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private FileChannel dataChannel;
+		private ByteBuffer index;
+		private ByteBuffer[] columns;
+		private int first;
+		private int end;
+		private volatile IOException failure = null;
+
+		public DecodeTask(FileChannel dataChannel, ByteBuffer index, ByteBuffer[] columns, int first, int end) {
+			this.dataChannel = dataChannel;
+			this.index = index;
+			this.columns = columns;
+			this.first = first;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if(end - first > CHUNK_SIZE) {
+				int middle = (first + end) >>> 1;
+				DecodeTask left = new DecodeTask(dataChannel, index, columns, first, middle);
+				DecodeTask right = new DecodeTask(dataChannel, index, columns, middle, end);
+				invokeAll(left, right);
+				failure = left.failure != null ? left.failure : right.failure;
+				return;
+			}
+			try {
+				decodeChunk();
+			} catch (IOException e) {
+				failure = e;
+			}
+		}
+
+		private void decodeChunk() throws IOException {
+			long start = index.getLong(first * FileTable.INDEX_ROW_SIZE);
+			long stop = index.getLong(end * FileTable.INDEX_ROW_SIZE);
+			ByteBuffer buffer = ByteBuffer.allocate((int) (stop - start));
+			while(buffer.hasRemaining()) {
+				if(dataChannel.read(buffer, start + buffer.position()) < 0) {
+					throw new IOException("Unexpected end of the table data");
+				}
+			}
+
+			byte[] bytes = buffer.array();
+			long[] fields = new long[TYPE];
+			int position = 0;
+			for(int row = first; row < end; ++row) {
+				// Skip the name
+				position += 4 + buffer.getInt(position);
+				int statLength = buffer.getInt(position);
+				position += 4;
+				parseStat(bytes, position, position + statLength, fields);
+				int type = parseType(bytes, position, position + statLength);
+				position += statLength;
+
+				columns[SIZE].putLong(row * 8, fields[SIZE]);
+				columns[MODE].putInt(row * 4, (int) fields[MODE]);
+				columns[UID].putInt(row * 4, (int) fields[UID]);
+				columns[GID].putInt(row * 4, (int) fields[GID]);
+				columns[BIRTH_TIME].putLong(row * 8, fields[BIRTH_TIME]);
+				columns[MODIFIED_TIME].putLong(row * 8, fields[MODIFIED_TIME]);
+				columns[ACCESS_TIME].putLong(row * 8, fields[ACCESS_TIME]);
+				columns[CHANGE_TIME].putLong(row * 8, fields[CHANGE_TIME]);
+				columns[TYPE].putInt(row * 4, type);
+			}
+		}
+	}
+
+	/**
+	 * Reads the numeric fields of one fileStat. The first field, the type,
+	 * is skipped; the mode is hex and the rest are decimal.
+	 * @param bytes The UTF-8 fileStat.
+	 * @param start The first byte.
+	 * @param end Past the last byte.
+	 * @param fields Set to the size, mode, uid, gid and times, or UNKNOWN.
+	 */
+	static void parseStat(byte[] bytes, int start, int end, long[] fields) {
+		int field = -1;	// The type
+		long value = 0;
+		boolean digits = false;
+		boolean negative = false;
+		boolean valid = true;
+		for(int i = start; i <= end; ++i) {
+			byte b = i < end ? bytes[i] : (byte) '|';
+			if(b == '|') {
+				if(field >= 0 && field < fields.length) {
+					fields[field] = digits && valid ? (negative ? -value : value) : UNKNOWN;
+				}
+				++field;
+				value = 0;
+				digits = false;
+				negative = false;
+				valid = true;
+			}
+			else if(field < 0 || b == ' ') {
+				continue;
+			}
+			else if(b >= '0' && b <= '9') {
+				value = value * (field == MODE ? 16 : 10) + (b - '0');
+				digits = true;
+			}
+			else if(field == MODE && b >= 'A' && b <= 'F') {
+				value = value * 16 + (b - 'A' + 10);
+				digits = true;
+			}
+			else if(field == MODE && b >= 'a' && b <= 'f') {
+				value = value * 16 + (b - 'a' + 10);
+				digits = true;
+			}
+			else if(b == '-' && !digits) {
+				negative = true;
+			}
+			else {
+				valid = false;
+			}
+		}
+		for(int i = Math.max(field, 0); i < fields.length; ++i) {
+			fields[i] = UNKNOWN;
+		}
+	}
+
+	/**
+	 * Looks up the first field of one fileStat in FILE_TYPES.
+	 * @param bytes The UTF-8 fileStat.
+	 * @param start The first byte.
+	 * @param end Past the last byte.
+	 * @return The type's index, or UNKNOWN.
+	 */
+	static int parseType(byte[] bytes, int start, int end) {
+		int typeEnd = start;
+		while(typeEnd < end && bytes[typeEnd] != '|') {
+			++typeEnd;
+		}
+		while(start < typeEnd && bytes[start] == ' ') {
+			++start;
+		}
+		while(typeEnd > start && bytes[typeEnd - 1] == ' ') {
+			--typeEnd;
+		}
+		for(int i = 0; i < FILE_TYPES.length; ++i) {
+			String type = FILE_TYPES[i];
+			if(type.length() != typeEnd - start) {
+				continue;
+			}
+			int j = 0;
+			while(j < type.length() && bytes[start + j] == type.charAt(j)) {
+				++j;
+			}
+			if(j == type.length()) {
+				return i;
+			}
+		}
+		return UNKNOWN;
+	}
+}
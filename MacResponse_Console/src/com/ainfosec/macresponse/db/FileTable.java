@@ -0,0 +1,577 @@
+/*
+
+ MacResponse: Incident Response Toolkit for Mac OS X
+
+ Copyright (C) 2011 - Assured Information Security, Inc. All rights reserved.
+
+ Authors:
+ Paul Petzke <petzkep _at_ ainfosec.com>
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package com.ainfosec.macresponse.db;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * A disk-backed table of FilePathInfo rows.
+ *
+ * The rows are written once, in order, to a data file; a second file holds
+ * the offset of each row. Rows are paged back in on demand and only a
+ * bounded number of pages are kept on the heap, so the size of the volume
+ * doesn't matter to the JVM.
+ *
+ * Paths aren't stored whole. Every directory goes into a PathTrie and a row
+ * only keeps its directory's node and its own name; the full path is
+ * rebuilt when a FilePathInfo's path is asked for. A symbolic link's row
+ * is written by the collector as "path -&gt; target"; it goes in the
+ * directory of its own path and keeps the target with its name. The rows of each
+ * directory are also linked together, so listing a directory doesn't scan
+ * the table.
+ *
+ * Data file layout: for each row, int nameLength, name (UTF-8), int
+ * statLength, stat (UTF-8); then the directory PathTrie and, for each of
+ * its nodes, the first row in that directory. The index file is, for each
+ * row, long offset, int directory node and int next row in the same
+ * directory (-1 for none), followed by the offset of the end of the rows.
+ * A third file holds the decoded {@link FileStatColumns}.
+ */
+public class FileTable extends AbstractList<FilePathInfo> implements RandomAccess {
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** Rows per page */
+	private static final int PAGE_SIZE = 512;
+	/** Pages kept on the heap */
+	private static final int MAX_CACHED_PAGES = 64;
+	/** Directory paths kept on the heap */
+	private static final int MAX_CACHED_DIRECTORIES = 1024;
+
+	/** Bytes per row in the index file */
+	static final int INDEX_ROW_SIZE = 16;
+	/** No row */
+	private static final int NO_ROW = -1;
+	/** Between a symbolic link's path and its target in a row's path */
+	public static final String LINK_SEPARATOR = " -> ";
+
+	private File dataFile;
+	private File indexFile;
+	private File columnFile;
+	private int rowCount;
+
+	private RandomAccessFile dataRaf;
+	private FileChannel dataChannel;
+	private ByteBuffer index;
+
+	private PathTrie directories;
+	private int[] firstRows;
+	private FileStatColumns statColumns;
+
+	private LinkedHashMap<Integer, FilePathInfo[]> pages = new LinkedHashMap<Integer, FilePathInfo[]>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, FilePathInfo[]> eldest) {
+			return size() > MAX_CACHED_PAGES;
+		}
+	};
+
+	private LinkedHashMap<Integer, String> directoryPaths = new LinkedHashMap<Integer, String>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, String> eldest) {
+			return size() > MAX_CACHED_DIRECTORIES;
+		}
+	};
+
+	/**
+	 * Opens a table that was written by a {@link Writer}.
+	 * @param dataFile The row data.
+	 * @param indexFile The row offsets.
+	 * @param columnFile The decoded fileStats.
+	 * @throws IOException
+	 */
+	public FileTable(File dataFile, File indexFile, File columnFile) throws IOException {
+		this.dataFile = dataFile;
+		this.indexFile = indexFile;
+		this.columnFile = columnFile;
+
+		RandomAccessFile indexRaf = new RandomAccessFile(indexFile, "r");
+		try {
+			FileChannel indexChannel = indexRaf.getChannel();
+			index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, indexChannel.size());
+		} finally {
+			indexRaf.close();
+		}
+		if(index.limit() < 8 || (index.limit() - 8) % INDEX_ROW_SIZE != 0) {
+			throw new IOException("Corrupt index " + indexFile);
+		}
+		rowCount = (index.limit() - 8) / INDEX_ROW_SIZE;
+
+		// The directories follow the last row
+		long rowsEnd = index.getLong(rowCount * INDEX_ROW_SIZE);
+		FileInputStream in = new FileInputStream(dataFile);
+		try {
+			if(in.skip(rowsEnd) != rowsEnd) {
+				throw new IOException("Unexpected end of " + dataFile);
+			}
+			DataInputStream directoryIn = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+			directories = PathTrie.read(directoryIn);
+			firstRows = new int[directoryIn.readInt()];
+			for(int i = 0; i < firstRows.length; ++i) {
+				firstRows[i] = directoryIn.readInt();
+			}
+		} finally {
+			in.close();
+		}
+
+		statColumns = new FileStatColumns(columnFile, rowCount);
+
+		dataRaf = new RandomAccessFile(dataFile, "r");
+		dataChannel = dataRaf.getChannel();
+	}
+
+	/**
+	 * Creates a writer for a table in the temporary directory. The files are
+	 * removed when the console exits.
+	 * @return The writer.
+	 * @throws IOException
+	 */
+	public static Writer createTemporary() throws IOException {
+		File dataFile = File.createTempFile("FilesystemInformation", ".table");
+		File indexFile = File.createTempFile("FilesystemInformation", ".index");
+		File columnFile = File.createTempFile("FilesystemInformation", ".columns");
+		dataFile.deleteOnExit();
+		indexFile.deleteOnExit();
+		columnFile.deleteOnExit();
+		return new Writer(dataFile, indexFile, columnFile);
+	}
+
+	@Override
+	public int size() {
+		return rowCount;
+	}
+
+	@Override
+	public FilePathInfo get(int index) {
+		checkRow(index);
+		return getPage(index / PAGE_SIZE)[index % PAGE_SIZE];
+	}
+
+	/**
+	 * @param row A row of the table.
+	 * @return The row's full path.
+	 */
+	public String getPath(int row) {
+		return get(row).getFilePath();
+	}
+
+	/**
+	 * @param filePath A row's path.
+	 * @return The path without a symbolic link's target, if it has one.
+	 */
+	public static String getLinkPath(String filePath) {
+		int separator = filePath == null ? -1 : filePath.indexOf(LINK_SEPARATOR);
+		return separator < 0 ? filePath : filePath.substring(0, separator);
+	}
+
+	/**
+	 * Lists the rows directly inside a directory.
+	 * @param directoryPath An absolute path.
+	 * @return The rows, in table order; empty if nothing is in the directory.
+	 */
+	public int[] getChildRows(String directoryPath) {
+		int node = directories.find(directoryPath);
+		if(node == PathTrie.NONE || node >= firstRows.length) {
+			return new int[0];
+		}
+		int count = 0;
+		for(int row = firstRows[node]; row != NO_ROW; row = getNextInDirectory(row)) {
+			++count;
+		}
+		int[] rows = new int[count];
+		int i = 0;
+		for(int row = firstRows[node]; row != NO_ROW; row = getNextInDirectory(row)) {
+			rows[i++] = row;
+		}
+		return rows;
+	}
+
+	/**
+	 * @return The directories of every row; the trie itself may be searched
+	 * for subdirectories.
+	 */
+	public PathTrie getDirectories() {
+		return directories;
+	}
+
+	/**
+	 * @return The size, mode, owner and times of every row.
+	 */
+	public FileStatColumns getStatColumns() {
+		return statColumns;
+	}
+
+	/**
+	 * Reads the key of a typed FilePathInfo column straight from the stat
+	 * columns, so the keys of a large table never have to be on the heap.
+	 * @param columnName One of FilePathInfo.columnNames.
+	 * @param row A row of the table.
+	 * @return The key, or ColumnType.NO_VALUE if the column has none.
+	 */
+	long getKey(String columnName, int row) {
+		long value;
+		switch (columnName) {
+		case "fileType":
+			value = statColumns.getType(row);
+			break;
+		case "fileSize":
+			value = statColumns.getSize(row);
+			break;
+		case "fileMode":
+			value = statColumns.getMode(row);
+			break;
+		case "uid":
+			value = statColumns.getUid(row);
+			break;
+		case "gid":
+			value = statColumns.getGid(row);
+			break;
+		case "birthTime":
+			value = statColumns.getBirthTime(row);
+			break;
+		case "modifiedTime":
+			value = statColumns.getModifiedTime(row);
+			break;
+		case "accessTime":
+			value = statColumns.getAccessTime(row);
+			break;
+		case "changeTime":
+			value = statColumns.getChangeTime(row);
+			break;
+		default:
+			return ColumnType.NO_VALUE;
+		}
+		return value == FileStatColumns.UNKNOWN ? ColumnType.NO_VALUE : value;
+	}
+
+	public File getDataFile() {
+		return dataFile;
+	}
+
+	public File getIndexFile() {
+		return indexFile;
+	}
+
+	public File getColumnFile() {
+		return columnFile;
+	}
+
+	/**
+	 * Releases the data file. Rows can't be read afterwards.
+	 */
+	public synchronized void close() {
+		pages.clear();
+		try {
+			dataRaf.close();
+		} catch (IOException e) {
+			System.out.println("Unable to close " + dataFile + ": " + e);
+		}
+	}
+
+	/**
+	 * Rebuilds the path of a row from its directory and name.
+	 */
+	String getPath(int directoryNode, String fileName) {
+		if(directoryNode == PathTrie.NONE) {
+			return fileName;
+		}
+		String directoryPath;
+		synchronized (directoryPaths) {
+			directoryPath = directoryPaths.get(directoryNode);
+			if(directoryPath == null) {
+				directoryPath = directories.getPath(directoryNode);
+				directoryPaths.put(directoryNode, directoryPath);
+			}
+		}
+		StringBuilder sb = new StringBuilder(directoryPath.length() + 1 + fileName.length());
+		sb.append(directoryPath);
+		if(directoryPath.length() > 1) {
+			sb.append('/');
+		}
+		sb.append(fileName);
+		return sb.toString();
+	}
+
+	private void checkRow(int row) {
+		if(row < 0 || row >= rowCount) {
+			throw new IndexOutOfBoundsException("Row " + row + " of " + rowCount);
+		}
+	}
+
+	/**
+	 * @param directoryNode A node of getDirectories().
+	 * @return The first row in the directory, or -1 if it has none.
+	 */
+	int getFirstRow(int directoryNode) {
+		if(directoryNode <= PathTrie.NONE || directoryNode >= firstRows.length) {
+			return NO_ROW;
+		}
+		return firstRows[directoryNode];
+	}
+
+	/**
+	 * Reads a row's name straight from the data file, leaving the page
+	 * cache alone, so going through every row in directory order doesn't
+	 * read whole pages over and over.
+	 * @return A row's name in its directory, or its whole path if it has no
+	 * directory.
+	 */
+	String getFileName(int row) {
+		checkRow(row);
+		long start = index.getLong(row * INDEX_ROW_SIZE);
+		long end = index.getLong((row + 1) * INDEX_ROW_SIZE);
+		ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+		try {
+			while(buffer.hasRemaining()) {
+				if(dataChannel.read(buffer, start + buffer.position()) < 0) {
+					throw new IOException("Unexpected end of " + dataFile);
+				}
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to read " + dataFile, e);
+		}
+		buffer.flip();
+		return readString(buffer);
+	}
+
+	/**
+	 * @return The node of a row's directory in getDirectories().
+	 */
+	int getDirectoryNode(int row) {
+		checkRow(row);
+		return index.getInt(row * INDEX_ROW_SIZE + 8);
+	}
+
+	/**
+	 * @return The next row in the same directory, or -1 after the last.
+	 */
+	int getNextInDirectory(int row) {
+		return index.getInt(row * INDEX_ROW_SIZE + 12);
+	}
+
+	private synchronized FilePathInfo[] getPage(int pageNumber) {
+		FilePathInfo[] page = pages.get(pageNumber);
+		if(page == null) {
+			try {
+				page = readPage(pageNumber);
+			} catch (IOException e) {
+				throw new IllegalStateException("Unable to read " + dataFile, e);
+			}
+			pages.put(pageNumber, page);
+		}
+		return page;
+	}
+
+	private FilePathInfo[] readPage(int pageNumber) throws IOException {
+		int first = pageNumber * PAGE_SIZE;
+		int count = Math.min(PAGE_SIZE, rowCount - first);
+		long start = index.getLong(first * INDEX_ROW_SIZE);
+		long end = index.getLong((first + count) * INDEX_ROW_SIZE);
+
+		// One read for the whole page
+		ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+		while(buffer.hasRemaining()) {
+			if(dataChannel.read(buffer, start + buffer.position()) < 0) {
+				throw new IOException("Unexpected end of " + dataFile);
+			}
+		}
+		buffer.flip();
+
+		FilePathInfo[] page = new FilePathInfo[count];
+		for(int i = 0; i < count; ++i) {
+			int directoryNode = index.getInt((first + i) * INDEX_ROW_SIZE + 8);
+			FilePathInfo filePathInfo = new FilePathInfo();
+			filePathInfo.fileTable = this;
+			filePathInfo.row = first + i;
+			filePathInfo.directoryNode = directoryNode;
+			filePathInfo.fileName = readString(buffer);
+			filePathInfo.fileStat = readString(buffer);
+			page[i] = filePathInfo;
+		}
+		return page;
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, UTF8);
+		buffer.position(buffer.position() + length);
+		return value;
+	}
+
+	/**
+	 * Appends rows to a new table. Nothing is kept on the heap besides the
+	 * write buffers and the directory trie.
+	 */
+	public static class Writer {
+		private File dataFile;
+		private File indexFile;
+		private File columnFile;
+		private DataOutputStream data;
+		private DataOutputStream index;
+		private long offset = 0;
+		private int rowCount = 0;
+
+		private PathTrie directories = new PathTrie();
+		// Rows usually arrive a directory at a time
+		private String lastDirectory = null;
+		private int lastDirectoryNode = PathTrie.NONE;
+
+		public Writer(File dataFile, File indexFile, File columnFile) throws IOException {
+			this.dataFile = dataFile;
+			this.indexFile = indexFile;
+			this.columnFile = columnFile;
+			data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dataFile), 1 << 16));
+			index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile), 1 << 16));
+		}
+
+		/**
+		 * Appends a row. A symbolic link's target is kept with its name.
+		 * @param filePath The FilePathInfo's path.
+		 * @param fileStat The FilePathInfo's stat line.
+		 * @throws IOException
+		 */
+		public void add(String filePath, String fileStat) throws IOException {
+			int directoryNode = PathTrie.NONE;
+			String fileName = filePath;
+			// The directory is the link's, not the target's
+			int pathEnd = filePath == null ? 0 : getLinkPath(filePath).length();
+			int slash = filePath == null || pathEnd == 0 ? -1 : filePath.lastIndexOf('/', pathEnd - 1);
+			if(slash >= 0 && pathEnd > 1) {
+				String directory = slash == 0 ? "/" : filePath.substring(0, slash);
+				if(directory.equals(lastDirectory)) {
+					directoryNode = lastDirectoryNode;
+				}
+				else {
+					directoryNode = directories.add(directory);
+					lastDirectory = directory;
+					lastDirectoryNode = directoryNode;
+				}
+				// Paths that wouldn't come back out exactly are kept whole
+				if(directoryNode != PathTrie.NONE && slash < pathEnd - 1) {
+					fileName = filePath.substring(slash + 1);
+				}
+				else {
+					directoryNode = PathTrie.NONE;
+				}
+			}
+
+			index.writeLong(offset);
+			index.writeInt(directoryNode);
+			index.writeInt(NO_ROW);
+			offset += writeString(fileName);
+			offset += writeString(fileStat);
+			++rowCount;
+		}
+
+		public int getRowCount() {
+			return rowCount;
+		}
+
+		/**
+		 * Links the rows of each directory, writes the directories, decodes
+		 * the fileStats and opens the files for reading.
+		 * @return The finished table.
+		 * @throws IOException
+		 */
+		public FileTable finish() throws IOException {
+			// The end of the last row
+			index.writeLong(offset);
+			index.close();
+
+			// Walk the rows backwards so each directory's rows end up in order
+			int[] firstRows = new int[directories.size() + PathTrie.ROOT];
+			Arrays.fill(firstRows, NO_ROW);
+			MappedByteBuffer rows;
+			RandomAccessFile indexRaf = new RandomAccessFile(indexFile, "rw");
+			try {
+				FileChannel indexChannel = indexRaf.getChannel();
+				rows = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexChannel.size());
+				for(int row = rowCount - 1; row >= 0; --row) {
+					int directoryNode = rows.getInt(row * INDEX_ROW_SIZE + 8);
+					if(directoryNode != PathTrie.NONE) {
+						rows.putInt(row * INDEX_ROW_SIZE + 12, firstRows[directoryNode]);
+						firstRows[directoryNode] = row;
+					}
+				}
+				rows.force();
+			} finally {
+				indexRaf.close();
+			}
+
+			directories.write(data);
+			data.writeInt(firstRows.length);
+			for(int firstRow : firstRows) {
+				data.writeInt(firstRow);
+			}
+			data.close();
+
+			FileStatColumns.decode(dataFile, rows, rowCount, columnFile);
+			return new FileTable(dataFile, indexFile, columnFile);
+		}
+
+		/**
+		 * Closes the files without opening the table (e.g. after an error).
+		 */
+		public void abort() {
+			// The table is being thrown away, so a failed close doesn't matter
+			try {
+				index.close();
+			} catch (IOException e) {
+				// Ignored, see above
+			}
+			try {
+				data.close();
+			} catch (IOException e) {
+				// Ignored, see above
+			}
+		}
+
+		private int writeString(String value) throws IOException {
+			byte[] bytes = (value == null ? "" : value).getBytes(UTF8);
+			data.writeInt(bytes.length);
+			data.write(bytes);
+			return 4 + bytes.length;
+		}
+	}
+}
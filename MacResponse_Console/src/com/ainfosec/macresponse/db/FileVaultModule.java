@@ -26,6 +26,8 @@ package com.ainfosec.macresponse.db;
 import java.util.ArrayList;
 
 public class FileVaultModule extends TreeObject {
+	public static final String title = "File Vault";
+
 
 	public ArrayList<FileVaultLoggedInUser> fileVaultLoggedInUsers = new ArrayList<FileVaultLoggedInUser>();
 	
@@ -43,7 +45,7 @@ public class FileVaultModule extends TreeObject {
 
 	@Override
 	public String getTitle() {
-		return "File Vault";
+		return title;
 	}
 
 	@Override
@@ -27,9 +27,12 @@ package com.ainfosec.macresponse.db;
 import java.util.ArrayList;
 
 public class FilesystemInformationModule extends TreeObject {
+	public static final String title = "Filesystem Information";
+
 	protected String treeNodeTitle = "Filesystem Information";
 	
-	public ArrayList<FilePathInfo> filePathInfos = new ArrayList<FilePathInfo>();
+	/** Every FilePathInfo, kept on disk and paged in as rows are read */
+	public FileTable fileTable = null;
 	
 	public String[] getColumnNames() {
 		return FilePathInfo.columnNames;
@@ -42,7 +45,7 @@ public class FilesystemInformationModule extends TreeObject {
 
 	@Override
 	public String getTitle() {
-		return "Filesystem Information";
+		return title;
 	}
 
 	@Override
@@ -50,7 +53,7 @@ public class FilesystemInformationModule extends TreeObject {
 		// Setup Children
 		// None (Displaying each is too many objects that the JVM will run out of memory)
 //		if (childObjects == null) {
-//			for (FilePathInfo filePathInfo : filePathInfos) {
+//			for (FilePathInfo filePathInfo : fileTable) {
 //				this.addChildObject(filePathInfo);
 //			}
 //		}
@@ -58,7 +61,8 @@ public class FilesystemInformationModule extends TreeObject {
 		// Setup Display Data
 		if(displayData == null) {
 			displayData = new DisplayData();
-			displayData.addDisplayObject(new DisplayObject(getTitle(), FilePathInfo.columnTitles, FilePathInfo.columnNames, filePathInfos));
+			displayData.addDisplayObject(new DisplayObject(getTitle(), FilePathInfo.columnTitles, FilePathInfo.columnNames, FilePathInfo.columnTypes,
+					fileTable != null ? fileTable : new ArrayList<FilePathInfo>()));
 		}
 	}
 }
@@ -35,6 +35,11 @@ public class LocalNetworkAddress extends TreeObject {
 		"Network Address Value",
 		"Network Port Value"
 	};
+
+	public static final ColumnType[] columnTypes = {
+		ColumnType.IP_ADDRESS,
+		ColumnType.LONG,
+	};
 	
 	public String networkAddressValue;
 	public String networkPortValue;
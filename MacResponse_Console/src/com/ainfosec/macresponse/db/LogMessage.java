@@ -24,8 +24,6 @@
 
 package com.ainfosec.macresponse.db;
 
-import java.util.ArrayList;
-
 public class LogMessage extends TreeObject {
 	
 	public static final String[] columnNames = {
@@ -42,6 +40,15 @@ public class LogMessage extends TreeObject {
 		"Source Line"
 	};
 
+	public static final ColumnType[] columnTypes = {
+		ColumnType.STRING,
+		ColumnType.STRING,
+		ColumnType.STRING,
+		ColumnType.LONG,
+	};
+
+	private static final RowDisplay rowDisplay = new RowDisplay(columnTitles, columnNames, columnTypes);
+
 	public String message;
 	public String sourceFile;
 	public String soureFunction;
@@ -62,17 +69,17 @@ public class LogMessage extends TreeObject {
 		return message;
 	}
 
+	@Override
+	protected DisplayData createDisplayData() {
+		return rowDisplay.getDisplayData(this);
+	}
+
 	@Override
 	public void init() {
 		// Setup Children
 		// None!
 		
 		// Setup Display Data
-		if(displayData == null) {
-			displayData = new DisplayData();
-			ArrayList<TreeObject> list = new ArrayList<TreeObject>();
-			list.add(this);
-			displayData.addDisplayObject(new DisplayObject(getTitle(), columnTitles, columnNames, list));
-		}
+		// Built when shown, by rowDisplay
 	}
 }
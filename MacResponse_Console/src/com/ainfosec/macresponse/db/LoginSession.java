@@ -44,6 +44,15 @@ public class LoginSession extends TreeObject {
 		"Session Type",
 		"Session Time",
 	};
+
+	public static final ColumnType[] columnTypes = {
+		ColumnType.STRING,
+		ColumnType.STRING,
+		ColumnType.STRING,
+		ColumnType.LONG,
+		ColumnType.ENUM,
+		ColumnType.EPOCH_TIME,
+	};
 	
 	public String userName;
 	public String sessionId;
@@ -27,6 +27,8 @@ package com.ainfosec.macresponse.db;
 import java.util.ArrayList;
 
 public class LoginSessionsModule extends TreeObject {
+	public static final String title = "Login Session";
+
 	public ArrayList<LoginSession> loginSessions = new ArrayList<LoginSession>();
 	
 	public String[] getColumnNames() {
@@ -39,7 +41,7 @@ public class LoginSessionsModule extends TreeObject {
 
 	@Override
 	public String getTitle() {
-		return "Login Session";
+		return title;
 	}
 
 	@Override
@@ -56,7 +58,7 @@ public class LoginSessionsModule extends TreeObject {
 		// Setup Display Data
 		if(displayData == null) {
 			displayData = new DisplayData();
-			displayData.addDisplayObject(new DisplayObject(getTitle(), LoginSession.columnTitles, LoginSession.columnNames, loginSessions));
+			displayData.addDisplayObject(new DisplayObject(getTitle(), LoginSession.columnTitles, LoginSession.columnNames, LoginSession.columnTypes, loginSessions));
 		}
 	}
 }
@@ -0,0 +1,503 @@
+/*
+
+ MacResponse: Incident Response Toolkit for Mac OS X
+
+ Copyright (C) 2011 - Assured Information Security, Inc. All rights reserved.
+
+ Authors:
+ Paul Petzke <petzkep _at_ ainfosec.com>
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package com.ainfosec.macresponse.db;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estimates the heap retained by each loaded module of a case.
+ *
+ * Every object reachable from a module is walked once and its size
+ * estimated for a 64-bit JVM with compressed references (12 byte headers,
+ * 4 byte references, 8 byte alignment). Each object is charged to the
+ * nearest TreeObject above it, and to one of four kinds: strings, lists
+ * and maps, display caches (DisplayData and everything under it), and
+ * everything else. Objects shared between modules, like pooled strings,
+ * are charged to the first module that reaches them; the shared path trie
+ * gets its own entry.
+ *
+ * A FileTable is a List, but its rows live on disk, so only its cached
+ * pages and directory trie are counted.
+ */
+public class MemoryReport {
+	public static final int STRINGS = 0;
+	public static final int COLLECTIONS = 1;
+	public static final int DISPLAY = 2;
+	public static final int OTHER = 3;
+	private static final String[] KIND_NAMES = { "strings", "collections", "display", "other" };
+
+	private static final int OBJECT_HEADER = 12;
+	private static final int ARRAY_HEADER = 16;
+	private static final int REFERENCE = 4;
+
+	/** The TreeObject field that points back up the tree */
+	private static final String PARENT_FIELD = "parentObject";
+	/** The DisplayObject field holding rows that belong to the module, not the display */
+	private static final String ROWS_FIELD = "objects";
+
+	private long usedHeap;
+	private long maxHeap;
+	private StringPool.Stats strings;
+	private ArrayList<Usage> modules = new ArrayList<Usage>();
+
+	/** Every object already charged, across all modules */
+	private IdentityHashMap<Object, Boolean> visited = new IdentityHashMap<Object, Boolean>();
+	/** Instance size of each class, and its reference fields */
+	private HashMap<Class<?>, Long> shallowSizes = new HashMap<Class<?>, Long>();
+	private HashMap<Class<?>, Field[]> referenceFields = new HashMap<Class<?>, Field[]>();
+
+	/**
+	 * Walks every loaded module under the root. Run it on the thread that
+	 * reads the modules (the UI thread), so nothing changes underneath it.
+	 * @param rootObject The case.
+	 * @return The report.
+	 */
+	public static MemoryReport create(TreeObject rootObject) {
+		MemoryReport report = new MemoryReport();
+		Runtime runtime = Runtime.getRuntime();
+		report.usedHeap = runtime.totalMemory() - runtime.freeMemory();
+		report.maxHeap = runtime.maxMemory();
+		report.strings = StringPool.getShared().getTotals();
+
+		if(rootObject.getChildObjects() != null) {
+			for(TreeObject child : rootObject.getChildObjects()) {
+				Usage usage = new Usage(child.getTitle());
+				if(child instanceof ModulePlaceholder) {
+					// Parsed but not yet swapped in by the shell; it's never
+					// installed from here
+					child = ((ModulePlaceholder) child).getModule();
+				}
+				if(child == null) {
+					usage.loaded = false;
+				}
+				else {
+					report.measure(child, usage);
+				}
+				report.modules.add(usage);
+			}
+		}
+		Usage shared = new Usage("Shared Path Trie");
+		report.measure(PathTrie.getShared(), shared);
+		report.modules.add(shared);
+
+		// Only what the indexes hold beyond the modules they point into
+		if(rootObject instanceof RootObject) {
+			Usage entities = new Usage("Entity Index");
+			report.measure(((RootObject) rootObject).getEntityIndex(), entities);
+			report.modules.add(entities);
+			Usage search = new Usage("Search Index");
+			report.measure(((RootObject) rootObject).getSearchIndex(), search);
+			report.modules.add(search);
+		}
+		return report;
+	}
+
+	/**
+	 * @return Each module, in tree order, then the shared path trie and the
+	 * case's indexes.
+	 */
+	public List<Usage> getModules() {
+		return modules;
+	}
+
+	/**
+	 * @return The estimated bytes of every module.
+	 */
+	public long getTotalBytes() {
+		long total = 0;
+		for(Usage usage : modules) {
+			total += usage.bytes;
+		}
+		return total;
+	}
+
+	/**
+	 * @return The report as a JSON object.
+	 */
+	public String toJson() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\n");
+		sb.append("  \"usedHeapBytes\": ").append(usedHeap).append(",\n");
+		sb.append("  \"maxHeapBytes\": ").append(maxHeap).append(",\n");
+		sb.append("  \"estimatedBytes\": ").append(getTotalBytes()).append(",\n");
+		sb.append("  \"stringPool\": { \"strings\": ").append(strings.getStringCount());
+		sb.append(", \"duplicates\": ").append(strings.getDuplicateCount());
+		sb.append(", \"bytesSaved\": ").append(strings.getBytesSaved()).append(" },\n");
+		sb.append("  \"modules\": [");
+		for(int i = 0; i < modules.size(); ++i) {
+			Usage usage = modules.get(i);
+			sb.append(i == 0 ? "\n" : ",\n");
+			sb.append("    {\n");
+			sb.append("      \"title\": ").append(quote(usage.title)).append(",\n");
+			sb.append("      \"loaded\": ").append(usage.loaded).append(",\n");
+			sb.append("      \"bytes\": ").append(usage.bytes).append(",\n");
+			sb.append("      \"objects\": ").append(usage.objectCount).append(",\n");
+			sb.append("      \"kinds\": {");
+			for(int kind = 0; kind < KIND_NAMES.length; ++kind) {
+				sb.append(kind == 0 ? " " : ", ");
+				sb.append(quote(KIND_NAMES[kind])).append(": ").append(usage.kindBytes[kind]);
+			}
+			sb.append(" },\n");
+			sb.append("      \"classes\": [");
+			List<ClassUsage> classes = usage.getClasses();
+			for(int j = 0; j < classes.size(); ++j) {
+				ClassUsage classUsage = classes.get(j);
+				sb.append(j == 0 ? "\n" : ",\n");
+				sb.append("        { \"class\": ").append(quote(classUsage.name));
+				sb.append(", \"count\": ").append(classUsage.count);
+				sb.append(", \"bytes\": ").append(classUsage.bytes).append(" }");
+			}
+			sb.append(classes.isEmpty() ? "]\n" : "\n      ]\n");
+			sb.append("    }");
+		}
+		sb.append(modules.isEmpty() ? "]\n" : "\n  ]\n");
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Heap used: ").append(formatSize(usedHeap)).append(" of ").append(formatSize(maxHeap)).append('\n');
+		sb.append("Estimated for the case: ").append(formatSize(getTotalBytes())).append('\n');
+		sb.append("String pool: ").append(strings).append('\n');
+		for(Usage usage : modules) {
+			sb.append('\n').append(usage.title).append(": ");
+			if(!usage.loaded) {
+				sb.append("not loaded\n");
+				continue;
+			}
+			sb.append(formatSize(usage.bytes)).append(" (");
+			for(int kind = 0; kind < KIND_NAMES.length; ++kind) {
+				sb.append(kind == 0 ? "" : ", ").append(KIND_NAMES[kind]).append(' ').append(formatSize(usage.kindBytes[kind]));
+			}
+			sb.append(")\n");
+			for(ClassUsage classUsage : usage.getClasses()) {
+				sb.append("    ").append(classUsage.name).append(": ").append(classUsage.count).append(" objects, ");
+				sb.append(formatSize(classUsage.bytes)).append('\n');
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Charges everything reachable from a module that isn't charged yet.
+	 */
+	private void measure(Object module, Usage usage) {
+		ArrayDeque<Pending> pending = new ArrayDeque<Pending>();
+		pending.push(new Pending(module, null, OTHER));
+		while(!pending.isEmpty()) {
+			Pending item = pending.pop();
+			Object object = item.object;
+			if(object == null || object instanceof Class || object instanceof Enum || visited.containsKey(object)) {
+				continue;
+			}
+			visited.put(object, Boolean.TRUE);
+
+			// Work out who pays for it
+			Class<?> owner = item.owner;
+			int kind = item.kind;
+			if(object instanceof TreeObject) {
+				owner = object.getClass();
+				kind = OTHER;
+				usage.getClassUsage(owner).count++;
+			}
+			else if(object instanceof DisplayData || object instanceof DisplayObject) {
+				kind = DISPLAY;
+			}
+			else if(kind != DISPLAY) {
+				if(object instanceof String) {
+					kind = STRINGS;
+				}
+				else if(object instanceof Collection || object instanceof Map || object instanceof Object[]) {
+					kind = COLLECTIONS;
+				}
+			}
+
+			long size = sizeOf(object, owner, kind, pending);
+			usage.bytes += size;
+			usage.kindBytes[kind] += size;
+			usage.objectCount++;
+			if(owner != null) {
+				usage.getClassUsage(owner).bytes += size;
+			}
+		}
+	}
+
+	/**
+	 * @return The object's own size; whatever it refers to is pushed.
+	 */
+	private long sizeOf(Object object, Class<?> owner, int kind, ArrayDeque<Pending> pending) {
+		Class<?> type = object.getClass();
+		if(object instanceof String) {
+			return StringPool.estimateSize((String) object);
+		}
+		if(type.isArray()) {
+			Class<?> component = type.getComponentType();
+			int length = java.lang.reflect.Array.getLength(object);
+			if(!component.isPrimitive()) {
+				for(Object element : (Object[]) object) {
+					pending.push(new Pending(element, owner, kind));
+				}
+			}
+			return align(ARRAY_HEADER + (long) length * fieldSize(component));
+		}
+		if(object instanceof Map) {
+			// The map, its table and an entry per mapping
+			Map<?, ?> map = (Map<?, ?>) object;
+			for(Map.Entry<?, ?> entry : map.entrySet()) {
+				pending.push(new Pending(entry.getKey(), owner, kind));
+				pending.push(new Pending(entry.getValue(), owner, kind));
+			}
+			return 48 + align(ARRAY_HEADER + (long) tableSize(map.size()) * REFERENCE) + 32L * map.size();
+		}
+		if(object instanceof Collection && !(object instanceof FileTable)) {
+			// The list and its backing array
+			Collection<?> collection = (Collection<?>) object;
+			for(Object element : collection) {
+				pending.push(new Pending(element, owner, kind));
+			}
+			return 24 + align(ARRAY_HEADER + (long) collection.size() * REFERENCE);
+		}
+		// Only follow the fields of our own classes; the JDK's are sized but not opened
+		if(type.getName().startsWith("com.ainfosec.")) {
+			for(Field field : getReferenceFields(type)) {
+				try {
+					pending.push(new Pending(field.get(object), owner, kind));
+				} catch (IllegalAccessException e) {
+					// getReferenceFields() made every field accessible
+					throw new AssertionError(e);
+				}
+			}
+		}
+		return getShallowSize(type);
+	}
+
+	private long getShallowSize(Class<?> type) {
+		Long size = shallowSizes.get(type);
+		if(size == null) {
+			long fields = 0;
+			for(Class<?> c = type; c != null; c = c.getSuperclass()) {
+				for(Field field : c.getDeclaredFields()) {
+					if(!Modifier.isStatic(field.getModifiers())) {
+						fields += fieldSize(field.getType());
+					}
+				}
+			}
+			size = align(OBJECT_HEADER + fields);
+			shallowSizes.put(type, size);
+		}
+		return size;
+	}
+
+	private Field[] getReferenceFields(Class<?> type) {
+		Field[] fields = referenceFields.get(type);
+		if(fields == null) {
+			ArrayList<Field> list = new ArrayList<Field>();
+			for(Class<?> c = type; c != null && c.getName().startsWith("com.ainfosec."); c = c.getSuperclass()) {
+				for(Field field : c.getDeclaredFields()) {
+					if(Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) {
+						continue;
+					}
+					// Going up the tree would walk into the other modules
+					if(c == TreeObject.class && field.getName().equals(PARENT_FIELD)) {
+						continue;
+					}
+					if(c == DisplayObject.class && field.getName().equals(ROWS_FIELD)) {
+						continue;
+					}
+					field.setAccessible(true);
+					list.add(field);
+				}
+			}
+			fields = list.toArray(new Field[list.size()]);
+			referenceFields.put(type, fields);
+		}
+		return fields;
+	}
+
+	private static int fieldSize(Class<?> type) {
+		if(type == long.class || type == double.class) {
+			return 8;
+		}
+		if(type == int.class || type == float.class) {
+			return 4;
+		}
+		if(type == short.class || type == char.class) {
+			return 2;
+		}
+		if(type == byte.class || type == boolean.class) {
+			return 1;
+		}
+		return REFERENCE;
+	}
+
+	/** HashMap's table: a power of two at most 3/4 full */
+	private static int tableSize(int size) {
+		int table = 16;
+		while(table * 3 / 4 < size) {
+			table *= 2;
+		}
+		return table;
+	}
+
+	private static long align(long size) {
+		return (size + 7) & ~7L;
+	}
+
+	private static String formatSize(long bytes) {
+		if(bytes >= 1024 * 1024) {
+			return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+		}
+		if(bytes >= 1024) {
+			return String.format("%.1f KB", bytes / 1024.0);
+		}
+		return bytes + " bytes";
+	}
+
+	private static String quote(String value) {
+		if(value == null) {
+			return "null";
+		}
+		StringBuilder sb = new StringBuilder(value.length() + 2);
+		sb.append('"');
+		for(int i = 0; i < value.length(); ++i) {
+			char c = value.charAt(i);
+			if(c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			}
+			else if(c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			}
+			else {
+				sb.append(c);
+			}
+		}
+		sb.append('"');
+		return sb.toString();
+	}
+
+	/** An object still to be charged, and who it's charged to */
+	private static class Pending {
+		private Object object;
+		private Class<?> owner;
+		private int kind;
+
+		public Pending(Object object, Class<?> owner, int kind) {
+			this.object = object;
+			this.owner = owner;
+			this.kind = kind;
+		}
+	}
+
+	/** What one module (or the shared path trie) retains */
+	public static class Usage {
+		private String title;
+		private boolean loaded = true;
+		private long bytes = 0;
+		private long objectCount = 0;
+		private long[] kindBytes = new long[KIND_NAMES.length];
+		private HashMap<Class<?>, ClassUsage> classes = new HashMap<Class<?>, ClassUsage>();
+
+		public Usage(String title) {
+			this.title = title;
+		}
+
+		public String getTitle() {
+			return title;
+		}
+
+		public boolean isLoaded() {
+			return loaded;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * @param kind STRINGS, COLLECTIONS, DISPLAY or OTHER.
+		 */
+		public long getBytes(int kind) {
+			return kindBytes[kind];
+		}
+
+		/**
+		 * @return Each TreeObject class in the module, largest first.
+		 */
+		public List<ClassUsage> getClasses() {
+			ArrayList<ClassUsage> list = new ArrayList<ClassUsage>(classes.values());
+			Collections.sort(list, new Comparator<ClassUsage>() {
+				@Override
+				public int compare(ClassUsage o1, ClassUsage o2) {
+					return o1.bytes < o2.bytes ? 1 : (o1.bytes > o2.bytes ? -1 : 0);
+				}
+			});
+			return list;
+		}
+
+		private ClassUsage getClassUsage(Class<?> type) {
+			ClassUsage classUsage = classes.get(type);
+			if(classUsage == null) {
+				classUsage = new ClassUsage(type.getSimpleName());
+				classes.put(type, classUsage);
+			}
+			return classUsage;
+		}
+	}
+
+	/** The objects of one TreeObject class, and everything charged to them */
+	public static class ClassUsage {
+		private String name;
+		private long count = 0;
+		private long bytes = 0;
+
+		public ClassUsage(String name) {
+			this.name = name;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public long getBytes() {
+			return bytes;
+		}
+	}
+}
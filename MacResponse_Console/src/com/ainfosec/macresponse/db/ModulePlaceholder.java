@@ -0,0 +1,274 @@
+/*
+
+ MacResponse: Incident Response Toolkit for Mac OS X
+
+ Copyright (C) 2011 - Assured Information Security, Inc. All rights reserved.
+
+ Authors:
+ Paul Petzke <petzkep _at_ ainfosec.com>
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package com.ainfosec.macresponse.db;
+
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Stands in for a module that hasn't been parsed yet.
+ *
+ * The placeholder only knows the module's title and the size of its XML
+ * file. The first call to {@link #load()} parses the module and swaps it in
+ * for the placeholder under the same parent, carrying over the checked
+ * state. A {@link Monitor} can follow the load and cancel it, in which case
+ * the placeholder stays unloaded and can be loaded again later.
+ *
+ * Loading in the background is split in two: {@link #parse(Monitor)} can
+ * run on any thread and leaves the tree alone, then {@link #install()}
+ * swaps the module in on the thread that owns the tree (the UI thread in
+ * the console), and {@link #addToIndexes()} can run on any thread again.
+ */
+public class ModulePlaceholder extends TreeObject {
+
+	/** Parses the module behind a placeholder */
+	public interface Source {
+		/**
+		 * @param monitor Follows the load, or null.
+		 * @return The module, init()ed, or null if it couldn't be loaded.
+		 * @throws CancellationException If the monitor cancelled the load.
+		 */
+		public TreeObject loadModule(Monitor monitor);
+	}
+
+	/** Follows a load; called from the loading thread */
+	public interface Monitor {
+		/**
+		 * @return Whether the load should stop as soon as possible.
+		 */
+		public boolean isCancelled();
+
+		/**
+		 * @param bytes The uncompressed bytes of XML read so far.
+		 */
+		public void bytesRead(long bytes);
+
+		/**
+		 * @param records The records parsed so far.
+		 */
+		public void recordsParsed(long records);
+	}
+
+	private String moduleTitle;
+	private long fileSize;
+	private Source source;
+
+	private volatile boolean loaded = false;
+	private volatile TreeObject module = null;
+	private volatile int recordCount = -1;
+	/** Whether the module has taken the placeholder's spot; only used by the tree's thread */
+	private boolean installed = false;
+
+	/**
+	 * @param moduleTitle The title of the module once it's loaded.
+	 * @param fileSize The size of the module's XML file, in bytes, or -1 if it isn't known.
+	 * @param source Parses the module.
+	 */
+	public ModulePlaceholder(String moduleTitle, long fileSize, Source source) {
+		this.moduleTitle = moduleTitle;
+		this.fileSize = fileSize;
+		this.source = source;
+	}
+
+	/**
+	 * Parses the module (only the first time) and replaces this placeholder
+	 * with it in the parent's children.
+	 * @return The module, or null if it couldn't be loaded.
+	 */
+	public TreeObject load() {
+		return load(null);
+	}
+
+	/**
+	 * Parses the module (only the first time) and replaces this placeholder
+	 * with it in the parent's children. Only call this from the thread that
+	 * owns the tree.
+	 * @param monitor Follows the load, or null.
+	 * @return The module, or null if it couldn't be loaded.
+	 * @throws CancellationException If the monitor cancelled the load.
+	 */
+	public TreeObject load(Monitor monitor) {
+		TreeObject loadedModule = parse(monitor);
+		if(install()) {
+			addToIndexes();
+		}
+		return loadedModule;
+	}
+
+	/**
+	 * Parses the module, only the first time. The tree isn't changed, so
+	 * this can run on any thread.
+	 * @param monitor Follows the load, or null.
+	 * @return The module, or null if it couldn't be loaded.
+	 * @throws CancellationException If the monitor cancelled the load.
+	 */
+	public synchronized TreeObject parse(Monitor monitor) {
+		if(loaded) {
+			return module;
+		}
+		TreeObject loadedModule = source.loadModule(monitor);
+		if(loadedModule != null) {
+			recordCount = countRecords(loadedModule);
+		}
+		module = loadedModule;
+		loaded = true;
+		if(monitor != null && loadedModule != null) {
+			// Snapshots aren't read as XML, so this is the first they hear
+			if(fileSize >= 0) {
+				monitor.bytesRead(fileSize);
+			}
+			monitor.recordsParsed(recordCount);
+		}
+		return module;
+	}
+
+	/**
+	 * Replaces this placeholder with its parsed module in the parent's
+	 * children. Only call this from the thread that owns the tree.
+	 * @return Whether the module was swapped in by this call; false if it
+	 * already was, or hasn't been parsed.
+	 */
+	public boolean install() {
+		TreeObject loadedModule = module;
+		if(installed || loadedModule == null) {
+			return false;
+		}
+		installed = true;
+		if(parentObject != null) {
+			parentObject.replaceChildObject(this, loadedModule);
+		}
+		return true;
+	}
+
+	/**
+	 * Adds the installed module to the root's entity and search indexes.
+	 * They're thread safe, so this can run on any thread once install()
+	 * has.
+	 */
+	public void addToIndexes() {
+		TreeObject loadedModule = module;
+		if(loadedModule != null && parentObject instanceof RootObject) {
+			((RootObject) parentObject).getEntityIndex().addModule(loadedModule);
+			((RootObject) parentObject).getSearchIndex().addModule(loadedModule);
+		}
+	}
+
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	/**
+	 * @return The loaded module, or null if it hasn't been loaded (or failed to).
+	 */
+	public TreeObject getModule() {
+		return module;
+	}
+
+	/**
+	 * @return The size of the module's XML file, in bytes, or -1 if it isn't known.
+	 */
+	public long getFileSize() {
+		return fileSize;
+	}
+
+	/**
+	 * @return The number of rows in the module, or -1 until it's loaded.
+	 */
+	public int getRecordCount() {
+		return recordCount;
+	}
+
+	@Override
+	public String[] getColumnNames() {
+		return null;
+	}
+
+	@Override
+	public String[] getColumnTitles() {
+		return null;
+	}
+
+	@Override
+	public String getTitle() {
+		ArrayList<String> details = new ArrayList<String>();
+		if(fileSize >= 0) {
+			details.add(formatSize(fileSize));
+		}
+		if(recordCount >= 0) {
+			details.add(recordCount + (recordCount == 1 ? " record" : " records"));
+		}
+		else if(loaded) {
+			details.add("unable to load");
+		}
+		StringBuffer sb = new StringBuffer();
+		sb.append(moduleTitle);
+		for(int i = 0; i < details.size(); ++i) {
+			sb.append(i == 0 ? " [" : ", ");
+			sb.append(details.get(i));
+		}
+		if(!details.isEmpty()) {
+			sb.append("]");
+		}
+		return sb.toString();
+	}
+
+	@Override
+	public void init() {
+		// Child Objects
+		// None until it's loaded
+
+		// Display Data
+		// None until it's loaded
+	}
+
+	/**
+	 * @return The rows shown for the module, or its children if it has no table.
+	 */
+	private static int countRecords(TreeObject module) {
+		int count = 0;
+		DisplayData displayData = module.getDisplayData();
+		if(displayData != null) {
+			for(DisplayObject displayObject : displayData.getDisplayObjects()) {
+				if(displayObject != null && displayObject.getObjects() != null) {
+					count += displayObject.getObjects().size();
+				}
+			}
+		}
+		if(count == 0 && module.getChildObjects() != null) {
+			count = module.getChildObjects().size();
+		}
+		return count;
+	}
+
+	private static String formatSize(long bytes) {
+		if(bytes < 1024) {
+			return bytes + " B";
+		}
+		if(bytes < 1024 * 1024) {
+			return (bytes / 1024) + " KB";
+		}
+		return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+	}
+}
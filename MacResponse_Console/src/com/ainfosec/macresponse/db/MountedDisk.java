@@ -24,8 +24,6 @@
 
 package com.ainfosec.macresponse.db;
 
-import java.util.ArrayList;
-
 public class MountedDisk extends TreeObject {
 	
 	public static final String[] columnNames = {
@@ -41,6 +39,14 @@ public class MountedDisk extends TreeObject {
 		"File System Type"
 	};
 
+	public static final ColumnType[] columnTypes = {
+		ColumnType.STRING,
+		ColumnType.STRING,
+		ColumnType.ENUM,
+	};
+
+	private static final RowDisplay rowDisplay = new RowDisplay(columnTitles, columnNames, columnTypes);
+
 	public String diskName;
 	public String mountPoint;
 	public String fileSystemType;
@@ -60,17 +66,17 @@ public class MountedDisk extends TreeObject {
 		return diskName;
 	}
 
+	@Override
+	protected DisplayData createDisplayData() {
+		return rowDisplay.getDisplayData(this);
+	}
+
 	@Override
 	public void init() {
 		// Setup Children
 		// None!
 		
 		// Setup Display Data
-		if(displayData == null) {
-			displayData = new DisplayData();
-			ArrayList<TreeObject> list = new ArrayList<TreeObject>();
-			list.add(this);
-			displayData.addDisplayObject(new DisplayObject(getTitle(), columnTitles, columnNames, list));
-		}
+		// Built when shown, by rowDisplay
 	}
 }
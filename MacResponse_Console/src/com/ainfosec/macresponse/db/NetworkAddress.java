@@ -40,6 +40,13 @@ public class NetworkAddress extends TreeObject {
 		"Network Netmask",
 		"Network Broadcast Address",
 	};
+
+	public static final ColumnType[] columnTypes = {
+		ColumnType.ENUM,
+		ColumnType.IP_ADDRESS,
+		ColumnType.IP_ADDRESS,
+		ColumnType.IP_ADDRESS,
+	};
 	
 	public String networkAddressType;
 	public String networkAddressValue;
@@ -27,6 +27,8 @@ package com.ainfosec.macresponse.db;
 import java.util.ArrayList;
 
 public class NetworkConfigurationModule extends TreeObject {
+	public static final String title = "Network Configuration";
+
 	public ArrayList<NetworkInterface> networkInterfaces = new ArrayList<NetworkInterface>();
 	
 	public String[] getColumnNames() {
@@ -39,7 +41,7 @@ public class NetworkConfigurationModule extends TreeObject {
 
 	@Override
 	public String getTitle() {
-		return "Network Configuration";
+		return title;
 	}
 
 	@Override
@@ -27,6 +27,8 @@ package com.ainfosec.macresponse.db;
 import java.util.ArrayList;
 
 public class NetworkConnectionsModule extends TreeObject {
+	public static final String title = "Network Connections";
+
 	public static final String[] columnNames = {
 		"activeConnections", 
 		"routingTableEntries"
@@ -52,7 +54,7 @@ public class NetworkConnectionsModule extends TreeObject {
 
 	@Override
 	public String getTitle() {
-		return "Network Connections";
+		return title;
 	}
 
 	@Override
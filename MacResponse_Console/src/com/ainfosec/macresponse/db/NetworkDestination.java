@@ -32,6 +32,10 @@ public class NetworkDestination extends TreeObject {
 	public static final String[] columnTitles = {
 		"Network Address Value"
 	};
+
+	public static final ColumnType[] columnTypes = {
+		ColumnType.IP_ADDRESS,
+	};
 	
 	public String networkAddressValue;
 	
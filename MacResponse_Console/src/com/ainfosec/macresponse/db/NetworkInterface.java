@@ -71,7 +71,7 @@ public class NetworkInterface extends TreeObject {
 			list.add(this);
 			displayData.addDisplayObject(new DisplayObject(getTitle(), columnTitles, columnNames, list));
 			displayData.addDisplayObject(new DisplayObject("Network Interface Flags", NetworkInterfaceFlag.columnTitles, NetworkInterfaceFlag.columnNames, networkInterfaceFlags));
-			displayData.addDisplayObject(new DisplayObject("Network Addresses", NetworkAddress.columnTitles, NetworkAddress.columnNames, networkAddresses));
+			displayData.addDisplayObject(new DisplayObject("Network Addresses", NetworkAddress.columnTitles, NetworkAddress.columnNames, NetworkAddress.columnTypes, networkAddresses));
 		}
 	}
 }
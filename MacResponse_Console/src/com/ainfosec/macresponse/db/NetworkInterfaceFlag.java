@@ -24,8 +24,6 @@
 
 package com.ainfosec.macresponse.db;
 
-import java.util.ArrayList;
-
 public class NetworkInterfaceFlag extends TreeObject {
 	
 	public static final String[] columnNames = {
@@ -35,6 +33,8 @@ public class NetworkInterfaceFlag extends TreeObject {
 	public static final String[] columnTitles = {
 		"Network Interface Flag Value"
 	};
+
+	private static final RowDisplay rowDisplay = new RowDisplay(columnTitles, columnNames, null);
 	
 	public String networkInterfaceFlagValue;
 
@@ -53,17 +53,17 @@ public class NetworkInterfaceFlag extends TreeObject {
 		return networkInterfaceFlagValue;
 	}
 
+	@Override
+	protected DisplayData createDisplayData() {
+		return rowDisplay.getDisplayData(this);
+	}
+
 	@Override
 	public void init() {
 		// Child Objects
 		// None
 		
 		// Display Data
-		if(displayData == null) {
-			displayData = new DisplayData();
-			ArrayList<TreeObject> list = new ArrayList<TreeObject>();
-			list.add(this);
-			displayData.addDisplayObject(new DisplayObject(getTitle(), columnTitles, columnNames, list));
-		}
+		// Built when shown, by rowDisplay
 	}
 }
@@ -31,8 +31,8 @@ public class OpenConnectionsNode extends TreeObject {
 		"fileDescriptor",
 		"fileType",
 		"fileProtocol",
-		"localAddress",
-		"foreignAddress",
+		"localNetworkAddress",
+		"foreignNetworkAddress",
 	};
 	
 	public static final String[] columnTitles = {
@@ -43,6 +43,14 @@ public class OpenConnectionsNode extends TreeObject {
 		"Foreign Address",
 	};
 
+	public static final ColumnType[] columnTypes = {
+		ColumnType.STRING,
+		ColumnType.ENUM,
+		ColumnType.ENUM,
+		ColumnType.STRING,
+		ColumnType.STRING,
+	};
+
 	@Override
 	public String getTitle() {
 		return "Open Connections";
@@ -72,7 +80,7 @@ public class OpenConnectionsNode extends TreeObject {
 			displayData = new DisplayData();
 			// TODO Paul double check - this has display item as children (has children as children too)
 			// comment above copy/pasted from OpenFilesNode
-			displayData.addDisplayObject(new DisplayObject(getTitle(), columnTitles, columnNames, childObjects));
+			displayData.addDisplayObject(new DisplayObject(getTitle(), columnTitles, columnNames, columnTypes, childObjects));
 		}
 	}
 }
@@ -24,8 +24,6 @@
 
 package com.ainfosec.macresponse.db;
 
-import java.util.ArrayList;
-
 public class OpenFile extends TreeObject {
 	
 	public static final String[] columnNames = {
@@ -34,7 +32,7 @@ public class OpenFile extends TreeObject {
 		"filePath",
 		"fileProtocol",
 		"localNetworkAddress",
-		"remoteNetworkAddress",
+		"foreignNetworkAddress",
 	};
 	
 	public static final String[] columnTitles = {
@@ -45,6 +43,17 @@ public class OpenFile extends TreeObject {
 		"Local Address",
 		"Foreign Address",
 	};
+
+	public static final ColumnType[] columnTypes = {
+		ColumnType.STRING,
+		ColumnType.ENUM,
+		ColumnType.STRING,
+		ColumnType.ENUM,
+		ColumnType.STRING,
+		ColumnType.STRING,
+	};
+
+	private static final RowDisplay rowDisplay = new RowDisplay(columnTitles, columnNames, columnTypes);
 	
 	public String fileDescriptor;
 	public String fileType;
@@ -52,6 +61,16 @@ public class OpenFile extends TreeObject {
 	public String fileProtocol;
 	public LocalNetworkAddress localNetworkAddress;
 	public ForeignNetworkAddress foreignNetworkAddress;
+
+	/** The filePath's node in the shared PathTrie */
+	private transient int filePathNode = PathTrie.NONE;
+
+	/**
+	 * @return The path, rebuilt from the shared PathTrie once init() has run.
+	 */
+	public String getFilePath() {
+		return PathTrie.getPath(filePathNode, filePath);
+	}
 	
 	@Override
 	public String[] getColumnNames() {
@@ -76,20 +95,27 @@ public class OpenFile extends TreeObject {
 			
 			return sb.toString();
 		}
-		return filePath;
+		return getFilePath();
+	}
+
+	@Override
+	protected DisplayData createDisplayData() {
+		return rowDisplay.getDisplayData(this);
 	}
 
 	@Override
 	public void init() {
+		if(filePathNode == PathTrie.NONE) {
+			filePathNode = PathTrie.intern(filePath);
+			if(filePathNode != PathTrie.NONE) {
+				filePath = null;
+			}
+		}
+		
 		// Setup Children
 		// None!
 		
 		// Setup Display Data
-		if(displayData == null) {
-			displayData = new DisplayData();
-			ArrayList<TreeObject> list = new ArrayList<TreeObject>();
-			list.add(this);
-			displayData.addDisplayObject(new DisplayObject(getTitle(), columnTitles, columnNames, list));
-		}
+		// Built when shown, by rowDisplay
 	}
 }
@@ -39,6 +39,12 @@ public class OpenFilesNode extends TreeObject {
 		"File Path"
 	};
 
+	public static final ColumnType[] columnTypes = {
+		ColumnType.STRING,
+		ColumnType.ENUM,
+		ColumnType.STRING,
+	};
+
 	@Override
 	public String getTitle() {
 		return "Open Files";
@@ -67,7 +73,7 @@ public class OpenFilesNode extends TreeObject {
 		if(displayData == null) {
 			displayData = new DisplayData();
 			// TODO Paul double check - this has display item as children (has children as children too)
-			displayData.addDisplayObject(new DisplayObject(getTitle(), columnTitles, columnNames, childObjects));
+			displayData.addDisplayObject(new DisplayObject(getTitle(), columnTitles, columnNames, columnTypes, childObjects));
 		}
 	}
 }
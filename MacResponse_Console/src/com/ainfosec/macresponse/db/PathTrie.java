@@ -0,0 +1,367 @@
+/*
+
+ MacResponse: Incident Response Toolkit for Mac OS X
+
+ Copyright (C) 2011 - Assured Information Security, Inc. All rights reserved.
+
+ Authors:
+ Paul Petzke <petzkep _at_ ainfosec.com>
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package com.ainfosec.macresponse.db;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Stores absolute paths as nodes of a trie of path segments.
+ *
+ * A node is an int: its parent node plus one segment name, and every
+ * segment name is stored once. The full path string is only rebuilt when
+ * it's asked for. The path columns of OpenFile, Application and
+ * PropertyList share {@link #getShared()}, so a prefix like
+ * /System/Library/Frameworks/ costs one node no matter how many paths go
+ * through it, and the children of a directory are a linked list away.
+ * Each FileTable keeps its own instance for the directories of its rows.
+ *
+ * Only paths that come back out exactly are stored: they must start with
+ * '/' and have no empty segments. Anything else (pipes, sockets, relative
+ * names) gets {@link #NONE} and should be kept as a plain string.
+ */
+public class PathTrie {
+	/** Not a node; returned for paths that can't be stored */
+	public static final int NONE = 0;
+	/** The "/" node */
+	public static final int ROOT = 1;
+
+	private static final PathTrie shared = new PathTrie();
+
+	// Node columns, indexed by node
+	private int[] parents = new int[1024];
+	private int[] segments = new int[1024];
+	private int[] firstChildren = new int[1024];
+	private int[] nextSiblings = new int[1024];
+	private int nodeCount = ROOT + 1;
+
+	private ArrayList<String> segmentNames = new ArrayList<String>();
+	private HashMap<String, Integer> segmentIds = new HashMap<String, Integer>();
+
+	/** (parent node, segment) -> child node */
+	private LongIntMap childNodes = new LongIntMap();
+
+	public PathTrie() {
+		segmentNames.add("");
+		segmentIds.put("", 0);
+		parents[ROOT] = NONE;
+		segments[ROOT] = 0;
+	}
+
+	/**
+	 * @return The trie shared by the path columns of the loaded modules.
+	 */
+	public static PathTrie getShared() {
+		return shared;
+	}
+
+	/**
+	 * Adds a row's path to the shared trie, for rows that keep the node in
+	 * place of the string.
+	 * @param path An absolute path, or null.
+	 * @return The path's node, or NONE if there's no path or it can't be
+	 * stored exactly (keep the string then).
+	 */
+	public static int intern(String path) {
+		return path == null ? NONE : shared.add(path);
+	}
+
+	/**
+	 * @param node A node returned by intern(), or NONE.
+	 * @param path The string kept when the node is NONE.
+	 * @return The path the row holds.
+	 */
+	public static String getPath(int node, String path) {
+		return node == NONE ? path : shared.getPath(node);
+	}
+
+	/**
+	 * Adds a path (and every directory above it).
+	 * @param path An absolute path.
+	 * @return The path's node, or NONE if it can't be stored exactly.
+	 */
+	public synchronized int add(String path) {
+		if(!isStorable(path)) {
+			return NONE;
+		}
+		int node = ROOT;
+		int start = 1;
+		int length = path.length();
+		while(start < length) {
+			int end = path.indexOf('/', start);
+			if(end < 0) {
+				end = length;
+			}
+			node = getOrAddChild(node, path.substring(start, end));
+			start = end + 1;
+		}
+		return node;
+	}
+
+	/**
+	 * Looks a path up without adding it.
+	 * @param path An absolute path.
+	 * @return The path's node, or NONE if it isn't in the trie.
+	 */
+	public synchronized int find(String path) {
+		if(!isStorable(path)) {
+			return NONE;
+		}
+		int node = ROOT;
+		int start = 1;
+		int length = path.length();
+		while(start < length && node != NONE) {
+			int end = path.indexOf('/', start);
+			if(end < 0) {
+				end = length;
+			}
+			Integer segment = segmentIds.get(path.substring(start, end));
+			node = segment == null ? NONE : childNodes.get(key(node, segment));
+			start = end + 1;
+		}
+		return node;
+	}
+
+	/**
+	 * Rebuilds the full path of a node.
+	 * @param node A node returned by add().
+	 * @return The path, or null for NONE.
+	 */
+	public synchronized String getPath(int node) {
+		if(node == NONE) {
+			return null;
+		}
+		if(node == ROOT) {
+			return "/";
+		}
+		// Collect the segments from the leaf up, then write them root first
+		int depth = 0;
+		int length = 0;
+		for(int n = node; n != ROOT; n = parents[n]) {
+			++depth;
+			length += 1 + segmentNames.get(segments[n]).length();
+		}
+		String[] names = new String[depth];
+		int i = depth;
+		for(int n = node; n != ROOT; n = parents[n]) {
+			names[--i] = segmentNames.get(segments[n]);
+		}
+		StringBuilder sb = new StringBuilder(length);
+		for(String name : names) {
+			sb.append('/');
+			sb.append(name);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return The last segment of a node's path ("" for the root).
+	 */
+	public synchronized String getName(int node) {
+		return segmentNames.get(segments[node]);
+	}
+
+	/**
+	 * @return The node's directory, or NONE for the root.
+	 */
+	public synchronized int getParent(int node) {
+		return parents[node];
+	}
+
+	/**
+	 * @return Every node directly below a node, most recently added first.
+	 */
+	public synchronized int[] getChildren(int node) {
+		int count = 0;
+		for(int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+			++count;
+		}
+		int[] children = new int[count];
+		int i = 0;
+		for(int child = firstChildren[node]; child != NONE; child = nextSiblings[child]) {
+			children[i++] = child;
+		}
+		return children;
+	}
+
+	/**
+	 * @return The number of nodes, including the root.
+	 */
+	public synchronized int size() {
+		return nodeCount - ROOT;
+	}
+
+	/**
+	 * Writes the trie so {@link #read(DataInput)} can rebuild it with the
+	 * same node numbers.
+	 * @param out Where to write it.
+	 * @throws IOException
+	 */
+	public synchronized void write(DataOutput out) throws IOException {
+		// Segment 0 is the root's empty name
+		out.writeInt(segmentNames.size());
+		for(int i = 1; i < segmentNames.size(); ++i) {
+			out.writeUTF(segmentNames.get(i));
+		}
+		out.writeInt(nodeCount);
+		for(int node = ROOT + 1; node < nodeCount; ++node) {
+			out.writeInt(parents[node]);
+			out.writeInt(segments[node]);
+		}
+	}
+
+	/**
+	 * Reads a trie written by {@link #write(DataOutput)}.
+	 * @param in Where to read it from.
+	 * @return The trie.
+	 * @throws IOException
+	 */
+	public static PathTrie read(DataInput in) throws IOException {
+		PathTrie trie = new PathTrie();
+		int segmentCount = in.readInt();
+		for(int i = 1; i < segmentCount; ++i) {
+			String name = in.readUTF();
+			trie.segmentIds.put(name, trie.segmentNames.size());
+			trie.segmentNames.add(name);
+		}
+		// Parents always come before their children, so adding the nodes
+		// in order gives them back their numbers
+		int nodeCount = in.readInt();
+		for(int node = ROOT + 1; node < nodeCount; ++node) {
+			int parent = in.readInt();
+			int segment = in.readInt();
+			if(parent < ROOT || parent >= node || segment < 0 || segment >= segmentCount) {
+				throw new IOException("Corrupt path trie at node " + node);
+			}
+			trie.getOrAddChild(parent, segment);
+		}
+		return trie;
+	}
+
+	private int getOrAddChild(int parent, String name) {
+		Integer segment = segmentIds.get(name);
+		if(segment == null) {
+			segment = segmentNames.size();
+			segmentNames.add(name);
+			segmentIds.put(name, segment);
+		}
+		return getOrAddChild(parent, segment);
+	}
+
+	private int getOrAddChild(int parent, int segment) {
+		long key = key(parent, segment);
+		int child = childNodes.get(key);
+		if(child != NONE) {
+			return child;
+		}
+
+		if(nodeCount == parents.length) {
+			int capacity = parents.length * 2;
+			parents = Arrays.copyOf(parents, capacity);
+			segments = Arrays.copyOf(segments, capacity);
+			firstChildren = Arrays.copyOf(firstChildren, capacity);
+			nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+		}
+		child = nodeCount++;
+		parents[child] = parent;
+		segments[child] = segment;
+		nextSiblings[child] = firstChildren[parent];
+		firstChildren[parent] = child;
+		childNodes.put(key, child);
+		return child;
+	}
+
+	private static long key(int parent, int segment) {
+		return ((long) parent << 32) | (segment & 0xffffffffL);
+	}
+
+	private static boolean isStorable(String path) {
+		if(path == null || path.length() == 0 || path.charAt(0) != '/') {
+			return false;
+		}
+		if(path.length() == 1) {
+			return true;
+		}
+		return path.charAt(path.length() - 1) != '/' && path.indexOf("//") < 0;
+	}
+
+	/**
+	 * An open-addressing long to int map; keys are never 0 since the parent
+	 * is always at least ROOT.
+	 */
+	private static class LongIntMap {
+		private long[] keys = new long[2048];
+		private int[] values = new int[2048];
+		private int size = 0;
+
+		public int get(long key) {
+			int mask = keys.length - 1;
+			for(int i = hash(key) & mask; keys[i] != 0; i = (i + 1) & mask) {
+				if(keys[i] == key) {
+					return values[i];
+				}
+			}
+			return NONE;
+		}
+
+		public void put(long key, int value) {
+			if((size + 1) * 2 > keys.length) {
+				grow();
+			}
+			int mask = keys.length - 1;
+			int i = hash(key) & mask;
+			while(keys[i] != 0 && keys[i] != key) {
+				i = (i + 1) & mask;
+			}
+			if(keys[i] == 0) {
+				++size;
+			}
+			keys[i] = key;
+			values[i] = value;
+		}
+
+		private void grow() {
+			long[] oldKeys = keys;
+			int[] oldValues = values;
+			keys = new long[oldKeys.length * 2];
+			values = new int[oldValues.length * 2];
+			size = 0;
+			for(int i = 0; i < oldKeys.length; ++i) {
+				if(oldKeys[i] != 0) {
+					put(oldKeys[i], oldValues[i]);
+				}
+			}
+		}
+
+		private static int hash(long key) {
+			long h = key * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32));
+		}
+	}
+}
@@ -27,6 +27,8 @@ package com.ainfosec.macresponse.db;
 import java.util.ArrayList;
 
 public class PhysicalMemoryModule extends TreeObject {
+	public static final String title = "Physical Memory";
+
 
 	public AcquisitionImage acquisitionImage;
 
@@ -45,7 +47,7 @@ public class PhysicalMemoryModule extends TreeObject {
 
 	@Override
 	public String getTitle() {
-		return "Physical Memory";
+		return title;
 	}
 
 	@Override
@@ -38,6 +38,12 @@ public class Process extends TreeObject {
 		"Parent Process ID",
 		"Process Name"
 	};
+
+	public static final ColumnType[] columnTypes = {
+		ColumnType.LONG,
+		ColumnType.LONG,
+		ColumnType.STRING,
+	};
 	
 	public String pid;
 	public String ppid;
@@ -123,7 +129,7 @@ public class Process extends TreeObject {
 			displayData = new DisplayData();
 			ArrayList<TreeObject> list = new ArrayList<TreeObject>();
 			list.add(this);
-			displayData.addDisplayObject(new DisplayObject(getTitle(), columnTitles, columnNames, list));
+			displayData.addDisplayObject(new DisplayObject(getTitle(), columnTitles, columnNames, columnTypes, list));
 			displayData.addDisplayObject(new DisplayObject("Command Line Arguments", CommandLineArg.columnTitles,CommandLineArg.columnNames, commandLineArgs));
 		}
 	}
@@ -0,0 +1,261 @@
+/*
+
+ MacResponse: Incident Response Toolkit for Mac OS X
+
+ Copyright (C) 2011 - Assured Information Security, Inc. All rights reserved.
+
+ Authors:
+ Paul Petzke <petzkep _at_ ainfosec.com>
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package com.ainfosec.macresponse.db;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * The parent/child hierarchy of a process list, built from each Process's
+ * pid and ppid.
+ *
+ * Processes are numbered by their position in the list. A hash index maps
+ * pids to processes (the first one with each pid, as pids are reused) and
+ * an identity index maps the processes themselves to their numbers. Each
+ * process keeps its parent's number, and the children of every process
+ * are stored together in one array (a range per parent). Looking up a process, its parent, its children or the size of
+ * its subtree is O(1), so tracing ancestry is O(1) per step.
+ *
+ * A process whose parent isn't in the list (or is itself, like
+ * kernel_task) is a root. Any cycle in corrupt data is broken where it's
+ * found, so every process is in exactly one tree.
+ */
+public class ProcessIndex {
+	/** Not a process */
+	public static final int NONE = -1;
+
+	private List<Process> processes;
+	private HashMap<Long, Integer> pidIndex;
+	private IdentityHashMap<Process, Integer> processIndex;
+	private int[] parents;
+	/** Process i's children are children[childStarts[i]] to children[childStarts[i + 1] - 1] */
+	private int[] childStarts;
+	private int[] children;
+	/** The number of descendants of each process */
+	private int[] descendantCounts;
+	private int[] roots;
+
+	/**
+	 * Indexes a list of processes. The list shouldn't change afterwards.
+	 * @param processes The processes.
+	 */
+	public ProcessIndex(List<Process> processes) {
+		this.processes = processes;
+		int count = processes.size();
+
+		// pid -> process, and process -> number
+		pidIndex = new HashMap<Long, Integer>(count * 2);
+		processIndex = new IdentityHashMap<Process, Integer>(count);
+		for(int i = 0; i < count; ++i) {
+			processIndex.put(processes.get(i), i);
+			long pid = ColumnType.LONG.parse(processes.get(i).pid);
+			if(pid != ColumnType.NO_VALUE && !pidIndex.containsKey(pid)) {
+				pidIndex.put(pid, i);
+			}
+		}
+
+		// Each process's parent
+		parents = new int[count];
+		for(int i = 0; i < count; ++i) {
+			long ppid = ColumnType.LONG.parse(processes.get(i).ppid);
+			Integer parent = ppid == ColumnType.NO_VALUE ? null : pidIndex.get(ppid);
+			parents[i] = parent == null || parent == i ? NONE : parent;
+		}
+		breakCycles();
+
+		// The children of each process, in list order
+		childStarts = new int[count + 1];
+		int rootCount = 0;
+		for(int i = 0; i < count; ++i) {
+			if(parents[i] == NONE) {
+				++rootCount;
+			}
+			else {
+				++childStarts[parents[i] + 1];
+			}
+		}
+		for(int i = 0; i < count; ++i) {
+			childStarts[i + 1] += childStarts[i];
+		}
+		children = new int[count - rootCount];
+		roots = new int[rootCount];
+		int[] next = new int[count];
+		System.arraycopy(childStarts, 0, next, 0, count);
+		rootCount = 0;
+		for(int i = 0; i < count; ++i) {
+			if(parents[i] == NONE) {
+				roots[rootCount++] = i;
+			}
+			else {
+				children[next[parents[i]]++] = i;
+			}
+		}
+
+		// Count descendants from the leaves up: visit top-down, add bottom-up
+		int[] order = new int[count];
+		int visited = 0;
+		for(int root : roots) {
+			order[visited++] = root;
+		}
+		for(int i = 0; i < visited; ++i) {
+			int process = order[i];
+			for(int c = childStarts[process]; c < childStarts[process + 1]; ++c) {
+				order[visited++] = children[c];
+			}
+		}
+		descendantCounts = new int[count];
+		for(int i = count - 1; i >= 0; --i) {
+			int process = order[i];
+			if(parents[process] != NONE) {
+				descendantCounts[parents[process]] += descendantCounts[process] + 1;
+			}
+		}
+	}
+
+	/**
+	 * Makes the first process found on each cycle of parents a root.
+	 */
+	private void breakCycles() {
+		final int unvisited = 0;
+		final int onPath = 1;
+		final int done = 2;
+		int[] states = new int[parents.length];
+		for(int start = 0; start < parents.length; ++start) {
+			int process = start;
+			while(process != NONE && states[process] == unvisited) {
+				states[process] = onPath;
+				if(parents[process] != NONE && states[parents[process]] == onPath) {
+					parents[process] = NONE;
+				}
+				process = parents[process];
+			}
+			for(process = start; process != NONE && states[process] == onPath; process = parents[process]) {
+				states[process] = done;
+			}
+		}
+	}
+
+	/**
+	 * @return The number of processes.
+	 */
+	public int size() {
+		return parents.length;
+	}
+
+	public Process getProcess(int process) {
+		return processes.get(process);
+	}
+
+	/**
+	 * @param pid A process id.
+	 * @return The process's number, or NONE if there's no such process.
+	 */
+	public int find(long pid) {
+		Integer process = pidIndex.get(pid);
+		return process == null ? NONE : process;
+	}
+
+	/**
+	 * @return The process's number, or NONE if it isn't in the list.
+	 */
+	public int indexOf(Process process) {
+		Integer i = processIndex.get(process);
+		return i == null ? NONE : i;
+	}
+
+	/**
+	 * @return The parent's number, or NONE for a root.
+	 */
+	public int getParent(int process) {
+		return parents[process];
+	}
+
+	public int getChildCount(int process) {
+		return childStarts[process + 1] - childStarts[process];
+	}
+
+	/**
+	 * @param index From 0 to getChildCount(process) - 1.
+	 * @return The number of that child.
+	 */
+	public int getChild(int process, int index) {
+		return children[childStarts[process] + index];
+	}
+
+	/**
+	 * @return The number of processes below a process, at any depth.
+	 */
+	public int getDescendantCount(int process) {
+		return descendantCounts[process];
+	}
+
+	/**
+	 * @return The processes with no parent in the list.
+	 */
+	public List<Process> getRoots() {
+		ArrayList<Process> list = new ArrayList<Process>(roots.length);
+		for(int root : roots) {
+			list.add(processes.get(root));
+		}
+		return list;
+	}
+
+	/**
+	 * @return A process's direct children, in list order.
+	 */
+	public List<Process> getChildren(int process) {
+		int count = getChildCount(process);
+		ArrayList<Process> list = new ArrayList<Process>(count);
+		for(int i = 0; i < count; ++i) {
+			list.add(processes.get(getChild(process, i)));
+		}
+		return list;
+	}
+
+	/**
+	 * @return A process's parent, its parent's parent and so on up to the
+	 * root; empty for a root.
+	 */
+	public List<Process> getAncestry(int process) {
+		ArrayList<Process> list = new ArrayList<Process>();
+		for(int parent = parents[process]; parent != NONE; parent = parents[parent]) {
+			list.add(processes.get(parent));
+		}
+		return list;
+	}
+
+	/**
+	 * @return The processes from the root down to a process (included).
+	 */
+	public List<Process> getPath(int process) {
+		List<Process> list = getAncestry(process);
+		Collections.reverse(list);
+		list.add(processes.get(process));
+		return list;
+	}
+}
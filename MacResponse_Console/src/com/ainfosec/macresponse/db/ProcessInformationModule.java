@@ -27,7 +27,11 @@ package com.ainfosec.macresponse.db;
 import java.util.ArrayList;
 
 public class ProcessInformationModule extends TreeObject {
+	public static final String title = "Process Information";
+
 	public ArrayList<Process> processes = new ArrayList<Process>();
+	/** The pid/ppid hierarchy, indexed when the module is loaded */
+	private transient ProcessIndex processIndex;
 
 	@Override
 	public String[] getColumnNames() {
@@ -41,13 +45,21 @@ public class ProcessInformationModule extends TreeObject {
 
 	@Override
 	public String getTitle() {
-		return "Process Information";
+		return title;
+	}
+
+	public ProcessIndex getProcessIndex() {
+		if(processIndex == null) {
+			processIndex = new ProcessIndex(processes);
+		}
+		return processIndex;
 	}
 
 	@Override
 	public void init() {
 		// Setup Children
 		if(childObjects == null) {
+			addChildObject(new ProcessTreeNode(getProcessIndex()));
 			for(TreeObject to : processes) {
 				addChildObject(to);
 			}
@@ -56,7 +68,7 @@ public class ProcessInformationModule extends TreeObject {
 		// Setup Display Data
 		if(displayData == null) {
 			displayData = new DisplayData();
-			displayData.addDisplayObject(new DisplayObject(getTitle(), Process.columnTitles, Process.columnNames, processes));
+			displayData.addDisplayObject(new DisplayObject(getTitle(), Process.columnTitles, Process.columnNames, Process.columnTypes, processes));
 		}
 	}
 }
@@ -0,0 +1,85 @@
+/*
+
+ MacResponse: Incident Response Toolkit for Mac OS X
+
+ Copyright (C) 2011 - Assured Information Security, Inc. All rights reserved.
+
+ Authors:
+ Paul Petzke <petzkep _at_ ainfosec.com>
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package com.ainfosec.macresponse.db;
+
+/**
+ * A process in the ProcessTreeNode, with its child processes as children.
+ * The Process itself stays under the module; this only refers to it.
+ */
+public class ProcessTreeEntry extends TreeObject {
+	private transient ProcessIndex index;
+	private int process;
+
+	public ProcessTreeEntry(ProcessIndex index, int process) {
+		this.index = index;
+		this.process = process;
+	}
+
+	public Process getProcess() {
+		return index.getProcess(process);
+	}
+
+	@Override
+	public String getTitle() {
+		int descendants = index.getDescendantCount(process);
+		if(descendants == 0) {
+			return getProcess().getTitle();
+		}
+		return getProcess().getTitle() + " (" + descendants + (descendants == 1 ? " descendant)" : " descendants)");
+	}
+
+	@Override
+	public String[] getColumnNames() {
+		return Process.columnNames;
+	}
+
+	@Override
+	public String[] getColumnTitles() {
+		return Process.columnTitles;
+	}
+
+	@Override
+	public void init() {
+		// Setup Children
+		if(childObjects == null) {
+			for(int i = 0; i < index.getChildCount(process); ++i) {
+				addChildObject(new ProcessTreeEntry(index, index.getChild(process, i)));
+			}
+		}
+
+		// Setup Display Data
+		// Built when shown
+	}
+
+	@Override
+	protected DisplayData createDisplayData() {
+		DisplayData data = new DisplayData();
+		data.addDisplayObject(new DisplayObject("Ancestry", Process.columnTitles, Process.columnNames, Process.columnTypes, index.getPath(process)));
+		if(index.getChildCount(process) > 0) {
+			data.addDisplayObject(new DisplayObject("Child Processes", Process.columnTitles, Process.columnNames, Process.columnTypes, index.getChildren(process)));
+		}
+		return data;
+	}
+}
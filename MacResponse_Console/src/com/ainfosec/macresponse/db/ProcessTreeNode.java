@@ -0,0 +1,74 @@
+/*
+
+ MacResponse: Incident Response Toolkit for Mac OS X
+
+ Copyright (C) 2011 - Assured Information Security, Inc. All rights reserved.
+
+ Authors:
+ Paul Petzke <petzkep _at_ ainfosec.com>
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package com.ainfosec.macresponse.db;
+
+/**
+ * The processes arranged by parent, under a process module. The children
+ * are the root processes; each has its child processes under it.
+ */
+public class ProcessTreeNode extends TreeObject {
+	private transient ProcessIndex index;
+
+	public ProcessTreeNode(ProcessIndex index) {
+		this.index = index;
+	}
+
+	public ProcessIndex getIndex() {
+		return index;
+	}
+
+	@Override
+	public String getTitle() {
+		return "Process Tree";
+	}
+
+	@Override
+	public String[] getColumnNames() {
+		return Process.columnNames;
+	}
+
+	@Override
+	public String[] getColumnTitles() {
+		return Process.columnTitles;
+	}
+
+	@Override
+	public void init() {
+		// Setup Children
+		if(childObjects == null) {
+			for(int i = 0; i < index.size(); ++i) {
+				if(index.getParent(i) == ProcessIndex.NONE) {
+					addChildObject(new ProcessTreeEntry(index, i));
+				}
+			}
+		}
+
+		// Setup Display Data
+		if(displayData == null) {
+			displayData = new DisplayData();
+			displayData.addDisplayObject(new DisplayObject("Root Processes", Process.columnTitles, Process.columnNames, Process.columnTypes, index.getRoots()));
+		}
+	}
+}
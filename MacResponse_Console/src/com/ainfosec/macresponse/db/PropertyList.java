@@ -24,8 +24,6 @@
 
 package com.ainfosec.macresponse.db;
 
-import java.util.ArrayList;
-
 public class PropertyList extends TreeObject {
 
 	public static final String[] columnNames = {
@@ -37,10 +35,22 @@ public class PropertyList extends TreeObject {
 		"File Path", 
 		"Case Path",
 	};
+
+	private static final RowDisplay rowDisplay = new RowDisplay(columnTitles, columnNames, null);
 	
 	public String filePath;
 	public String casePath;
 
+	/** The filePath's node in the shared PathTrie */
+	private transient int filePathNode = PathTrie.NONE;
+
+	/**
+	 * @return The path, rebuilt from the shared PathTrie once init() has run.
+	 */
+	public String getFilePath() {
+		return PathTrie.getPath(filePathNode, filePath);
+	}
+
 	@Override
 	public String[] getColumnNames() {
 		return columnNames;
@@ -53,20 +63,27 @@ public class PropertyList extends TreeObject {
 
 	@Override
 	public String getTitle() {
-		return filePath;
+		return getFilePath();
+	}
+
+	@Override
+	protected DisplayData createDisplayData() {
+		return rowDisplay.getDisplayData(this);
 	}
 
 	@Override
 	public void init() {
+		if(filePathNode == PathTrie.NONE) {
+			filePathNode = PathTrie.intern(filePath);
+			if(filePathNode != PathTrie.NONE) {
+				filePath = null;
+			}
+		}
+		
 		// Setup Children
 		// None!
 		
 		// Setup Display Data
-		if(displayData == null) {
-			displayData = new DisplayData();
-			ArrayList<TreeObject> list = new ArrayList<TreeObject>();
-			list.add(this);
-			displayData.addDisplayObject(new DisplayObject(getTitle(), columnTitles, columnNames, list));
-		}
+		// Built when shown, by rowDisplay
 	}
 }
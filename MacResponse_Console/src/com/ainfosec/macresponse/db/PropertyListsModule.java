@@ -27,6 +27,8 @@ package com.ainfosec.macresponse.db;
 import java.util.ArrayList;
 
 public class PropertyListsModule extends TreeObject {
+	public static final String title = "Property Lists";
+
 	public ArrayList<PropertyList> propertyLists = new ArrayList<PropertyList>();
 	
 	public TreeObject getParentObject() {
@@ -45,7 +47,7 @@ public class PropertyListsModule extends TreeObject {
 
 	@Override
 	public String getTitle() {
-		return "Property Lists";
+		return title;
 	}
 
 	@Override
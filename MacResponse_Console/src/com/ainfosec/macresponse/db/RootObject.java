@@ -27,6 +27,22 @@ package com.ainfosec.macresponse.db;
 
 public class RootObject extends TreeObject
 {
+	/** What the loaded modules mention, filled in as they're loaded */
+	private EntityIndex entityIndex = new EntityIndex();
+	
+	/** The text of the loaded modules, indexed in the background */
+	private SearchIndex searchIndex = new SearchIndex();
+	
+	public EntityIndex getEntityIndex()
+	{
+		return entityIndex;
+	}
+	
+	public SearchIndex getSearchIndex()
+	{
+		return searchIndex;
+	}
+	
 	@Override
 	public String[] getColumnNames()
 	{
@@ -76,10 +76,10 @@ public class RoutingTableEntry extends TreeObject {
 			displayData.addDisplayObject(new DisplayObject(getTitle(), getColumnTitles(), getColumnNames(), list));
 			ArrayList<TreeObject> list2 = new ArrayList<TreeObject>();
 			list2.add(networkDestination);
-			displayData.addDisplayObject(new DisplayObject("Network Destination", NetworkDestination.columnTitles, NetworkDestination.columnNames, list2));
+			displayData.addDisplayObject(new DisplayObject("Network Destination", NetworkDestination.columnTitles, NetworkDestination.columnNames, NetworkDestination.columnTypes, list2));
 			ArrayList<TreeObject> list3 = new ArrayList<TreeObject>();
 			list3.add(networkGateway);
-			displayData.addDisplayObject(new DisplayObject("Network Gateway", NetworkGateway.columnTitles, NetworkGateway.columnNames, list3));
+			displayData.addDisplayObject(new DisplayObject("Network Gateway", NetworkGateway.columnTitles, NetworkGateway.columnNames, NetworkGateway.columnTypes, list3));
 		}
 	}
 }
@@ -0,0 +1,62 @@
+/*
+
+ MacResponse: Incident Response Toolkit for Mac OS X
+
+ Copyright (C) 2011 - Assured Information Security, Inc. All rights reserved.
+
+ Authors:
+ Paul Petzke <petzkep _at_ ainfosec.com>
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package com.ainfosec.macresponse.db;
+
+import java.util.Collections;
+
+/**
+ * The display of TreeObjects whose only table is their own row.
+ *
+ * One instance is shared by every object of a class and holds what they
+ * have in common, the columns. The DisplayData is built each time it's
+ * asked for and isn't kept, so a leaf only costs its own fields: loading a
+ * million rows no longer makes a million DisplayData, lists and
+ * DisplayObjects, or calls getTitle() on each.
+ */
+public class RowDisplay {
+	private String[] columnTitles;
+	private String[] columnNames;
+	private ColumnType[] columnTypes;
+
+	/**
+	 * @param columnTypes The type of each column; null if they're all STRING.
+	 */
+	public RowDisplay(String[] columnTitles, String[] columnNames, ColumnType[] columnTypes) {
+		this.columnTitles = columnTitles;
+		this.columnNames = columnNames;
+		this.columnTypes = columnTypes;
+	}
+
+	/**
+	 * @param row The object to show.
+	 * @return A DisplayData with one table, of that object's row.
+	 */
+	public DisplayData getDisplayData(TreeObject row) {
+		DisplayData displayData = new DisplayData();
+		displayData.addDisplayObject(new DisplayObject(row.getTitle(), columnTitles, columnNames, columnTypes,
+				Collections.singletonList(row)));
+		return displayData;
+	}
+}
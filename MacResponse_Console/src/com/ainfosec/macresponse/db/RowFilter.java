@@ -0,0 +1,668 @@
+/*
+
+ MacResponse: Incident Response Toolkit for Mac OS X
+
+ Copyright (C) 2011 - Assured Information Security, Inc. All rights reserved.
+
+ Authors:
+ Paul Petzke <petzkep _at_ ainfosec.com>
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package com.ainfosec.macresponse.db;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.TimeZone;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A filter over the rows of a DisplayObject, written as an expression like
+ * <pre>
+ * fileType = "IPv4" and fileProtocol = "TCP"
+ * size > 1e9 and mtime > 2011-09-01
+ * not (userName contains "admin" or uid &lt; 500)
+ * </pre>
+ *
+ * A column is named by its name or title (without spaces), any unique end
+ * of its name ("size" for fileSize) or a stat abbreviation (mtime, atime,
+ * ctime, btime). The operators are =, !=, &lt;, &lt;=, &gt;, &gt;= and
+ * contains (or ~); and, or, not and parentheses combine them. Text is
+ * compared without case.
+ *
+ * The expression is compiled once per DisplayObject: each value is parsed
+ * into its column's key, so typed columns are compared by key and ENUM
+ * columns by a lookup of which of their values match. Rows are filtered in
+ * parallel.
+ */
+public class RowFilter {
+	/** Rows filtered by one task */
+	private static final int CHUNK_SIZE = 4096;
+
+	/** Short names of the stat times */
+	private static final HashMap<String, String> aliases = new HashMap<String, String>();
+	static {
+		aliases.put("mtime", "modifiedTime");
+		aliases.put("atime", "accessTime");
+		aliases.put("ctime", "changeTime");
+		aliases.put("btime", "birthTime");
+	}
+
+	private static final ThreadLocal<SimpleDateFormat> dayFormat = new ThreadLocal<SimpleDateFormat>() {
+		@Override
+		protected SimpleDateFormat initialValue() {
+			SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+			format.setTimeZone(TimeZone.getTimeZone("UTC"));
+			format.setLenient(false);
+			return format;
+		}
+	};
+
+	private static ForkJoinPool pool = null;
+
+	private String expression;
+	private DisplayObject displayObject;
+	private Predicate predicate;
+
+	/** Whether a row matches; bound to one DisplayObject */
+	private interface Predicate {
+		boolean matches(int row);
+	}
+
+	private RowFilter(String expression, DisplayObject displayObject, Predicate predicate) {
+		this.expression = expression;
+		this.displayObject = displayObject;
+		this.predicate = predicate;
+	}
+
+	/**
+	 * Compiles an expression for a DisplayObject's columns.
+	 * @param expression The filter.
+	 * @param displayObject The rows it will filter.
+	 * @return The filter.
+	 * @throws ParseException If the expression isn't valid, or names a column
+	 * the DisplayObject doesn't have.
+	 */
+	public static RowFilter compile(String expression, DisplayObject displayObject) throws ParseException {
+		Parser parser = new Parser(expression, displayObject);
+		Predicate predicate = parser.parseOr();
+		if(parser.peek() != null) {
+			throw new ParseException("Unexpected " + parser.peek().text, parser.peek().offset);
+		}
+		return new RowFilter(expression, displayObject, predicate);
+	}
+
+	/**
+	 * A filter for rows with some text in any of their cells, for input
+	 * that isn't an expression. ENUM cells are matched by a lookup of their
+	 * values, and typed cells are skipped when the text has characters
+	 * their values are never written with.
+	 * @param text The text, matched without case.
+	 * @param displayObject The rows it will filter.
+	 * @return The filter.
+	 */
+	public static RowFilter containing(String text, final DisplayObject displayObject) {
+		final String lowerText = text.toLowerCase();
+		ColumnType[] types = displayObject.getColumnTypes();
+		final ArrayList<Integer> textColumns = new ArrayList<Integer>();
+		final ArrayList<Integer> enumColumns = new ArrayList<Integer>();
+		final ArrayList<boolean[]> enumMatches = new ArrayList<boolean[]>();
+		for(int column = 0; column < types.length; ++column) {
+			String[] values = displayObject.getEnumValues(column);
+			if(types[column] == ColumnType.ENUM && values != null) {
+				boolean[] matches = new boolean[values.length];
+				for(int i = 0; i < values.length; ++i) {
+					matches[i] = values[i].toLowerCase().contains(lowerText);
+				}
+				enumColumns.add(column);
+				enumMatches.add(matches);
+			}
+			else if(canContain(types[column], lowerText)) {
+				textColumns.add(column);
+			}
+		}
+		return new RowFilter(text, displayObject, new Predicate() {
+			@Override
+			public boolean matches(int row) {
+				for(int i = 0; i < enumColumns.size(); ++i) {
+					long key = displayObject.getKey(enumColumns.get(i), row);
+					if(key >= 0 && key < enumMatches.get(i).length && enumMatches.get(i)[(int) key]) {
+						return true;
+					}
+				}
+				for(int column : textColumns) {
+					String cell = displayObject.getText(column, row);
+					if(cell != null && cell.toLowerCase().contains(lowerText)) {
+						return true;
+					}
+				}
+				return false;
+			}
+		});
+	}
+
+	/**
+	 * @return Whether a typed column's values could contain the text, going
+	 * by the characters they're written with.
+	 */
+	private static boolean canContain(ColumnType type, String lowerText) {
+		String characters;
+		switch (type) {
+		case LONG:
+			characters = "-0123456789";
+			break;
+		case HEX_ADDRESS:
+			characters = "0123456789abcdefx";
+			break;
+		case EPOCH_TIME:
+			characters = "0123456789-+: ";
+			break;
+		case IP_ADDRESS:
+			characters = "0123456789abcdef.:";
+			break;
+		default:
+			return true;
+		}
+		for(int i = 0; i < lowerText.length(); ++i) {
+			if(characters.indexOf(lowerText.charAt(i)) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public String getExpression() {
+		return expression;
+	}
+
+	public DisplayObject getDisplayObject() {
+		return displayObject;
+	}
+
+	/**
+	 * @param row A row of the DisplayObject.
+	 * @return Whether the row matches.
+	 */
+	public boolean matches(int row) {
+		return predicate.matches(row);
+	}
+
+	/**
+	 * Tests every row, in parallel for large tables.
+	 * @return The matching rows, in order.
+	 */
+	public int[] filter() {
+		FilterTask task = new FilterTask(this, 0, displayObject.size());
+		if(displayObject.size() <= CHUNK_SIZE || ForkJoinTask.inForkJoinPool()) {
+			return task.invoke();
+		}
+		return getPool().invoke(task);
+	}
+
+	/**
+	 * Filters a table for a report, leaving it whole if the expression
+	 * doesn't apply to it (e.g. it names a column the table doesn't have).
+	 * @param expression The filter, or null for none.
+	 * @param displayObject The table.
+	 * @return The rows to show, in order; null for all of them.
+	 */
+	public static int[] filterRows(String expression, DisplayObject displayObject) {
+		if(expression == null || expression.trim().length() == 0 || displayObject.getObjects() == null) {
+			return null;
+		}
+		try {
+			return compile(expression, displayObject).filter();
+		} catch (ParseException e) {
+			return null;
+		}
+	}
+
+	private static synchronized ForkJoinPool getPool() {
+		if(pool == null) {
+			pool = new ForkJoinPool();
+		}
+		return pool;
+	}
+
+	/**
+	 * Filters a range of rows, splitting it until it's one chunk.
+	 */
+	private static class FilterTask extends RecursiveTask<int[]> {
+		private static final long serialVersionUID = 1L;
+
+		private RowFilter filter;
+		private int first;
+		private int end;
+
+		public FilterTask(RowFilter filter, int first, int end) {
+			this.filter = filter;
+			this.first = first;
+			this.end = end;
+		}
+
+		@Override
+		protected int[] compute() {
+			if(end - first > CHUNK_SIZE) {
+				int middle = (first + end) >>> 1;
+				FilterTask left = new FilterTask(filter, first, middle);
+				FilterTask right = new FilterTask(filter, middle, end);
+				invokeAll(left, right);
+				int[] leftRows = left.getRawResult();
+				int[] rightRows = right.getRawResult();
+				int[] rows = Arrays.copyOf(leftRows, leftRows.length + rightRows.length);
+				System.arraycopy(rightRows, 0, rows, leftRows.length, rightRows.length);
+				return rows;
+			}
+			int[] rows = new int[end - first];
+			int count = 0;
+			for(int row = first; row < end; ++row) {
+				if(filter.predicate.matches(row)) {
+					rows[count++] = row;
+				}
+			}
+			return Arrays.copyOf(rows, count);
+		}
+	}
+
+	/** A piece of the expression */
+	private static class Token {
+		static final int WORD = 0;
+		static final int QUOTED = 1;
+		static final int SYMBOL = 2;
+
+		final int type;
+		final String text;
+		final int offset;
+
+		Token(int type, String text, int offset) {
+			this.type = type;
+			this.text = text;
+			this.offset = offset;
+		}
+
+		boolean is(String word) {
+			return type != QUOTED && text.equalsIgnoreCase(word);
+		}
+	}
+
+	/** A recursive descent parser that builds the predicates as it goes */
+	private static class Parser {
+		private static final String SYMBOLS = "()=!<>~&|";
+
+		private String expression;
+		private DisplayObject displayObject;
+		private ArrayList<Token> tokens = new ArrayList<Token>();
+		private int position = 0;
+
+		Parser(String expression, DisplayObject displayObject) throws ParseException {
+			this.expression = expression;
+			this.displayObject = displayObject;
+			tokenize();
+		}
+
+		Token peek() {
+			return position < tokens.size() ? tokens.get(position) : null;
+		}
+
+		private Token next(String expected) throws ParseException {
+			Token token = peek();
+			if(token == null) {
+				throw new ParseException("Expected " + expected + " at the end", expression.length());
+			}
+			++position;
+			return token;
+		}
+
+		private boolean accept(String... words) {
+			Token token = peek();
+			if(token != null) {
+				for(String word : words) {
+					if(token.is(word)) {
+						++position;
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+
+		Predicate parseOr() throws ParseException {
+			Predicate predicate = parseAnd();
+			while(accept("or", "||")) {
+				final Predicate left = predicate;
+				final Predicate right = parseAnd();
+				predicate = new Predicate() {
+					@Override
+					public boolean matches(int row) {
+						return left.matches(row) || right.matches(row);
+					}
+				};
+			}
+			return predicate;
+		}
+
+		private Predicate parseAnd() throws ParseException {
+			Predicate predicate = parseNot();
+			while(accept("and", "&&")) {
+				final Predicate left = predicate;
+				final Predicate right = parseNot();
+				predicate = new Predicate() {
+					@Override
+					public boolean matches(int row) {
+						return left.matches(row) && right.matches(row);
+					}
+				};
+			}
+			return predicate;
+		}
+
+		private Predicate parseNot() throws ParseException {
+			if(accept("not", "!")) {
+				final Predicate negated = parseNot();
+				return new Predicate() {
+					@Override
+					public boolean matches(int row) {
+						return !negated.matches(row);
+					}
+				};
+			}
+			if(accept("(")) {
+				Predicate predicate = parseOr();
+				Token token = next(")");
+				if(!token.is(")")) {
+					throw new ParseException("Expected ) instead of " + token.text, token.offset);
+				}
+				return predicate;
+			}
+			return parseComparison();
+		}
+
+		private Predicate parseComparison() throws ParseException {
+			Token columnToken = next("a column");
+			if(columnToken.type == Token.SYMBOL) {
+				throw new ParseException("Expected a column instead of " + columnToken.text, columnToken.offset);
+			}
+			int column = findColumn(columnToken);
+			Token operatorToken = next("an operator");
+			Operator operator = Operator.find(operatorToken);
+			if(operator == null) {
+				throw new ParseException("Unknown operator " + operatorToken.text, operatorToken.offset);
+			}
+			Token valueToken = next("a value");
+			if(valueToken.type == Token.SYMBOL) {
+				throw new ParseException("Expected a value instead of " + valueToken.text, valueToken.offset);
+			}
+			return compare(column, operator, valueToken);
+		}
+
+		/**
+		 * @return The column a word names.
+		 */
+		private int findColumn(Token token) throws ParseException {
+			String[] names = displayObject.getColumnNames();
+			String[] titles = displayObject.getColumnTitles();
+			String name = aliases.containsKey(token.text.toLowerCase()) ? aliases.get(token.text.toLowerCase()) : token.text;
+			for(int column = 0; column < names.length; ++column) {
+				if(names[column].equalsIgnoreCase(name) || titles[column].replace(" ", "").equalsIgnoreCase(name)) {
+					return column;
+				}
+			}
+			int found = -1;
+			for(int column = 0; column < names.length; ++column) {
+				if(names[column].toLowerCase().endsWith(name.toLowerCase())) {
+					if(found >= 0) {
+						throw new ParseException("\"" + token.text + "\" could be " + names[found] + " or " + names[column], token.offset);
+					}
+					found = column;
+				}
+			}
+			if(found < 0) {
+				throw new ParseException("No column \"" + token.text + "\" in " + displayObject.getTitle(), token.offset);
+			}
+			return found;
+		}
+
+		/**
+		 * Compiles one comparison for the column's type.
+		 */
+		private Predicate compare(final int column, final Operator operator, Token valueToken) throws ParseException {
+			ColumnType type = displayObject.getColumnTypes()[column];
+			final String value = valueToken.text;
+			final String lowerValue = value.toLowerCase();
+
+			// Which values of an ENUM column match, looked up by key
+			if(type == ColumnType.ENUM && displayObject.getEnumValues(column) != null) {
+				String[] enumValues = displayObject.getEnumValues(column);
+				final boolean[] matching = new boolean[enumValues.length];
+				for(int i = 0; i < enumValues.length; ++i) {
+					matching[i] = operator.matches(enumValues[i], lowerValue);
+				}
+				return new Predicate() {
+					@Override
+					public boolean matches(int row) {
+						long key = displayObject.getKey(column, row);
+						if(key < 0 || key >= matching.length) {
+							return operator == Operator.NOT_EQUAL;
+						}
+						return matching[(int) key];
+					}
+				};
+			}
+
+			// Keys of the other typed columns
+			if(type.hasKeys() && type != ColumnType.ENUM && operator != Operator.CONTAINS) {
+				final ColumnType keyType = type;
+				final long key = parseValue(type, value);
+				if(key == ColumnType.NO_VALUE) {
+					throw new ParseException("\"" + value + "\" isn't a " + type.name().toLowerCase().replace('_', ' '), valueToken.offset);
+				}
+				return new Predicate() {
+					@Override
+					public boolean matches(int row) {
+						long rowKey = displayObject.getKey(column, row);
+						if(rowKey == ColumnType.NO_VALUE) {
+							return operator == Operator.NOT_EQUAL;
+						}
+						return operator.accepts(keyType.compare(rowKey, key));
+					}
+				};
+			}
+
+			// Text
+			return new Predicate() {
+				@Override
+				public boolean matches(int row) {
+					String text = displayObject.getText(column, row);
+					return operator.matches(text == null ? "" : text, lowerValue);
+				}
+			};
+		}
+
+		private void tokenize() throws ParseException {
+			int i = 0;
+			int length = expression.length();
+			while(i < length) {
+				char c = expression.charAt(i);
+				if(Character.isWhitespace(c)) {
+					++i;
+				}
+				else if(c == '"' || c == '\'') {
+					int start = i++;
+					StringBuilder sb = new StringBuilder();
+					while(i < length && expression.charAt(i) != c) {
+						if(expression.charAt(i) == '\\' && i + 1 < length) {
+							++i;
+						}
+						sb.append(expression.charAt(i++));
+					}
+					if(i == length) {
+						throw new ParseException("Unterminated string", start);
+					}
+					++i;
+					tokens.add(new Token(Token.QUOTED, sb.toString(), start));
+				}
+				else if(SYMBOLS.indexOf(c) >= 0) {
+					int start = i++;
+					// Two character operators
+					if(i < length && "!<>=&|".indexOf(c) >= 0 && "=>~&|".indexOf(expression.charAt(i)) >= 0) {
+						String pair = expression.substring(start, i + 1);
+						if(Operator.isSymbol(pair) || pair.equals("&&") || pair.equals("||")) {
+							++i;
+						}
+					}
+					tokens.add(new Token(Token.SYMBOL, expression.substring(start, i), start));
+				}
+				else {
+					int start = i;
+					while(i < length && !Character.isWhitespace(expression.charAt(i)) && SYMBOLS.indexOf(expression.charAt(i)) < 0
+							&& expression.charAt(i) != '"' && expression.charAt(i) != '\'') {
+						++i;
+					}
+					tokens.add(new Token(Token.WORD, expression.substring(start, i), start));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Parses a value as a column of a type would be; also takes decimal or
+	 * scientific numbers ("1e9") for numbers and a day ("2011-09-01") for
+	 * times.
+	 * @return The key, or ColumnType.NO_VALUE if it can't be read.
+	 */
+	static long parseValue(ColumnType type, String value) {
+		long key = type.parse(value);
+		if(key != ColumnType.NO_VALUE) {
+			return key;
+		}
+		switch (type) {
+		case LONG:
+		case HEX_ADDRESS:
+			key = ColumnType.LONG.parse(value);
+			if(key != ColumnType.NO_VALUE) {
+				return key;
+			}
+			try {
+				double number = Double.parseDouble(value);
+				if(!Double.isNaN(number) && !Double.isInfinite(number)) {
+					return (long) number;
+				}
+			} catch (NumberFormatException e) {
+				// Not a number
+			}
+			return ColumnType.NO_VALUE;
+		case EPOCH_TIME:
+			try {
+				return dayFormat.get().parse(value).getTime() / 1000;
+			} catch (ParseException e) {
+				return ColumnType.NO_VALUE;
+			}
+		default:
+			return ColumnType.NO_VALUE;
+		}
+	}
+
+	/** How a row's value is compared to the expression's */
+	private enum Operator {
+		EQUAL("="),
+		NOT_EQUAL("!="),
+		LESS("<"),
+		LESS_OR_EQUAL("<="),
+		GREATER(">"),
+		GREATER_OR_EQUAL(">="),
+		CONTAINS("~");
+
+		private final String symbol;
+
+		private Operator(String symbol) {
+			this.symbol = symbol;
+		}
+
+		static Operator find(Token token) {
+			if(token.is("contains")) {
+				return CONTAINS;
+			}
+			if(token.is("==")) {
+				return EQUAL;
+			}
+			if(token.is("<>")) {
+				return NOT_EQUAL;
+			}
+			for(Operator operator : values()) {
+				if(token.type == Token.SYMBOL && token.text.equals(operator.symbol)) {
+					return operator;
+				}
+			}
+			return null;
+		}
+
+		static boolean isSymbol(String text) {
+			if(text.equals("==") || text.equals("<>")) {
+				return true;
+			}
+			for(Operator operator : values()) {
+				if(operator.symbol.equals(text)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * @param comparison The row's value compared to the expression's.
+		 */
+		boolean accepts(int comparison) {
+			switch (this) {
+			case EQUAL:
+				return comparison == 0;
+			case NOT_EQUAL:
+				return comparison != 0;
+			case LESS:
+				return comparison < 0;
+			case LESS_OR_EQUAL:
+				return comparison <= 0;
+			case GREATER:
+				return comparison > 0;
+			case GREATER_OR_EQUAL:
+				return comparison >= 0;
+			default:
+				return false;
+			}
+		}
+
+		/**
+		 * Compares text without case; numbers that are both numbers are
+		 * compared as numbers.
+		 * @param lowerValue The expression's value, lowercased.
+		 */
+		boolean matches(String text, String lowerValue) {
+			if(this == CONTAINS) {
+				return text.toLowerCase().contains(lowerValue);
+			}
+			long number = ColumnType.LONG.parse(text);
+			long valueNumber = number == ColumnType.NO_VALUE ? ColumnType.NO_VALUE : ColumnType.LONG.parse(lowerValue);
+			if(valueNumber != ColumnType.NO_VALUE) {
+				return accepts(number < valueNumber ? -1 : number == valueNumber ? 0 : 1);
+			}
+			return accepts(text.compareToIgnoreCase(lowerValue));
+		}
+	}
+}
@@ -0,0 +1,476 @@
+/*
+
+ MacResponse: Incident Response Toolkit for Mac OS X
+
+ Copyright (C) 2011 - Assured Information Security, Inc. All rights reserved.
+
+ Authors:
+ Paul Petzke <petzkep _at_ ainfosec.com>
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package com.ainfosec.macresponse.db;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Sorts the rows of a DisplayObject by a column. Typed columns are sorted
+ * by their keys (see {@link ColumnType#compare(long, long)}), STRING
+ * columns by their text without case. Rows with no value come first, and
+ * equal rows keep their order.
+ *
+ * The paths of a FileTable aren't read all at once: its rows are put in
+ * the order of its directory trie, reading the names of one directory at
+ * a time.
+ *
+ * An order is an int[] of rows, kept per DisplayObject, column and
+ * direction so switching back to it is free. Orders are dropped, least
+ * recently used first, once they take more than a sixteenth of the heap
+ * (up to 64 MB). Once one direction is known the other is made from it
+ * without sorting again. Large tables are sorted in parallel.
+ */
+public class RowSorter {
+	/** The most the kept orders take, whatever the heap */
+	private static final long MAX_ORDERS_SIZE = 64L * 1024 * 1024;
+	/** The estimated size of an int[] without its ints */
+	private static final int ARRAY_SIZE = 16;
+
+	/** The orders made so far, in the order they were last used; guarded by itself */
+	private static final LinkedHashMap<OrderKey, int[]> orders = new LinkedHashMap<OrderKey, int[]>(16, 0.75f, true);
+	private static final long maxOrdersSize = Math.min(MAX_ORDERS_SIZE, Runtime.getRuntime().maxMemory() / 16);
+	private static long ordersSize = 0;
+
+	/** Ranges this short are sorted by insertion instead of being merged */
+	private static final int INSERTION_SORT_LENGTH = 16;
+	/** Ranges this short are sorted by one task */
+	private static final int CHUNK_SIZE = 8192;
+
+	private static ForkJoinPool pool = null;
+
+	/** Orders two rows; bound to one column */
+	private interface RowComparator {
+		int compare(int row1, int row2);
+	}
+
+	private RowSorter() {
+	}
+
+	/**
+	 * Sorts the rows, or returns the order if it has been made before.
+	 * This can take a while on large tables, so call it off the UI thread.
+	 * @param displayObject The rows.
+	 * @param column The column to sort by.
+	 * @param ascending The direction.
+	 * @return The rows in order. Don't change it; it's shared.
+	 */
+	public static int[] sort(DisplayObject displayObject, int column, boolean ascending) {
+		int[] order = getCached(displayObject, column, ascending);
+		if(order != null) {
+			return order;
+		}
+		if(isFilePaths(displayObject, column)) {
+			order = sortPaths((FileTable) displayObject.getObjects(), ascending);
+			putCached(displayObject, column, ascending, order);
+			return order;
+		}
+		RowComparator comparator = createComparator(displayObject, column);
+		int[] reverse = getCached(displayObject, column, !ascending);
+		if(reverse != null) {
+			order = reverse(reverse, comparator);
+		}
+		else {
+			order = new int[displayObject.size()];
+			for(int row = 0; row < order.length; ++row) {
+				order[row] = row;
+			}
+			SortTask task = new SortTask(order, new int[order.length], 0, order.length, ascending ? comparator : reversed(comparator));
+			if(order.length <= CHUNK_SIZE || ForkJoinTask.inForkJoinPool()) {
+				task.invoke();
+			}
+			else {
+				getPool().invoke(task);
+			}
+		}
+		putCached(displayObject, column, ascending, order);
+		return order;
+	}
+
+	/**
+	 * @return Whether sort() would return right away.
+	 */
+	public static boolean isSorted(DisplayObject displayObject, int column, boolean ascending) {
+		return getCached(displayObject, column, ascending) != null;
+	}
+
+	/**
+	 * Keeps the rows of an order that are in a filter's rows.
+	 * @param order Every row, in order.
+	 * @param rows Some rows, in increasing order.
+	 * @return Those rows, in the order's order.
+	 */
+	public static int[] select(int[] order, int[] rows) {
+		boolean[] selected = new boolean[order.length];
+		for(int row : rows) {
+			selected[row] = true;
+		}
+		int[] result = new int[rows.length];
+		int count = 0;
+		for(int row : order) {
+			if(selected[row]) {
+				result[count++] = row;
+			}
+		}
+		return result;
+	}
+
+	private static int[] getCached(DisplayObject displayObject, int column, boolean ascending) {
+		synchronized (orders) {
+			return orders.get(new OrderKey(displayObject, column, ascending));
+		}
+	}
+
+	/**
+	 * Keeps an order, dropping the ones used longest ago to make room.
+	 */
+	private static void putCached(DisplayObject displayObject, int column, boolean ascending, int[] order) {
+		OrderKey key = new OrderKey(displayObject, column, ascending);
+		synchronized (orders) {
+			int[] old = orders.put(key, order);
+			if(old != null) {
+				ordersSize -= getSize(old);
+			}
+			ordersSize += getSize(order);
+			Iterator<Map.Entry<OrderKey, int[]>> it = orders.entrySet().iterator();
+			while(ordersSize > maxOrdersSize && it.hasNext()) {
+				Map.Entry<OrderKey, int[]> entry = it.next();
+				if(entry.getKey().equals(key)) {
+					continue;
+				}
+				ordersSize -= getSize(entry.getValue());
+				it.remove();
+			}
+		}
+	}
+
+	private static long getSize(int[] order) {
+		return ARRAY_SIZE + 4L * order.length;
+	}
+
+	/**
+	 * @return Whether the column is the paths of a FileTable.
+	 */
+	private static boolean isFilePaths(DisplayObject displayObject, int column) {
+		return displayObject.getObjects() instanceof FileTable && displayObject.getColumnNames()[column].equals("filePath");
+	}
+
+	/**
+	 * Orders the rows of a FileTable by path without reading every path:
+	 * the rows of each directory are sorted by name, and merged with the
+	 * directory's subdirectories, which are walked the same way. Only the
+	 * names of the directories on the way down are on the heap at once.
+	 * Rows whose paths aren't in the trie (relative names) come first,
+	 * sorted by name.
+	 */
+	private static int[] sortPaths(FileTable fileTable, boolean ascending) {
+		PathTrie directories = fileTable.getDirectories();
+		int[] order = new int[fileTable.size()];
+		int[] count = new int[1];
+
+		int noDirectoryCount = 0;
+		for(int row = 0; row < order.length; ++row) {
+			if(fileTable.getDirectoryNode(row) == PathTrie.NONE) {
+				++noDirectoryCount;
+			}
+		}
+		int[] noDirectory = new int[noDirectoryCount];
+		noDirectoryCount = 0;
+		for(int row = 0; row < order.length && noDirectoryCount < noDirectory.length; ++row) {
+			if(fileTable.getDirectoryNode(row) == PathTrie.NONE) {
+				noDirectory[noDirectoryCount++] = row;
+			}
+		}
+		String[] names = getFileNames(fileTable, noDirectory);
+		sortByName(noDirectory, names, ascending);
+
+		if(ascending) {
+			System.arraycopy(noDirectory, 0, order, 0, noDirectory.length);
+			count[0] = noDirectory.length;
+		}
+		sortDirectory(fileTable, directories, PathTrie.ROOT, ascending, order, count);
+		if(!ascending) {
+			System.arraycopy(noDirectory, 0, order, count[0], noDirectory.length);
+		}
+		return order;
+	}
+
+	/**
+	 * Adds the rows of a directory and of everything below it to an order.
+	 * @param count How much of the order is filled; updated.
+	 */
+	private static void sortDirectory(FileTable fileTable, PathTrie directories, int node, boolean ascending, int[] order, int[] count) {
+		int rowCount = 0;
+		for(int row = fileTable.getFirstRow(node); row >= 0; row = fileTable.getNextInDirectory(row)) {
+			++rowCount;
+		}
+		int[] rows = new int[rowCount];
+		rowCount = 0;
+		for(int row = fileTable.getFirstRow(node); row >= 0; row = fileTable.getNextInDirectory(row)) {
+			rows[rowCount++] = row;
+		}
+		// In table order, so equal names keep it
+		Arrays.sort(rows);
+		String[] rowNames = getFileNames(fileTable, rows);
+		sortByName(rows, rowNames, ascending);
+
+		int[] children = directories.getChildren(node);
+		String[] childNames = new String[children.length];
+		for(int i = 0; i < children.length; ++i) {
+			childNames[i] = directories.getName(children[i]);
+		}
+		sortByName(children, childNames, ascending);
+
+		// A directory's own row comes before what's in it, or after it going down
+		int r = 0;
+		int c = 0;
+		while(r < rows.length || c < children.length) {
+			int compared = 0;
+			if(r < rows.length && c < children.length) {
+				compared = String.CASE_INSENSITIVE_ORDER.compare(rowNames[r], childNames[c]);
+			}
+			if(c >= children.length || (r < rows.length && (ascending ? compared <= 0 : compared > 0))) {
+				order[count[0]++] = rows[r++];
+			}
+			else {
+				sortDirectory(fileTable, directories, children[c++], ascending, order, count);
+			}
+		}
+	}
+
+	private static String[] getFileNames(FileTable fileTable, int[] rows) {
+		String[] names = new String[rows.length];
+		for(int i = 0; i < rows.length; ++i) {
+			names[i] = fileTable.getFileName(rows[i]);
+		}
+		return names;
+	}
+
+	/**
+	 * Sorts values by their names, without case, and the names with them.
+	 * Equal names keep their order.
+	 */
+	private static void sortByName(int[] values, final String[] names, boolean ascending) {
+		int[] positions = new int[values.length];
+		for(int i = 0; i < positions.length; ++i) {
+			positions[i] = i;
+		}
+		RowComparator comparator = new RowComparator() {
+			@Override
+			public int compare(int position1, int position2) {
+				return String.CASE_INSENSITIVE_ORDER.compare(names[position1], names[position2]);
+			}
+		};
+		mergeSort(positions, new int[positions.length], 0, positions.length, ascending ? comparator : reversed(comparator));
+		int[] sortedValues = new int[values.length];
+		String[] sortedNames = new String[names.length];
+		for(int i = 0; i < positions.length; ++i) {
+			sortedValues[i] = values[positions[i]];
+			sortedNames[i] = names[positions[i]];
+		}
+		System.arraycopy(sortedValues, 0, values, 0, values.length);
+		System.arraycopy(sortedNames, 0, names, 0, names.length);
+	}
+
+	/**
+	 * Reads a column's keys (or text) once, up front, so the sort only
+	 * compares arrays. The text is the objects' own strings, except for
+	 * FileTable paths, which are sorted by sortPaths() instead.
+	 */
+	private static RowComparator createComparator(DisplayObject displayObject, int column) {
+		int size = displayObject.size();
+		final ColumnType type = displayObject.getColumnTypes()[column];
+		if(type.hasKeys()) {
+			final long[] keys = new long[size];
+			for(int row = 0; row < size; ++row) {
+				keys[row] = displayObject.getKey(column, row);
+			}
+			return new RowComparator() {
+				@Override
+				public int compare(int row1, int row2) {
+					return type.compare(keys[row1], keys[row2]);
+				}
+			};
+		}
+		final String[] text = new String[size];
+		for(int row = 0; row < size; ++row) {
+			text[row] = displayObject.getText(column, row);
+		}
+		return new RowComparator() {
+			@Override
+			public int compare(int row1, int row2) {
+				String text1 = text[row1];
+				String text2 = text[row2];
+				if(text1 == null || text2 == null) {
+					return text1 == text2 ? 0 : (text1 == null ? -1 : 1);
+				}
+				return String.CASE_INSENSITIVE_ORDER.compare(text1, text2);
+			}
+		};
+	}
+
+	private static RowComparator reversed(final RowComparator comparator) {
+		return new RowComparator() {
+			@Override
+			public int compare(int row1, int row2) {
+				return comparator.compare(row2, row1);
+			}
+		};
+	}
+
+	/**
+	 * Turns an order around. Runs of equal rows are turned back, so they
+	 * stay in the order of the table.
+	 */
+	private static int[] reverse(int[] order, RowComparator comparator) {
+		int[] result = new int[order.length];
+		int end = order.length;
+		int count = 0;
+		while(end > 0) {
+			int start = end - 1;
+			while(start > 0 && comparator.compare(order[start - 1], order[end - 1]) == 0) {
+				--start;
+			}
+			System.arraycopy(order, start, result, count, end - start);
+			count += end - start;
+			end = start;
+		}
+		return result;
+	}
+
+	/** Which order of which table */
+	private static class OrderKey {
+		private DisplayObject displayObject;
+		private int column;
+		private boolean ascending;
+
+		OrderKey(DisplayObject displayObject, int column, boolean ascending) {
+			this.displayObject = displayObject;
+			this.column = column;
+			this.ascending = ascending;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if(!(other instanceof OrderKey)) {
+				return false;
+			}
+			OrderKey key = (OrderKey) other;
+			return key.displayObject == displayObject && key.column == column && key.ascending == ascending;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(displayObject) * 31 + column * 2 + (ascending ? 0 : 1);
+		}
+	}
+
+	private static synchronized ForkJoinPool getPool() {
+		if(pool == null) {
+			pool = new ForkJoinPool();
+		}
+		return pool;
+	}
+
+	/**
+	 * Sorts a range of rows, splitting it between tasks while it's large.
+	 */
+	private static class SortTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private int[] rows;
+		private int[] buffer;
+		private int from;
+		private int to;
+		private RowComparator comparator;
+
+		SortTask(int[] rows, int[] buffer, int from, int to, RowComparator comparator) {
+			this.rows = rows;
+			this.buffer = buffer;
+			this.from = from;
+			this.to = to;
+			this.comparator = comparator;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from <= CHUNK_SIZE) {
+				mergeSort(rows, buffer, from, to, comparator);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new SortTask(rows, buffer, from, middle, comparator), new SortTask(rows, buffer, middle, to, comparator));
+			merge(rows, buffer, from, middle, to, comparator);
+		}
+	}
+
+	/**
+	 * A stable merge sort of rows[from, to), using buffer for the merges.
+	 */
+	private static void mergeSort(int[] rows, int[] buffer, int from, int to, RowComparator comparator) {
+		if(to - from <= INSERTION_SORT_LENGTH) {
+			for(int i = from + 1; i < to; ++i) {
+				int row = rows[i];
+				int j = i;
+				while(j > from && comparator.compare(rows[j - 1], row) > 0) {
+					rows[j] = rows[j - 1];
+					--j;
+				}
+				rows[j] = row;
+			}
+			return;
+		}
+		int middle = (from + to) >>> 1;
+		mergeSort(rows, buffer, from, middle, comparator);
+		mergeSort(rows, buffer, middle, to, comparator);
+		merge(rows, buffer, from, middle, to, comparator);
+	}
+
+	/**
+	 * Merges the sorted rows[from, middle) and rows[middle, to).
+	 */
+	private static void merge(int[] rows, int[] buffer, int from, int middle, int to, RowComparator comparator) {
+		// Already in order
+		if(comparator.compare(rows[middle - 1], rows[middle]) <= 0) {
+			return;
+		}
+		System.arraycopy(rows, from, buffer, from, to - from);
+		int left = from;
+		int right = middle;
+		for(int i = from; i < to; ++i) {
+			if(right >= to || (left < middle && comparator.compare(buffer[left], buffer[right]) <= 0)) {
+				rows[i] = buffer[left++];
+			}
+			else {
+				rows[i] = buffer[right++];
+			}
+		}
+	}
+}
@@ -27,6 +27,8 @@ package com.ainfosec.macresponse.db;
 import java.util.ArrayList;
 
 public class ScreenshotModule extends TreeObject {
+	public static final String title = "Screenshot";
+
 	
 	public static final String[] columnNames = {
 		"casePath", 
@@ -50,7 +52,7 @@ public class ScreenshotModule extends TreeObject {
 
 	@Override
 	public String getTitle() {
-		return "Screenshot";
+		return title;
 	}
 
 	@Override
@@ -0,0 +1,610 @@
+/*
+
+ MacResponse: Incident Response Toolkit for Mac OS X
+
+ Copyright (C) 2011 - Assured Information Security, Inc. All rights reserved.
+
+ Authors:
+ Paul Petzke <petzkep _at_ ainfosec.com>
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package com.ainfosec.macresponse.db;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Full-text search over every row of every loaded module.
+ *
+ * Each module gets its own segment, built in the background (modules in
+ * parallel) as soon as it's loaded. A segment keeps a TrigramIndex of its
+ * rows' text, which narrows a search to the rows that can contain every
+ * word of the query; only those rows' text is read, to confirm and rank
+ * them.
+ *
+ * The filesystem table is indexed by file name per row and by directory
+ * path per directory, so a path's directories are only indexed once no
+ * matter how many files they hold.
+ */
+public class SearchIndex {
+	/** The most candidate rows of one segment read for a search */
+	private static final int MAX_VERIFIED = 20000;
+
+	/** A row that matched a search */
+	public static class Hit {
+		/** The tree node whose table has the row */
+		public final TreeObject node;
+		/** Which of the node's DisplayObjects has the row */
+		public final int displayIndex;
+		/** The row in that DisplayObject */
+		public final int row;
+		/** The row's text, one line per column */
+		public final String text;
+		/** Higher is better */
+		public final int score;
+
+		Hit(TreeObject node, int displayIndex, int row, String text, int score) {
+			this.node = node;
+			this.displayIndex = displayIndex;
+			this.row = row;
+			this.text = text;
+			this.score = score;
+		}
+
+		/**
+		 * @return The row's object (read from disk for a filesystem row).
+		 */
+		public TreeObject getObject() {
+			return node.getDisplayData().getDisplayObjects().get(displayIndex).getObjects().get(row);
+		}
+	}
+
+	/** The best hits of a search */
+	public static class Result {
+		/** Best first */
+		public final List<Hit> hits;
+		/** At least the number of matching rows; an upper bound when capped */
+		public final int candidateCount;
+		/** Whether some candidates weren't read, so better hits may exist */
+		public final boolean capped;
+		/** Modules loaded but not indexed yet, so not searched */
+		public final int pendingModules;
+		public final long elapsedMillis;
+
+		Result(List<Hit> hits, int candidateCount, boolean capped, int pendingModules, long elapsedMillis) {
+			this.hits = hits;
+			this.candidateCount = candidateCount;
+			this.capped = capped;
+			this.pendingModules = pendingModules;
+			this.elapsedMillis = elapsedMillis;
+		}
+	}
+
+	private static final ExecutorService indexExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "Search Indexer");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}
+	});
+
+	private ArrayList<Segment> segments = new ArrayList<Segment>();
+	private int pendingModules = 0;
+	private int modulesAdded = 0;
+
+	/**
+	 * Indexes a module in the background.
+	 * @param module A loaded module.
+	 */
+	public void addModule(final TreeObject module) {
+		final int order;
+		synchronized (this) {
+			order = modulesAdded++;
+			++pendingModules;
+		}
+		indexExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				Segment segment = null;
+				try {
+					if(module instanceof FilesystemInformationModule) {
+						FileTable fileTable = ((FilesystemInformationModule) module).fileTable;
+						if(fileTable != null) {
+							segment = new FileSegment(module, fileTable);
+						}
+					}
+					else {
+						segment = new ObjectSegment(module);
+					}
+				} catch (RuntimeException e) {
+					System.out.println("Unable to index " + module.getTitle() + ": " + e);
+				} finally {
+					synchronized (SearchIndex.this) {
+						if(segment != null) {
+							segment.order = order;
+							segments.add(segment);
+							Collections.sort(segments, new Comparator<Segment>() {
+								@Override
+								public int compare(Segment a, Segment b) {
+									return a.order - b.order;
+								}
+							});
+						}
+						--pendingModules;
+						SearchIndex.this.notifyAll();
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return The number of modules still being indexed.
+	 */
+	public synchronized int getPendingModules() {
+		return pendingModules;
+	}
+
+	/**
+	 * Waits until every module added so far is indexed.
+	 */
+	public synchronized void waitForPending() throws InterruptedException {
+		while(pendingModules > 0) {
+			wait();
+		}
+	}
+
+	/**
+	 * @param query The text to look for; case doesn't matter.
+	 * @return Whether the query has a word long enough to be looked up.
+	 */
+	public static boolean isSearchable(String query) {
+		for(String word : split(query)) {
+			if(word.length() >= TrigramIndex.MIN_LENGTH) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Finds the rows that contain every word of a query. Whole words rank
+	 * above prefixes and prefixes above other substrings; rows with the
+	 * words next to each other and shorter rows rank higher.
+	 * @param query The words to look for; case doesn't matter.
+	 * @param maxHits The most hits to return.
+	 * @return The best hits; none unless isSearchable(query).
+	 */
+	public Result search(String query, int maxHits) {
+		long start = System.currentTimeMillis();
+		List<String> words = split(query);
+		ArrayList<Segment> searched;
+		int pending;
+		synchronized (this) {
+			searched = new ArrayList<Segment>(segments);
+			pending = pendingModules;
+		}
+		if(!isSearchable(query) || maxHits <= 0) {
+			return new Result(new ArrayList<Hit>(), 0, false, pending, System.currentTimeMillis() - start);
+		}
+		String phrase = words.size() > 1 ? join(words) : null;
+
+		// The worst of the best hits is on top
+		PriorityQueue<Candidate> best = new PriorityQueue<Candidate>(maxHits + 1, new Comparator<Candidate>() {
+			@Override
+			public int compare(Candidate a, Candidate b) {
+				return -compareCandidates(a, b);
+			}
+		});
+		int candidateCount = 0;
+		boolean capped = false;
+		for(Segment segment : searched) {
+			BitSet candidates = null;
+			for(String word : words) {
+				if(word.length() < TrigramIndex.MIN_LENGTH) {
+					continue;
+				}
+				BitSet found = segment.find(word);
+				if(found == null) {
+					continue;
+				}
+				if(candidates == null) {
+					candidates = found;
+				}
+				else {
+					candidates.and(found);
+				}
+			}
+			if(candidates == null) {
+				candidates = new BitSet(segment.size());
+				candidates.set(0, segment.size());
+			}
+			candidateCount += candidates.cardinality();
+
+			int verified = 0;
+			for(int document = candidates.nextSetBit(0); document >= 0; document = candidates.nextSetBit(document + 1)) {
+				if(++verified > MAX_VERIFIED) {
+					capped = true;
+					break;
+				}
+				String text = segment.getText(document);
+				int score = score(text.toLowerCase(), words, phrase);
+				if(score > 0) {
+					best.add(new Candidate(segment, document, text, score));
+					if(best.size() > maxHits) {
+						best.poll();
+					}
+				}
+			}
+		}
+
+		ArrayList<Candidate> sorted = new ArrayList<Candidate>(best);
+		Collections.sort(sorted, new Comparator<Candidate>() {
+			@Override
+			public int compare(Candidate a, Candidate b) {
+				return compareCandidates(a, b);
+			}
+		});
+		ArrayList<Hit> hits = new ArrayList<Hit>(sorted.size());
+		for(Candidate candidate : sorted) {
+			hits.add(candidate.segment.createHit(candidate.document, candidate.text, candidate.score));
+		}
+		return new Result(hits, candidateCount, capped, pending, System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * Orders candidates best first: by score, then shorter text, then
+	 * module and row order.
+	 */
+	private static int compareCandidates(Candidate a, Candidate b) {
+		if(a.score != b.score) {
+			return a.score > b.score ? -1 : 1;
+		}
+		if(a.text.length() != b.text.length()) {
+			return a.text.length() - b.text.length();
+		}
+		if(a.segment.order != b.segment.order) {
+			return a.segment.order - b.segment.order;
+		}
+		return a.document - b.document;
+	}
+
+	/**
+	 * @param text A row's lowercased text.
+	 * @return The row's score, or 0 if a word isn't in it.
+	 */
+	private static int score(String text, List<String> words, String phrase) {
+		int score = 0;
+		for(String word : words) {
+			int index = text.indexOf(word);
+			if(index < 0) {
+				return 0;
+			}
+			int end = index + word.length();
+			boolean wordStart = index == 0 || !Character.isLetterOrDigit(text.charAt(index - 1));
+			boolean wordEnd = end == text.length() || !Character.isLetterOrDigit(text.charAt(end));
+			score += 1 + (wordStart ? 2 : 0) + (wordEnd ? 1 : 0);
+		}
+		if(phrase != null && text.contains(phrase)) {
+			score += 3;
+		}
+		return score;
+	}
+
+	private static List<String> split(String query) {
+		ArrayList<String> words = new ArrayList<String>();
+		if(query != null) {
+			for(String word : query.toLowerCase().split("\\s+")) {
+				if(word.length() > 0) {
+					words.add(word);
+				}
+			}
+		}
+		return words;
+	}
+
+	private static String join(List<String> words) {
+		StringBuilder sb = new StringBuilder();
+		for(String word : words) {
+			if(sb.length() > 0) {
+				sb.append(' ');
+			}
+			sb.append(word);
+		}
+		return sb.toString();
+	}
+
+	/** A row being ranked */
+	private static class Candidate {
+		final Segment segment;
+		final int document;
+		final String text;
+		final int score;
+
+		Candidate(Segment segment, int document, String text, int score) {
+			this.segment = segment;
+			this.document = document;
+			this.text = text;
+			this.score = score;
+		}
+	}
+
+	/** The index of one module; its documents are numbered from 0 */
+	private static abstract class Segment {
+		int order;
+
+		abstract int size();
+
+		/**
+		 * @param word A lowercased word of at least TrigramIndex.MIN_LENGTH.
+		 * @return The documents that may contain the word, or null if any may.
+		 */
+		abstract BitSet find(String word);
+
+		/**
+		 * @return A document's text, one line per column.
+		 */
+		abstract String getText(int document);
+
+		abstract Hit createHit(int document, String text, int score);
+	}
+
+	/**
+	 * The rows of every table under a module. A row that's in several
+	 * tables is only indexed in the first (the one nearest the module).
+	 */
+	private static class ObjectSegment extends Segment {
+		private ArrayList<TreeObject> nodes = new ArrayList<TreeObject>();
+		private ArrayList<DisplayObject> displayObjects = new ArrayList<DisplayObject>();
+		private int[] displayIndexes = new int[16];
+		private int[] rows = new int[16];
+		private TrigramIndex trigrams = new TrigramIndex();
+
+		ObjectSegment(TreeObject module) {
+			collect(module, Collections.newSetFromMap(new IdentityHashMap<TreeObject, Boolean>()));
+			trigrams.finish();
+		}
+
+		private void collect(TreeObject node, Set<TreeObject> seen) {
+			ArrayList<? extends TreeObject> children = node.getChildObjects();
+			// Not node.getDisplayData(), which would build the leaves' own
+			if(node.displayData != null) {
+				ArrayList<DisplayObject> list = node.displayData.getDisplayObjects();
+				for(int displayIndex = 0; displayIndex < list.size(); ++displayIndex) {
+					DisplayObject displayObject = list.get(displayIndex);
+					if(displayObject == null || displayObject.getObjects() == null) {
+						continue;
+					}
+					for(int row = 0; row < displayObject.size(); ++row) {
+						TreeObject object = displayObject.getObjects().get(row);
+						if(object != null && seen.add(object)) {
+							add(node, displayObject, displayIndex, row);
+						}
+					}
+				}
+			}
+			// The tree entries only refer to the module's processes
+			if(children == null || node instanceof ProcessTreeNode) {
+				return;
+			}
+			for(TreeObject child : children) {
+				collect(child, seen);
+			}
+		}
+
+		private void add(TreeObject node, DisplayObject displayObject, int displayIndex, int row) {
+			int document = nodes.size();
+			if(document == rows.length) {
+				rows = Arrays.copyOf(rows, document * 2);
+				displayIndexes = Arrays.copyOf(displayIndexes, document * 2);
+			}
+			nodes.add(node);
+			displayObjects.add(displayObject);
+			displayIndexes[document] = displayIndex;
+			rows[document] = row;
+			trigrams.add(document, getText(document).toLowerCase());
+		}
+
+		@Override
+		int size() {
+			return nodes.size();
+		}
+
+		@Override
+		BitSet find(String word) {
+			return trigrams.find(word, size());
+		}
+
+		@Override
+		String getText(int document) {
+			DisplayObject displayObject = displayObjects.get(document);
+			StringBuilder sb = new StringBuilder();
+			for(int column = 0; column < displayObject.getColumnNames().length; ++column) {
+				String value = displayObject.getText(column, rows[document]);
+				if(column > 0) {
+					sb.append('\n');
+				}
+				if(value != null) {
+					sb.append(value.replace('\n', ' '));
+				}
+			}
+			return sb.toString();
+		}
+
+		@Override
+		Hit createHit(int document, String text, int score) {
+			return new Hit(nodes.get(document), displayIndexes[document], rows[document], text, score);
+		}
+	}
+
+	/**
+	 * The rows of the filesystem table: each row's name and type, and each
+	 * directory's path. The names are kept (as UTF-8) so rows can be read
+	 * without paging the table in.
+	 */
+	private static class FileSegment extends Segment {
+		private static final Charset UTF8 = Charset.forName("UTF-8");
+
+		private TreeObject module;
+		private FileTable table;
+		private TrigramIndex names = new TrigramIndex();
+		private TrigramIndex directories = new TrigramIndex();
+		private byte[] nameBytes;
+		/** Row i's name is nameBytes[nameStarts[i]] to nameBytes[nameStarts[i + 1] - 1] */
+		private int[] nameStarts;
+		private String[] directoryPaths;
+
+		FileSegment(TreeObject module, FileTable table) {
+			this.module = module;
+			this.table = table;
+			int rowCount = table.size();
+			nameStarts = new int[rowCount + 1];
+			ByteArrayOutputStream out = new ByteArrayOutputStream(rowCount * 16);
+			for(int row = 0; row < rowCount; ++row) {
+				String name = table.get(row).fileName;
+				names.add(row, name.toLowerCase());
+				byte[] bytes = name.getBytes(UTF8);
+				out.write(bytes, 0, bytes.length);
+				nameStarts[row + 1] = out.size();
+			}
+			names.finish();
+			nameBytes = out.toByteArray();
+
+			PathTrie trie = table.getDirectories();
+			directoryPaths = new String[trie.size()];
+			for(int node = PathTrie.ROOT; node < directoryPaths.length; ++node) {
+				directoryPaths[node] = trie.getPath(node);
+				directories.add(node, directoryPaths[node].toLowerCase());
+			}
+			directories.finish();
+		}
+
+		@Override
+		int size() {
+			return table.size();
+		}
+
+		@Override
+		BitSet find(String word) {
+			// In a name, a type or a directory
+			BitSet rows = names.find(word, size());
+			rows.or(findType(word));
+			rows.or(getRows(directories.find(word, directoryPaths.length)));
+
+			// Across the end of a directory and the start of a name
+			int slash = word.lastIndexOf('/');
+			if(slash >= 0) {
+				String directoryPart = word.substring(0, slash);
+				String namePart = word.substring(slash + 1);
+				BitSet spanning = null;
+				if(directoryPart.length() >= TrigramIndex.MIN_LENGTH) {
+					spanning = getRows(directories.find(directoryPart, directoryPaths.length));
+				}
+				if(namePart.length() >= TrigramIndex.MIN_LENGTH) {
+					BitSet named = names.find(namePart, size());
+					if(spanning == null) {
+						spanning = named;
+					}
+					else {
+						spanning.and(named);
+					}
+				}
+				if(spanning == null) {
+					return null;
+				}
+				rows.or(spanning);
+			}
+			return rows;
+		}
+
+		/**
+		 * @return The rows whose type contains a word.
+		 */
+		private BitSet findType(String word) {
+			BitSet rows = new BitSet();
+			boolean[] types = new boolean[FileStatColumns.FILE_TYPES.length];
+			boolean any = false;
+			for(int type = 0; type < types.length; ++type) {
+				types[type] = FileStatColumns.FILE_TYPES[type].contains(word);
+				any |= types[type];
+			}
+			if(!any) {
+				return rows;
+			}
+			FileStatColumns statColumns = table.getStatColumns();
+			for(int row = 0; row < size(); ++row) {
+				int type = statColumns.getType(row);
+				if(type != FileStatColumns.UNKNOWN && types[type]) {
+					rows.set(row);
+				}
+			}
+			return rows;
+		}
+
+		/**
+		 * @return The rows in some directories.
+		 */
+		private BitSet getRows(BitSet directoryNodes) {
+			BitSet rows = new BitSet();
+			for(int node = directoryNodes.nextSetBit(0); node >= 0; node = directoryNodes.nextSetBit(node + 1)) {
+				for(int row = table.getFirstRow(node); row >= 0; row = table.getNextInDirectory(row)) {
+					rows.set(row);
+				}
+			}
+			return rows;
+		}
+
+		@Override
+		String getText(int document) {
+			int type = table.getStatColumns().getType(document);
+			String typeName = type == FileStatColumns.UNKNOWN ? "" : FileStatColumns.FILE_TYPES[type];
+			int node = table.getDirectoryNode(document);
+			String directory = node > PathTrie.NONE && node < directoryPaths.length ? directoryPaths[node] : null;
+			String name = new String(nameBytes, nameStarts[document], nameStarts[document + 1] - nameStarts[document], UTF8);
+			StringBuilder sb = new StringBuilder();
+			if(directory != null) {
+				sb.append(directory);
+				if(directory.length() > 1) {
+					sb.append('/');
+				}
+			}
+			sb.append(name);
+			sb.append('\n');
+			sb.append(typeName);
+			return sb.toString();
+		}
+
+		@Override
+		Hit createHit(int document, String text, int score) {
+			return new Hit(module, 0, document, text, score);
+		}
+	}
+}
@@ -27,6 +27,8 @@ package com.ainfosec.macresponse.db;
 import java.util.ArrayList;
 
 public class SpotlightApplicationListModule extends TreeObject {
+	public static final String title = "Spotlight Application List";
+
 	protected String treeNodeTitle = "Spotlight Application List Module";
 	
 	public ArrayList<Application> applications = new ArrayList<Application>();
@@ -44,7 +46,7 @@ public class SpotlightApplicationListModule extends TreeObject {
 
 	@Override
 	public String getTitle() {
-		return "Spotlight Application List";
+		return title;
 	}
 
 	@Override
@@ -74,7 +76,7 @@ public class SpotlightApplicationListModule extends TreeObject {
 		// Setup Display Data
 		if(displayData == null) {
 			displayData = new DisplayData();
-			displayData.addDisplayObject(new DisplayObject(getTitle(), Application.columnTitles, Application.columnNames, applications));
+			displayData.addDisplayObject(new DisplayObject(getTitle(), Application.columnTitles, Application.columnNames, Application.columnTypes, applications));
 		}
 	}
 }
@@ -0,0 +1,163 @@
+/*
+
+ MacResponse: Incident Response Toolkit for Mac OS X
+
+ Copyright (C) 2011 - Assured Information Security, Inc. All rights reserved.
+
+ Authors:
+ Paul Petzke <petzkep _at_ ainfosec.com>
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package com.ainfosec.macresponse.db;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * Canonicalizes the strings read while loading a case.
+ *
+ * Attribute values such as file types, process names, uids and address
+ * types repeat thousands of times. Every string read from a module goes
+ * through {@link #intern(String, Stats)} so equal values share one instance.
+ * The table holds its strings weakly, so values no module refers to any
+ * more can still be collected. It's split into independently locked
+ * segments so modules can be loaded in parallel.
+ */
+public class StringPool {
+	private static final int SEGMENT_COUNT = 32;
+
+	private static final StringPool shared = new StringPool();
+
+	private WeakHashMap<String, WeakReference<String>>[] segments;
+	/** What the modules loaded so far gained; guarded by itself */
+	private final Stats totals = new Stats();
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public StringPool() {
+		segments = new WeakHashMap[SEGMENT_COUNT];
+		for(int i = 0; i < SEGMENT_COUNT; ++i) {
+			segments[i] = new WeakHashMap<String, WeakReference<String>>();
+		}
+	}
+
+	/**
+	 * @return The pool used while loading cases.
+	 */
+	public static StringPool getShared() {
+		return shared;
+	}
+
+	/**
+	 * Returns the pool's instance of a string, adding it if it's new.
+	 * @param value The string read from a module.
+	 * @param stats Where to count the result, or null.
+	 * @return An equal string, shared with everything else that read it.
+	 */
+	public String intern(String value, Stats stats) {
+		if(value == null) {
+			return null;
+		}
+		int hash = value.hashCode();
+		WeakHashMap<String, WeakReference<String>> segment = segments[(hash ^ (hash >>> 16)) & (SEGMENT_COUNT - 1)];
+		String canonical = null;
+		synchronized (segment) {
+			WeakReference<String> reference = segment.get(value);
+			if(reference != null) {
+				canonical = reference.get();
+			}
+			if(canonical == null) {
+				segment.put(value, new WeakReference<String>(value));
+			}
+		}
+		if(stats != null) {
+			stats.count(value, canonical != null);
+		}
+		return canonical != null ? canonical : value;
+	}
+
+	/**
+	 * Adds what a loaded module gained to the pool's totals.
+	 * @param stats The module's Stats, once it's loaded.
+	 */
+	public void addToTotals(Stats stats) {
+		synchronized (totals) {
+			totals.stringCount += stats.stringCount;
+			totals.duplicateCount += stats.duplicateCount;
+			totals.bytesSaved += stats.bytesSaved;
+		}
+	}
+
+	/**
+	 * @return What every module loaded so far gained from the pool.
+	 */
+	public Stats getTotals() {
+		Stats copy = new Stats();
+		synchronized (totals) {
+			copy.stringCount = totals.stringCount;
+			copy.duplicateCount = totals.duplicateCount;
+			copy.bytesSaved = totals.bytesSaved;
+		}
+		return copy;
+	}
+
+	/**
+	 * How much one module gained from the pool. Not thread-safe; each
+	 * module is parsed on a single thread and gets its own Stats.
+	 */
+	public static class Stats {
+		private long stringCount = 0;
+		private long duplicateCount = 0;
+		private long bytesSaved = 0;
+
+		private void count(String value, boolean duplicate) {
+			++stringCount;
+			if(duplicate) {
+				++duplicateCount;
+				bytesSaved += estimateSize(value);
+			}
+		}
+
+		public long getStringCount() {
+			return stringCount;
+		}
+
+		public long getDuplicateCount() {
+			return duplicateCount;
+		}
+
+		/**
+		 * @return The estimated heap no longer used by duplicate strings.
+		 */
+		public long getBytesSaved() {
+			return bytesSaved;
+		}
+
+		@Override
+		public String toString() {
+			return stringCount + " strings, " + duplicateCount + " duplicates, " + (bytesSaved / 1024) + " KB saved";
+		}
+	}
+
+	/**
+	 * Estimated size of a String: object header and fields, plus a char
+	 * array of the value, rounded up to 8 bytes.
+	 */
+	static long estimateSize(String value) {
+		long arraySize = (16 + 2L * value.length() + 7) & ~7L;
+		return 24 + arraySize;
+	}
+}
@@ -27,12 +27,18 @@ package com.ainfosec.macresponse.db;
 import java.util.ArrayList;
 
 public class SystemDateTimeModule extends TreeObject {
+	public static final String title = "System Date Time";
+
 	public static final String[] columnNames = {
 		"systemTime", 
 	};
 	public static final String[] columnTitles = {
 		"System Time", 
 	};
+
+	public static final ColumnType[] columnTypes = {
+		ColumnType.EPOCH_TIME,
+	};
 	
 	public String systemTime;
 
@@ -48,7 +54,7 @@ public class SystemDateTimeModule extends TreeObject {
 
 	@Override
 	public String getTitle() {
-		return "System Date Time";
+		return title;
 	}
 
 	@Override
@@ -61,7 +67,7 @@ public class SystemDateTimeModule extends TreeObject {
 			displayData = new DisplayData();
 			ArrayList<TreeObject> list = new ArrayList<TreeObject>();
 			list.add(this);
-			displayData.addDisplayObject(new DisplayObject(getTitle(), columnTitles, columnNames, list));
+			displayData.addDisplayObject(new DisplayObject(getTitle(), columnTitles, columnNames, columnTypes, list));
 		}
 	}
 }
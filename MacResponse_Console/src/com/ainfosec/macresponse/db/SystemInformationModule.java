@@ -27,6 +27,8 @@ package com.ainfosec.macresponse.db;
 import java.util.ArrayList;
 
 public class SystemInformationModule extends TreeObject {
+	public static final String title = "System Information";
+
 	public ArrayList<SystemControlItem> systemControlItems = new ArrayList<SystemControlItem>();
 	public ArrayList<SystemConfigFile> systemConfigFiles;
 	public ArrayList<SystemStartupItem> systemStartupItems = new ArrayList<SystemStartupItem>();
@@ -55,7 +57,7 @@ public class SystemInformationModule extends TreeObject {
 
 	@Override
 	public String getTitle() {
-		return "System Information";
+		return title;
 	}
 
 	@Override
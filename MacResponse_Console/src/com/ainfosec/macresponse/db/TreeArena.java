@@ -0,0 +1,255 @@
+/*
+
+ MacResponse: Incident Response Toolkit for Mac OS X
+
+ Copyright (C) 2011 - Assured Information Security, Inc. All rights reserved.
+
+ Authors:
+ Paul Petzke <petzkep _at_ ainfosec.com>
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package com.ainfosec.macresponse.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+
+/**
+ * A TreeObject tree flattened into arrays, in pre-order.
+ *
+ * Node 0 is the root. Each node has an int parent, first child, next
+ * sibling and subtree end, and its TreeObject is kept by index. Because
+ * the nodes are numbered in pre-order, the subtree of node n is exactly
+ * nodes n up to (not including) getSubtreeEnd(n), so walking or changing
+ * a whole subtree is a scan over a range instead of chasing child lists
+ * across the heap.
+ *
+ * The arena also holds which nodes are checked for the report, as a bit
+ * per node: checking or unchecking a subtree sets one range of bits.
+ *
+ * The arena is a snapshot: the TreeObjects keep their own parent and
+ * children, and the arena has to be built again when the tree changes
+ * (e.g. when a module is loaded in place of its placeholder).
+ */
+public class TreeArena {
+	/** Not a node */
+	public static final int NONE = -1;
+
+	private int size = 0;
+	private int[] parents;
+	private int[] firstChildren;
+	private int[] nextSiblings;
+	private int[] subtreeEnds;
+	private TreeObject[] nodes;
+	/** Only used while building */
+	private int[] lastChildren;
+	/** The nodes checked for the report */
+	private BitSet checked = new BitSet();
+	/** Only used while building over an earlier arena */
+	private TreeArena previous;
+	private IdentityHashMap<TreeObject, Boolean> loadedModules;
+
+	private TreeArena(int capacity) {
+		parents = new int[capacity];
+		firstChildren = new int[capacity];
+		nextSiblings = new int[capacity];
+		subtreeEnds = new int[capacity];
+		lastChildren = new int[capacity];
+		nodes = new TreeObject[capacity];
+	}
+
+	/**
+	 * Flattens the tree under a root, keeping what was checked in an
+	 * earlier arena. A loaded module takes its placeholder's state, and
+	 * anything else new takes its parent's.
+	 * @param rootObject The root.
+	 * @param previous The arena this one replaces, or null.
+	 * @return The arena.
+	 */
+	public static TreeArena build(TreeObject rootObject, TreeArena previous) {
+		TreeArena arena = new TreeArena(1024);
+		if(previous != null) {
+			// Modules that replaced a placeholder since the previous arena
+			arena.loadedModules = new IdentityHashMap<TreeObject, Boolean>();
+			for(int node = 0; node < previous.size; ++node) {
+				TreeObject treeObject = previous.nodes[node];
+				if(treeObject instanceof ModulePlaceholder && ((ModulePlaceholder) treeObject).isLoaded()) {
+					TreeObject module = ((ModulePlaceholder) treeObject).getModule();
+					if(module != null) {
+						arena.loadedModules.put(module, previous.checked.get(node));
+					}
+				}
+			}
+		}
+		arena.previous = previous;
+		arena.fill(rootObject);
+		arena.previous = null;
+		arena.loadedModules = null;
+		arena.lastChildren = null;
+		return arena;
+	}
+
+	/**
+	 * Flattens the tree under a root. Each TreeObject is given its node
+	 * number, so {@link #indexOf(TreeObject)} is a field read.
+	 * @param rootObject The root.
+	 * @return The arena.
+	 */
+	public static TreeArena build(TreeObject rootObject) {
+		return build(rootObject, null);
+	}
+
+	private void fill(TreeObject rootObject) {
+		// The path from the root to the node being filled in, and which of
+		// each one's children comes next
+		int[] stack = new int[64];
+		int[] nextChild = new int[64];
+		int depth = 0;
+		stack[depth++] = add(rootObject, NONE);
+		while(depth > 0) {
+			int node = stack[depth - 1];
+			ArrayList<? extends TreeObject> children = nodes[node].getChildObjects();
+			if(children == null || nextChild[depth - 1] >= children.size()) {
+				subtreeEnds[node] = size;
+				nextChild[--depth] = 0;
+				continue;
+			}
+			TreeObject child = children.get(nextChild[depth - 1]++);
+			if(child == null) {
+				continue;
+			}
+			if(depth == stack.length) {
+				stack = Arrays.copyOf(stack, depth * 2);
+				nextChild = Arrays.copyOf(nextChild, depth * 2);
+			}
+			stack[depth++] = add(child, node);
+		}
+	}
+
+	private int add(TreeObject treeObject, int parent) {
+		if(size == nodes.length) {
+			int capacity = nodes.length * 2;
+			parents = Arrays.copyOf(parents, capacity);
+			firstChildren = Arrays.copyOf(firstChildren, capacity);
+			nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+			subtreeEnds = Arrays.copyOf(subtreeEnds, capacity);
+			lastChildren = Arrays.copyOf(lastChildren, capacity);
+			nodes = Arrays.copyOf(nodes, capacity);
+		}
+		int node = size++;
+		parents[node] = parent;
+		firstChildren[node] = NONE;
+		nextSiblings[node] = NONE;
+		lastChildren[node] = NONE;
+		subtreeEnds[node] = node + 1;
+		nodes[node] = treeObject;
+		if(previous != null) {
+			checked.set(node, wasChecked(treeObject, parent));
+		}
+		treeObject.arenaIndex = node;
+		if(parent != NONE) {
+			if(firstChildren[parent] == NONE) {
+				firstChildren[parent] = node;
+			}
+			else {
+				nextSiblings[lastChildren[parent]] = node;
+			}
+			lastChildren[parent] = node;
+		}
+		return node;
+	}
+
+	/**
+	 * Looks a node up in the previous arena, before its index is replaced.
+	 */
+	private boolean wasChecked(TreeObject treeObject, int parent) {
+		int oldNode = previous.indexOf(treeObject);
+		if(oldNode != NONE) {
+			return previous.checked.get(oldNode);
+		}
+		Boolean placeholderChecked = loadedModules.get(treeObject);
+		if(placeholderChecked != null) {
+			return placeholderChecked;
+		}
+		return parent != NONE && checked.get(parent);
+	}
+
+	/**
+	 * @return The number of nodes.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return The node's TreeObject.
+	 */
+	public TreeObject getNode(int node) {
+		return nodes[node];
+	}
+
+	/**
+	 * @param treeObject An object of the tree.
+	 * @return Its node, or NONE if it isn't in this arena.
+	 */
+	public int indexOf(TreeObject treeObject) {
+		int node = treeObject.arenaIndex;
+		return node >= 0 && node < size && nodes[node] == treeObject ? node : NONE;
+	}
+
+	public int getParent(int node) {
+		return parents[node];
+	}
+
+	public int getFirstChild(int node) {
+		return firstChildren[node];
+	}
+
+	public int getNextSibling(int node) {
+		return nextSiblings[node];
+	}
+
+	/**
+	 * @return The node after the last one in the node's subtree.
+	 */
+	public int getSubtreeEnd(int node) {
+		return subtreeEnds[node];
+	}
+
+	/**
+	 * Checks or unchecks a node and everything under it.
+	 */
+	public void setChecked(int node, boolean isChecked) {
+		checked.set(node, subtreeEnds[node], isChecked);
+	}
+
+	public boolean isChecked(int node) {
+		return checked.get(node);
+	}
+
+	/**
+	 * @param treeObject Any TreeObject.
+	 * @param parentChecked Whether its parent is checked, for objects that
+	 * aren't in the arena (like a module only loaded for the report).
+	 * @return Whether it's checked.
+	 */
+	public boolean isChecked(TreeObject treeObject, boolean parentChecked) {
+		int node = indexOf(treeObject);
+		return node == NONE ? parentChecked : checked.get(node);
+	}
+}
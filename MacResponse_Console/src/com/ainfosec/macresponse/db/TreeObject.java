@@ -31,21 +31,9 @@ public abstract class TreeObject {
 	protected ArrayList<TreeObject> childObjects = null;
 	protected DisplayData displayData = null;
 	
-	protected boolean isChecked = false;
+	/** This object's node in the last TreeArena built over it */
+	transient int arenaIndex = TreeArena.NONE;
 	
-	public void setChecked(boolean value) {
-		isChecked = value;
-		if(childObjects != null) {
-			for(TreeObject child : childObjects) {
-				child.setChecked(value);
-			}
-		}
-	}
-	
-	public boolean isChecked() {
-		return isChecked;
-	}
-
 	public void setParent(TreeObject parentObject) {
 		this.parentObject = parentObject;
 	}
@@ -66,11 +54,42 @@ public abstract class TreeObject {
 		childObjects.add(to);
 	}
 
+	/**
+	 * Swaps a child for another one in the same position (e.g. when a
+	 * ModulePlaceholder is replaced by its loaded module).
+	 * @param oldObject The current child.
+	 * @param newObject Its replacement.
+	 */
+	public void replaceChildObject(TreeObject oldObject, TreeObject newObject) {
+		if(childObjects == null || newObject == null) {
+			return;
+		}
+		int index = childObjects.indexOf(oldObject);
+		if(index < 0) {
+			return;
+		}
+		newObject.setParent(this);
+		newObject.init();
+		childObjects.set(index, newObject);
+	}
+
 	public DisplayData getDisplayData() {
 		init();
+		if(displayData == null) {
+			return createDisplayData();
+		}
 		return displayData;
 	}
 
+	/**
+	 * Builds display data that isn't kept on the object, for classes that
+	 * share a RowDisplay instead of setting displayData in init().
+	 * @return The display data, or null if there's none.
+	 */
+	protected DisplayData createDisplayData() {
+		return null;
+	}
+
 	public ArrayList<? extends TreeObject> getChildObjects() {
 		init();
 		return childObjects;
@@ -0,0 +1,168 @@
+/*
+
+ MacResponse: Incident Response Toolkit for Mac OS X
+
+ Copyright (C) 2011 - Assured Information Security, Inc. All rights reserved.
+
+ Authors:
+ Paul Petzke <petzkep _at_ ainfosec.com>
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU General Public License as published by
+ the Free Software Foundation, either version 2 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU General Public License for more details.
+
+ You should have received a copy of the GNU General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package com.ainfosec.macresponse.db;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps every three characters that appear in a set of numbered documents
+ * to the documents they appear in. A document can only contain a string
+ * if it has all of the string's trigrams, so intersecting their postings
+ * narrows a substring search to a few candidates without reading any text.
+ *
+ * Documents are added in increasing order, so each posting list is sorted.
+ * A document's text may have several values separated by newlines;
+ * trigrams don't span them.
+ */
+class TrigramIndex {
+	/** The shortest string a search can be narrowed for */
+	static final int MIN_LENGTH = 3;
+
+	private HashMap<Long, int[]> postings = new HashMap<Long, int[]>();
+	/** The postings while they're being added to */
+	private HashMap<Long, Builder> builders = new HashMap<Long, Builder>();
+	private int lastDocument = -1;
+
+	/**
+	 * Adds a document. Must be called with increasing document numbers.
+	 * @param document The document's number.
+	 * @param text Its lowercased text.
+	 */
+	void add(int document, String text) {
+		if(document <= lastDocument) {
+			throw new IllegalArgumentException("Document " + document + " after " + lastDocument);
+		}
+		lastDocument = document;
+		for(int i = 0; i + MIN_LENGTH <= text.length(); ++i) {
+			char a = text.charAt(i);
+			char b = text.charAt(i + 1);
+			char c = text.charAt(i + 2);
+			if(c == '\n') {
+				i += 2;
+				continue;
+			}
+			if(b == '\n') {
+				i += 1;
+				continue;
+			}
+			if(a == '\n') {
+				continue;
+			}
+			Long trigram = trigram(a, b, c);
+			Builder builder = builders.get(trigram);
+			if(builder == null) {
+				builder = new Builder();
+				builders.put(trigram, builder);
+			}
+			builder.add(document);
+		}
+	}
+
+	/**
+	 * Trims the postings once every document is in.
+	 */
+	void finish() {
+		postings = new HashMap<Long, int[]>(builders.size() * 2);
+		for(Map.Entry<Long, Builder> entry : builders.entrySet()) {
+			Builder builder = entry.getValue();
+			postings.put(entry.getKey(), Arrays.copyOf(builder.documents, builder.size));
+		}
+		builders = null;
+	}
+
+	/**
+	 * Finds the documents that have every trigram of a string.
+	 * @param text A lowercased string of at least MIN_LENGTH characters.
+	 * @param documentCount The number of documents.
+	 * @return The documents that may contain the string.
+	 */
+	BitSet find(String text, int documentCount) {
+		int count = text.length() - MIN_LENGTH + 1;
+		int[][] lists = new int[count][];
+		for(int i = 0; i < count; ++i) {
+			lists[i] = postings.get(trigram(text.charAt(i), text.charAt(i + 1), text.charAt(i + 2)));
+			if(lists[i] == null) {
+				return new BitSet(0);
+			}
+		}
+		// Start from the rarest trigram; the rest only remove documents
+		Arrays.sort(lists, new Comparator<int[]>() {
+			@Override
+			public int compare(int[] a, int[] b) {
+				return a.length - b.length;
+			}
+		});
+		BitSet found = toBitSet(lists[0], documentCount);
+		for(int i = 1; i < count && !found.isEmpty(); ++i) {
+			if(lists[i] != lists[i - 1]) {
+				found.and(toBitSet(lists[i], documentCount));
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * @return The number of int postings, for estimating the index's size.
+	 */
+	long getPostingCount() {
+		long count = 0;
+		for(int[] list : postings.values()) {
+			count += list.length;
+		}
+		return count;
+	}
+
+	private static BitSet toBitSet(int[] list, int documentCount) {
+		BitSet bits = new BitSet(documentCount);
+		for(int document : list) {
+			bits.set(document);
+		}
+		return bits;
+	}
+
+	/** A growing posting list */
+	private static class Builder {
+		int[] documents = new int[2];
+		int size = 0;
+
+		void add(int document) {
+			if(size > 0 && documents[size - 1] == document) {
+				return;
+			}
+			if(size == documents.length) {
+				documents = Arrays.copyOf(documents, size * 2);
+			}
+			documents[size++] = document;
+		}
+	}
+
+	private static long trigram(char a, char b, char c) {
+		return ((long) a << 32) | ((long) b << 16) | c;
+	}
+}
@@ -24,8 +24,6 @@
 
 package com.ainfosec.macresponse.db;
 
-import java.util.ArrayList;
-
 public class UnmappablePage extends TreeObject {
 
 	public static final String[] columnNames = {
@@ -38,6 +36,13 @@ public class UnmappablePage extends TreeObject {
 		"Physical Address End", 
 	};
 
+	public static final ColumnType[] columnTypes = {
+		ColumnType.HEX_ADDRESS,
+		ColumnType.HEX_ADDRESS,
+	};
+
+	private static final RowDisplay rowDisplay = new RowDisplay(columnTitles, columnNames, columnTypes);
+
 	public String physicalAddressStart;
 	public String physicalAddressEnd;
 	
@@ -62,17 +67,17 @@ public class UnmappablePage extends TreeObject {
 		return sb.toString();
 	}
 
+	@Override
+	protected DisplayData createDisplayData() {
+		return rowDisplay.getDisplayData(this);
+	}
+
 	@Override
 	public void init() {
 		// Setup Children
 		// None!
 		
 		// Setup Display Data
-		if(displayData == null) {
-			displayData = new DisplayData();
-			ArrayList<TreeObject> list = new ArrayList<TreeObject>();
-			list.add(this);
-			displayData.addDisplayObject(new DisplayObject(getTitle(), columnTitles, columnNames, list));
-		}
+		// Built when shown, by rowDisplay
 	}
 }
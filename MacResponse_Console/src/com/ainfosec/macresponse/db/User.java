@@ -24,8 +24,6 @@
 
 package com.ainfosec.macresponse.db;
 
-import java.util.ArrayList;
-
 public class User extends TreeObject {
 	
 	public static final String[] columnNames = {
@@ -40,6 +38,14 @@ public class User extends TreeObject {
 		"GID"
 	};
 
+	public static final ColumnType[] columnTypes = {
+		ColumnType.STRING,
+		ColumnType.LONG,
+		ColumnType.LONG,
+	};
+
+	private static final RowDisplay rowDisplay = new RowDisplay(columnTitles, columnNames, columnTypes);
+
 	public String userName;
 	public String uid;
 	public String gid;
@@ -59,17 +65,17 @@ public class User extends TreeObject {
 		return userName;
 	}
 
+	@Override
+	protected DisplayData createDisplayData() {
+		return rowDisplay.getDisplayData(this);
+	}
+
 	@Override
 	public void init() {
 		// Setup Children
 		// None!
 		
 		// Setup Display Data
-		if(displayData == null) {
-			displayData = new DisplayData();
-			ArrayList<TreeObject> list = new ArrayList<TreeObject>();
-			list.add(this);
-			displayData.addDisplayObject(new DisplayObject(getTitle(), columnTitles, columnNames, list));
-		}
+		// Built when shown, by rowDisplay
 	}
 }
@@ -27,6 +27,8 @@ package com.ainfosec.macresponse.db;
 import java.util.ArrayList;
 
 public class UserInformationModule extends TreeObject {
+	public static final String title = "User Information";
+
 	protected String treeNodeTitle = "User Information";
 	
 	public ArrayList<User> users = new ArrayList<User>();
@@ -42,7 +44,7 @@ public class UserInformationModule extends TreeObject {
 
 	@Override
 	public String getTitle() {
-		return "User Information";
+		return title;
 	}
 
 	@Override
@@ -57,7 +59,7 @@ public class UserInformationModule extends TreeObject {
 		// Setup Display Data
 		if(displayData == null) {
 			displayData = new DisplayData();
-			displayData.addDisplayObject(new DisplayObject(getTitle(), User.columnTitles, User.columnNames, users));
+			displayData.addDisplayObject(new DisplayObject(getTitle(), User.columnTitles, User.columnNames, User.columnTypes, users));
 		}
 	}
 }
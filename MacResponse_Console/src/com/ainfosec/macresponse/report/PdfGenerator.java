@@ -25,12 +25,14 @@
 package com.ainfosec.macresponse.report;
 
 import java.io.FileOutputStream;
-import java.lang.reflect.Field;
 import java.util.Date;
 
 import org.eclipse.swt.SWT;
 
 import com.ainfosec.macresponse.db.DisplayObject;
+import com.ainfosec.macresponse.db.RowFilter;
+import com.ainfosec.macresponse.db.ModulePlaceholder;
+import com.ainfosec.macresponse.db.TreeArena;
 import com.ainfosec.macresponse.db.TreeObject;
 import com.itextpdf.text.BaseColor;
 import com.itextpdf.text.Chapter;
@@ -46,6 +48,10 @@ import com.itextpdf.text.pdf.PdfWriter;
 public class PdfGenerator {
 
 	private static int currentChapter = 1;
+	/** What's checked in the tree */
+	private static TreeArena selection;
+	/** Filters the rows of each table it applies to; null for none */
+	private static String filter;
 	
 	private static Font chapterTitleFont = new Font(Font.FontFamily.TIMES_ROMAN, 18, Font.BOLD);
 	private static Font sectionTitleFont = new Font(Font.FontFamily.TIMES_ROMAN, 16, Font.BOLD);
@@ -94,8 +100,11 @@ public class PdfGenerator {
 		paragraph.add("Table of Contents\n\n");
 		
 		for(TreeObject treeObject : rootObject.getChildObjects()) {
-			if(treeObject.isChecked()) {
-				addTocSection(paragraph, treeObject, String.valueOf(currentChapter));
+			if(selection.isChecked(treeObject, false)) {
+				if(treeObject instanceof ModulePlaceholder) {
+					continue;
+				}
+				addTocSection(paragraph, treeObject, String.valueOf(currentChapter), true);
 				currentChapter++;
 			}
 		}
@@ -107,10 +116,11 @@ public class PdfGenerator {
 		// Table of Tables
 	}
 	
-	private static void addTocSection(Paragraph paragraph, TreeObject treeObject, String sectionNumber) {
+	private static void addTocSection(Paragraph paragraph, TreeObject treeObject, String sectionNumber, boolean parentChecked) {
 		int subsectionNumber = 1;
 		
-		if(treeObject.isChecked()) {
+		boolean checked = selection.isChecked(treeObject, parentChecked);
+		if(checked) {
 			StringBuffer sb = new StringBuffer();
 			sb.append(sectionNumber);
 			sb.append(". ");
@@ -125,8 +135,8 @@ public class PdfGenerator {
 		if((treeObject.getChildObjects() != null) && (treeObject.getChildObjects().size() > 0)) {
 			for(TreeObject childObject : treeObject.getChildObjects()) {
 				String currentSection = sectionNumber + "." + String.valueOf(subsectionNumber);
-				if(treeObject.isChecked()) {
-					addTocSection(paragraph, childObject, currentSection);
+				if(checked) {
+					addTocSection(paragraph, childObject, currentSection, checked);
 					subsectionNumber++;
 				}
 			}
@@ -135,7 +145,12 @@ public class PdfGenerator {
 
 	private static void addContent(Document document, TreeObject rootObject) throws DocumentException {
 		for(TreeObject treeObject : rootObject.getChildObjects()) {
-			if(treeObject.isChecked()) {
+			if(selection.isChecked(treeObject, false)) {
+				// The shell loads every checked module first, so a
+				// placeholder left here is one that failed to load
+				if(treeObject instanceof ModulePlaceholder) {
+					continue;
+				}
 				Paragraph title = new Paragraph(treeObject.getTitle(), chapterTitleFont);
 				Chapter chapter = new Chapter(title, currentChapter);
 				populateChapter(treeObject, chapter);
@@ -190,11 +205,9 @@ public class PdfGenerator {
 		
 		// See if the DisplayObject has a list or a single object
 		if(displayObject.getObjects().size() == 1) {
-			TreeObject treeObject = displayObject.getObjects().get(0);	// There's only 1 item
 
 			// For each column, create/add a label with the title and the data
-			int i = 0;
-			for(String columnName : displayObject.getColumnNames()) {
+			for(int i = 0; i < displayObject.getColumnNames().length; ++i) {
 				StringBuffer sb = new StringBuffer();
 				
 				// Add the column title
@@ -202,27 +215,17 @@ public class PdfGenerator {
 				sb.append(": ");
 				
 				// Get the value of the field
-				try {
-					Field field = treeObject.getClass().getDeclaredField(columnName);
-					String val = (String)field.get(treeObject);
-					if(val == null)
-					{
-						val = "";
-					}
-					// Add the value
-					sb.append(val);
-					sb.append("\n");
-				} catch (NoSuchFieldException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				} catch (IllegalAccessException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
+				String val = displayObject.getText(i, 0);
+				if(val == null)
+				{
+					val = "";
 				}
+				// Add the value
+				sb.append(val);
+				sb.append("\n");
 				
 				// Put the string into the paragraph
 				paragraph.add(sb.toString());
-				i++;
 			}
 		}
 		else {
@@ -236,24 +239,18 @@ public class PdfGenerator {
 		        table.getDefaultCell().setBackgroundColor(BaseColor.WHITE);
 			}
 
-			for(TreeObject to1 : displayObject.getObjects())
+			int[] rows = RowFilter.filterRows(filter, displayObject);
+			int rowCount = rows == null ? displayObject.size() : rows.length;
+			for(int r = 0; r < rowCount; ++r)
 			{
-				for(String columnName : displayObject.getColumnNames()) {
-					try {
-						Field field = to1.getClass().getDeclaredField(columnName);
-						String val = (String)field.get(to1);
-						if(val == null)
-						{
-							val = "";
-						}
-						table.addCell(val);
-					} catch (NoSuchFieldException e) {
-						// TODO Auto-generated catch block
-						e.printStackTrace();
-					} catch (IllegalAccessException e) {
-						// TODO Auto-generated catch block
-						e.printStackTrace();
+				int row = rows == null ? r : rows[r];
+				for(int i = 0; i < displayObject.getColumnNames().length; ++i) {
+					String val = displayObject.getText(i, row);
+					if(val == null)
+					{
+						val = "";
 					}
+					table.addCell(val);
 				}
 			}
 	        table.getDefaultCell().setColspan(displayObject.getColumnTitles().length);
@@ -261,15 +258,34 @@ public class PdfGenerator {
 	        table.getDefaultCell().setHorizontalAlignment(Element.ALIGN_CENTER);
 	        
 	        // TODO Paul number the tables
-			table.addCell("Table: " + displayObject.getTitle());
+			if(rows == null) {
+				table.addCell("Table: " + displayObject.getTitle());
+			}
+			else {
+				table.addCell("Table: " + displayObject.getTitle() + " (" + rows.length + " of " + displayObject.size() + " rows where " + filter + ")");
+			}
 			paragraph.add(table);
 		}
 	}
 
-	public static void generateReport(String filename, TreeObject rootObject) {
-		if((rootObject == null) || (filename == null)) {
+	/**
+	 * @param selection The arena over rootObject, holding what's checked.
+	 */
+	public static void generateReport(String filename, TreeObject rootObject, TreeArena selection) {
+		generateReport(filename, rootObject, selection, null);
+	}
+
+	/**
+	 * @param selection The arena over rootObject, holding what's checked.
+	 * @param filter A RowFilter expression for the tables that have its
+	 * columns, or null to show every row.
+	 */
+	public static void generateReport(String filename, TreeObject rootObject, TreeArena selection, String filter) {
+		if((rootObject == null) || (filename == null) || (selection == null)) {
 			return;
 		}
+		PdfGenerator.selection = selection;
+		PdfGenerator.filter = filter;
 		try {
 			Document document = new Document();
 			PdfWriter.getInstance(document, new FileOutputStream(filename));
@@ -26,12 +26,14 @@ package com.ainfosec.macresponse.report;
 
 import java.awt.Color;
 import java.io.FileOutputStream;
-import java.lang.reflect.Field;
 import java.util.Date;
 
 import org.eclipse.swt.SWT;
 
 import com.ainfosec.macresponse.db.DisplayObject;
+import com.ainfosec.macresponse.db.RowFilter;
+import com.ainfosec.macresponse.db.ModulePlaceholder;
+import com.ainfosec.macresponse.db.TreeArena;
 import com.ainfosec.macresponse.db.TreeObject;
 import com.lowagie.text.Chapter;
 import com.lowagie.text.Chunk;
@@ -47,6 +49,10 @@ import com.lowagie.text.rtf.text.RtfParagraph;
 public class RtfGenerator {
 
 	private static int currentChapter = 1;
+	/** What's checked in the tree */
+	private static TreeArena selection;
+	/** Filters the rows of each table it applies to; null for none */
+	private static String filter;
 	
 	private static Font chapterTitleFont = new Font(Font.TIMES_ROMAN, 18, Font.BOLD);
 	private static Font sectionTitleFont = new Font(Font.TIMES_ROMAN, 16, Font.BOLD);
@@ -99,8 +105,11 @@ public class RtfGenerator {
 		paragraph.add("Table of Contents\n\n");
 		
 		for(TreeObject treeObject : rootObject.getChildObjects()) {
-			if(treeObject.isChecked()) {
-				addTocSection(paragraph, treeObject, String.valueOf(currentChapter));
+			if(selection.isChecked(treeObject, false)) {
+				if(treeObject instanceof ModulePlaceholder) {
+					continue;
+				}
+				addTocSection(paragraph, treeObject, String.valueOf(currentChapter), true);
 				currentChapter++;
 			}
 		}
@@ -112,10 +121,11 @@ public class RtfGenerator {
 		// Table of Tables
 	}
 	
-	private static void addTocSection(Paragraph paragraph, TreeObject treeObject, String sectionNumber) {
+	private static void addTocSection(Paragraph paragraph, TreeObject treeObject, String sectionNumber, boolean parentChecked) {
 		int subsectionNumber = 1;
 		
-		if(treeObject.isChecked()) {
+		boolean checked = selection.isChecked(treeObject, parentChecked);
+		if(checked) {
 			StringBuffer sb = new StringBuffer();
 			sb.append(sectionNumber);
 			sb.append(". ");
@@ -130,8 +140,8 @@ public class RtfGenerator {
 		if((treeObject.getChildObjects() != null) && (treeObject.getChildObjects().size() > 0)) {
 			for(TreeObject childObject : treeObject.getChildObjects()) {
 				String currentSection = sectionNumber + "." + String.valueOf(subsectionNumber);
-				if(treeObject.isChecked()) {
-					addTocSection(paragraph, childObject, currentSection);
+				if(checked) {
+					addTocSection(paragraph, childObject, currentSection, checked);
 					subsectionNumber++;
 				}
 			}
@@ -140,7 +150,12 @@ public class RtfGenerator {
 
 	private static void addContent(TreeObject rootObject) {
 		for(TreeObject treeObject : rootObject.getChildObjects()) {
-			if(treeObject.isChecked()) {
+			if(selection.isChecked(treeObject, false)) {
+				// The shell loads every checked module first, so a
+				// placeholder left here is one that failed to load
+				if(treeObject instanceof ModulePlaceholder) {
+					continue;
+				}
 				Paragraph title = new Paragraph(treeObject.getTitle(), chapterTitleFont);
 				Chapter chapter = new Chapter(title, currentChapter);
 				populateChapter(treeObject, chapter);
@@ -195,11 +210,9 @@ public class RtfGenerator {
 		
 		// See if the DisplayObject has a list or a single object
 		if(displayObject.getObjects().size() == 1) {
-			TreeObject treeObject = displayObject.getObjects().get(0);	// There's only 1 item
 
 			// For each column, create/add a label with the title and the data
-			int i = 0;
-			for(String columnName : displayObject.getColumnNames()) {
+			for(int i = 0; i < displayObject.getColumnNames().length; ++i) {
 				StringBuffer sb = new StringBuffer();
 				
 				// Add the column title
@@ -207,27 +220,17 @@ public class RtfGenerator {
 				sb.append(": ");
 				
 				// Get the value of the field
-				try {
-					Field field = treeObject.getClass().getDeclaredField(columnName);
-					String val = (String)field.get(treeObject);
-					if(val == null)
-					{
-						val = "";
-					}
-					// Add the value
-					sb.append(val);
-					sb.append("\n");
-				} catch (NoSuchFieldException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				} catch (IllegalAccessException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
+				String val = displayObject.getText(i, 0);
+				if(val == null)
+				{
+					val = "";
 				}
+				// Add the value
+				sb.append(val);
+				sb.append("\n");
 				
 				// Put the string into the paragraph
 				paragraph.add(sb.toString());
-				i++;
 			}
 		}
 		else {
@@ -241,24 +244,18 @@ public class RtfGenerator {
 		        table.getDefaultCell().setBackgroundColor(Color.WHITE);
 			}
 
-			for(TreeObject to1 : displayObject.getObjects())
+			int[] rows = RowFilter.filterRows(filter, displayObject);
+			int rowCount = rows == null ? displayObject.size() : rows.length;
+			for(int r = 0; r < rowCount; ++r)
 			{
-				for(String columnName : displayObject.getColumnNames()) {
-					try {
-						Field field = to1.getClass().getDeclaredField(columnName);
-						String val = (String)field.get(to1);
-						if(val == null)
-						{
-							val = "";
-						}
-						table.addCell(val);
-					} catch (NoSuchFieldException e) {
-						// TODO Auto-generated catch block
-						e.printStackTrace();
-					} catch (IllegalAccessException e) {
-						// TODO Auto-generated catch block
-						e.printStackTrace();
+				int row = rows == null ? r : rows[r];
+				for(int i = 0; i < displayObject.getColumnNames().length; ++i) {
+					String val = displayObject.getText(i, row);
+					if(val == null)
+					{
+						val = "";
 					}
+					table.addCell(val);
 				}
 			}
 	        table.getDefaultCell().setColspan(displayObject.getColumnTitles().length);
@@ -266,15 +263,34 @@ public class RtfGenerator {
 	        table.getDefaultCell().setHorizontalAlignment(Element.ALIGN_CENTER);
 	        
 	        // TODO Paul number the tables
-			table.addCell("Table: " + displayObject.getTitle());
+			if(rows == null) {
+				table.addCell("Table: " + displayObject.getTitle());
+			}
+			else {
+				table.addCell("Table: " + displayObject.getTitle() + " (" + rows.length + " of " + displayObject.size() + " rows where " + filter + ")");
+			}
 			document.add(new RtfTable(document, table));
 		}
 	}
 
-	public static void generateReport(String filename, TreeObject rootObject) {
-		if((rootObject == null) || (filename == null)) {
+	/**
+	 * @param selection The arena over rootObject, holding what's checked.
+	 */
+	public static void generateReport(String filename, TreeObject rootObject, TreeArena selection) {
+		generateReport(filename, rootObject, selection, null);
+	}
+
+	/**
+	 * @param selection The arena over rootObject, holding what's checked.
+	 * @param filter A RowFilter expression for the tables that have its
+	 * columns, or null to show every row.
+	 */
+	public static void generateReport(String filename, TreeObject rootObject, TreeArena selection, String filter) {
+		if((rootObject == null) || (filename == null) || (selection == null)) {
 			return;
 		}
+		RtfGenerator.selection = selection;
+		RtfGenerator.filter = filter;
 		try {
 			document = new RtfDocument();
 			document.open();